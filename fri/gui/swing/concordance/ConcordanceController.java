@@ -6,13 +6,11 @@ import java.awt.Window;
 import java.awt.event.*;
 import javax.swing.*;
 import gnu.regexp.RE;
-import fri.util.file.SortedFileCollectVisitor;
 import fri.util.concordance.*;
-import fri.util.observer.CancelProgressObserver;
 import fri.util.os.OS;
 import fri.util.regexp.RegExpUtil;
 import fri.util.concordance.textfile.TextfileConcordance;
-import fri.util.concordance.textfiles.TextfilesConcordance;
+import fri.util.concordance.textfiles.TreeConcordance;
 import fri.util.concordance.filenames.*;
 import fri.gui.CursorUtil;
 import fri.gui.swing.filechooser.*;
@@ -28,6 +26,7 @@ public class ConcordanceController extends AbstractSwingController
 	public static final String ACTION_START = "Start";
 	public static final String FILE_CONTENTS = "Check Text File Contents";
 	public static final String FILE_NAMES = "Check File Names In Directories";
+	public static final String FILE_DUPLICATES = "Check File Duplicates In Directories";
 	public static final String INCLUDING = "Include";
 	public static final String EXCLUDING = "Exclude";
 	
@@ -122,62 +121,59 @@ public class ConcordanceController extends AbstractSwingController
 					ValidityFilter filter = getFilenameValidityFilter();
 		
 					if (isFileContentSearch())	{	// search text concordances
-						// resolve directories to all contained files
-						ArrayList v = new ArrayList();
-							
-						for (int i = 0; files != null && i < files.length; i++)	{
-							if (observer.canceled())
-								return;
-								
-							File f = files[i];
-							if (f.isDirectory())	{
-								new TextFileCollectVisitor(filter, observer, f, v);
-							}
-							else
-							if (f.isFile() && filter.isValid(f) != null)	{
-								v.add(f);
-							}
+						if (files != null && files.length == 1 && files[0].isFile())	{
+							if (filter.isValid(files[0]) != null)
+								concordance = new TextfileConcordance(
+										files[0],
+										filterModel,
+										filterModel.getBreakAfterCount(),
+										filterModel.getMinimumLinesPerBlock());
 						}
-				
-						if (v.size() > 0)	{	// build concordance and render it
-							File [] sortedFiles = new File [v.size()];	// no directories are contained any more
-							v.toArray(sortedFiles);
-							v = null;	// set free the big list of textfiles
-		
-							// long lasting model work: search text concordances
-							concordance = (sortedFiles.length == 1)
-									? new TextfileConcordance(
-											sortedFiles[0],
-											filterModel,
-											filterModel.getBreakAfterCount(),
-											filterModel.getMinimumLinesPerBlock())
-									: new TextfilesConcordance(
-											sortedFiles,
-											filterModel,
-											observer,
-											filterModel.getBreakAfterCount(),
-											filterModel.getMinimumLinesPerBlock());
+						else
+						if (files != null && files.length > 0)	{
+							// long lasting model work: walk directories, read and number lines in parallel
+							concordance = new TreeConcordance(
+									files,
+									filter,
+									filterModel,
+									observer,
+									filterModel.getBreakAfterCount(),
+									filterModel.getMinimumLinesPerBlock());
 						}
 					}
-					else	{	// search file name concordances in directories
+					else	{	// search file name or content concordances in directories
 						if (files != null && files.length > 0)	{
-							// long lasting model work: search filename concordances
+							// long lasting model work: search filename or content concordances
 							concordance = new DirectoriesConcordance(
 									files,
 									filter,
-									observer);
+									observer,
+									isDuplicateSearch());
 						}
 					}
 					
 					if (observer.canceled())
 						return;
 						
-					// long lasting model work: build concordance blocks
+					// long lasting model work: build concordance blocks, render them as soon as found
 					System.err.println("Starting to build blocked list ...");
-					List blockedList = concordance != null ? concordance.getBlockedResult(observer) : null;
-		
-					// long lasting GUI work: fill the result panel
-					getConcordanceView().getConcordancePanel().init(blockedList, observer);
+					final ConcordancePanel panel = getConcordanceView().getConcordancePanel();
+					List blockedList = null;
+					if (concordance != null)	{
+						panel.clear();
+						concordance.setBlockListener(new Concordance.BlockListener()	{
+							private int count;
+							
+							public void blockFound(Concordance.Block block)	{
+								observer.setNote("Found Block "+(++count));
+								panel.addBlock(block);
+							}
+						});
+						blockedList = concordance.getBlockedResult(observer);
+					}
+					
+					if (blockedList == null || blockedList.size() <= 0)
+						panel.init(blockedList, observer);
 		
 				}
 				catch (Throwable e)	{	// memory error!
@@ -205,37 +201,6 @@ public class ConcordanceController extends AbstractSwingController
 
 
 
-	private static class TextFileCollectVisitor extends SortedFileCollectVisitor
-	{
-		private ValidityFilter filter;
-		private CancelProgressObserver observer;
-		
-		TextFileCollectVisitor(ValidityFilter filter, CancelProgressObserver observer, File dir, List list)	{
-			super(list);
-
-			this.filter = filter;
-			this.observer = observer;
-			
-			try	{
-				loop(dir);
-			}
-			catch (RuntimeException e)	{
-				if (e.getMessage() == null || e.getMessage().equals("mine") == false)
-					throw e;
-			}
-		}
-							
-		protected void visit(File f)	{
-			if (observer.canceled())
-				throw new RuntimeException("mine");
-				
-			if (filter.isValid(f) != null)
-				super.visit(f);
-		}
-	}
-
-
-
 	private ValidityFilter getFilenameValidityFilter()	{
 		return new DefaultFilenameValidityFilter()	{
 			private RE expr = OS.supportsCaseSensitiveFiles()
@@ -264,6 +229,10 @@ public class ConcordanceController extends AbstractSwingController
 		return getConcordanceView().getModeCombo().getSelectedItem().equals(FILE_CONTENTS);
 	}
 
+	private boolean isDuplicateSearch()	{
+		return getConcordanceView().getModeCombo().getSelectedItem().equals(FILE_DUPLICATES);
+	}
+
 	private String getFilenamePattern()	{
 		String s = getConcordanceView().getFilenamePattern().getText();
 		if (s.length() <= 0)
@@ -26,6 +26,7 @@ public class ConcordancePanel extends JScrollPane implements
 	private JPanel panel;
 	private Concordance.Block selectedBlock;
 	private JTextComponent prevTextarea;
+	private int blockCount;	// blocks added by addBlock()
 	
 	
 	public ConcordancePanel() {
@@ -87,6 +88,35 @@ public class ConcordancePanel extends JScrollPane implements
 	}
 
 
+	/** Clears panel before blocks are added one by one while searching. */
+	public void clear()	{
+		cleanListeners();
+		blockCount = 0;
+
+		EventUtil.invokeLaterOrNow(new Runnable()	{
+			public void run()	{
+				panel.removeAll();
+				setBorder(BorderFactory.createTitledBorder("Searching Concordances ..."));
+				panel.revalidate();
+				panel.repaint();
+			}
+		});
+	}
+
+	/** Adds a block found by a running search, to be called after clear(). */
+	public void addBlock(Concordance.Block block)	{
+		final int count = ++blockCount;
+		addBlockToPanel(block, count - 1);
+
+		EventUtil.invokeLaterOrNow(new Runnable()	{
+			public void run()	{
+				panel.revalidate();
+				setBorder(BorderFactory.createTitledBorder("Found "+count+" Concordance Blocks:"));
+			}
+		});
+	}
+
+
 	private void addBlockToPanel(Concordance.Block block, int index)	{
 		final JPanel p = new JPanel();
 		p.setLayout(new BoxLayout(p, BoxLayout.Y_AXIS));
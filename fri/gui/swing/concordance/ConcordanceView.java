@@ -38,6 +38,7 @@ public class ConcordanceView extends DefaultSwingView
 		modeCombo = new ConstantHeightComboBox();
 		modeCombo.addItem(ConcordanceController.FILE_CONTENTS);
 		modeCombo.addItem(ConcordanceController.FILE_NAMES);
+		modeCombo.addItem(ConcordanceController.FILE_DUPLICATES);
 
 		filenamePattern = new ConcordanceFilenameCombo();
 
@@ -24,7 +24,6 @@ public class FilterModel extends DefaultModel implements
 	private boolean trimLines = true, normalizeLines = true;
 	private String charsToRemove = "{};";
 	private int charMinimum = 5;
-	private StringBuffer sb = new StringBuffer(120);
 	private Properties props;
 	private FilterTreeModel filterTreeModel;
 	
@@ -91,7 +90,7 @@ public class FilterModel extends DefaultModel implements
 	}
 	
 	
-	/** Implements ValidityFilter and checks with current parameters. */
+	/** Implements ValidityFilter and checks with current parameters. Can be called by parallel threads. */
 	public Object isValid(Object o)	{
 		String line = o.toString();
 		
@@ -99,6 +98,7 @@ public class FilterModel extends DefaultModel implements
 			return null;
 			
 		if (charsToRemove != null && charsToRemove.length() > 0)	{
+			StringBuffer sb = new StringBuffer(line.length());
 			boolean found = false;
 
 			for (int i = 0; i < line.length(); i++)	{
@@ -112,17 +112,12 @@ public class FilterModel extends DefaultModel implements
 			
 			if (found)
 				line = sb.toString();
-			
-			sb.setLength(0);
 		}
 
 		if ((line = checkQuick(line)) == null)
 			return null;
 		
-		if (filterTreeModel == null)
-			filterTreeModel = FilterTreeModelFactory.singleton().get(filterTreeModelName);
-
-		Condition condition = (Condition) ((FilterTreeNode)filterTreeModel.getRoot()).getUserObject();
+		Condition condition = (Condition) ((FilterTreeNode)getFilterTreeModel().getRoot()).getUserObject();
 
 		Boolean b = (Boolean)condition.evaluate(line);
 		//System.err.println("Condition returned "+b+" for >"+line+"< on expression: "+condition);
@@ -132,6 +127,12 @@ public class FilterModel extends DefaultModel implements
 		return line;
 	}
 
+	private synchronized FilterTreeModel getFilterTreeModel()	{
+		if (filterTreeModel == null)
+			filterTreeModel = FilterTreeModelFactory.singleton().get(filterTreeModelName);
+		return filterTreeModel;
+	}
+
 	private String checkQuick(String line)	{
 		if (isEmptyLine(line))
 			return null;
@@ -89,7 +89,10 @@ public class DirDiffTree extends JTree implements
 							(len.equals("") ? "" : len+"  |  ")+
 							date+"  |  "+
 							readwrite;
-					
+
+					if (n.getFirstDifference() >= 0L)
+						tooltip += "  |  First Difference at Byte "+n.getFirstDifference();
+
 					return tooltip;
 				}
 			}
@@ -2,22 +2,31 @@ package fri.gui.swing.diff;
 
 import java.awt.event.*;
 import java.io.File;
+import java.io.IOException;
 import javax.swing.*;
 import javax.swing.text.*;
 import fri.util.diff.*;
+import fri.util.props.PropertyUtil;
 import fri.gui.CursorUtil;
 import fri.gui.swing.fileloader.*;
 import fri.gui.swing.document.DocumentUtil;
 
 /**
 	A Panel that hosts two textareas that render the result of a Diff comparison.
+	<p>
+	When one of the files is bigger than system property "fileDiffMappedMB"
+	(default 16), both files are compared as MappedLines, and only the changes
+	with some lines around them are rendered. Spaces are not ignored then.
 */
 
 public class FileDiffPanel extends DiffPanel
 {
 	private DiffTextArea ta1, ta2;	// holding file texts
 	private PlainDocument doc1, doc2;	// temporary Documents for FileLoader
+	private MappedLines lines1, lines2;	// big files are mapped, not loaded into Documents
 	private FileLoader loader1, loader2;	// temporary file loaders
+	private static final long MAPPED_SIZE = 1048576L * PropertyUtil.getSystemInteger("fileDiffMappedMB", 16);
+	private static final int CONTEXT_LINES = 3;
 
 
 	/** New empty window. */
@@ -93,15 +102,24 @@ public class FileDiffPanel extends DiffPanel
 
 		CursorUtil.setWaitCursor(this);
 
-		FileLoader loader = new TextFileLoader(
-				isLeft ? file1 : file2,
-				isLeft ? (doc1 = new PlainDocument()) : (doc2 = new PlainDocument()),
-				isLeft ? splitPane.getPanel1() : splitPane.getPanel2(),
-				new TextLoadObserver(isLeft),
-				null,
-				null,
-				true,
-				true);	// encoding
+		if (isLeft)
+			lines1 = null;
+		else
+			lines2 = null;
+
+		FileLoader loader;
+		if (isMapped(file))
+			loader = new MappedLinesLoader(file, isLeft);
+		else
+			loader = new TextFileLoader(
+					isLeft ? file1 : file2,
+					isLeft ? (doc1 = new PlainDocument()) : (doc2 = new PlainDocument()),
+					isLeft ? splitPane.getPanel1() : splitPane.getPanel2(),
+					new TextLoadObserver(isLeft),
+					null,
+					null,
+					true,
+					true);	// encoding
 				
 		if (isLeft)
 			loader1 = loader;
@@ -131,6 +149,32 @@ public class FileDiffPanel extends DiffPanel
 	}
 
 
+	/** Maps a big file and finds its lines, instead of loading it into a Document. */
+	private class MappedLinesLoader extends FileLoader
+	{
+		private boolean isLeft;
+		
+		MappedLinesLoader(File file, boolean isLeft)	{
+			super(file, new TextLoadObserver(isLeft), null);
+			this.isLeft = isLeft;
+		}
+		
+		protected void work(int len)
+			throws Exception
+		{
+			MappedLines lines = new MappedLines(file);
+			if (isLeft)
+				lines1 = lines;
+			else
+				lines2 = lines;
+		}
+	}
+
+	private boolean isMapped(File file)	{
+		return file != null && file.length() >= MAPPED_SIZE;
+	}
+
+
 
 	private synchronized void compareIfBothLoaded(boolean isLeft)	{
 		System.err.println("FileDiffPanel, comparing files "+file1+", "+file2);
@@ -152,6 +196,11 @@ public class FileDiffPanel extends DiffPanel
 	}
 
 	protected void compare()	{
+		if (file1 != null && file2 != null && (isMapped(file1) || isMapped(file2)))	{
+			compareMapped();
+			return;
+		}
+		
 		// when loading one after another, create empty defaults
 		if (doc1 == null)
 			doc1 = new PlainDocument();
@@ -182,6 +231,33 @@ public class FileDiffPanel extends DiffPanel
 	}
 
 
+	/** Compare big files by their mapped lines, render only changes and some lines around them. */
+	private void compareMapped()	{
+		BalancedLines [] leftRight;
+		try	{
+			if (lines1 == null)	// the smaller file, or mapping failed in loader
+				lines1 = new MappedLines(file1);
+			if (lines2 == null)
+				lines2 = new MappedLines(file2);
+			
+			leftRight = BalancedLines.createExcerpts(lines1, lines2, CONTEXT_LINES);
+		}
+		catch (IOException e)	{
+			JOptionPane.showMessageDialog(
+					this,
+					e.getMessage(),
+					"File Error",
+					JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		fillDiffListComboBox(leftRight);
+
+		ta1.setDiffLines(leftRight[0]);
+		ta2.setDiffLines(leftRight[1]);
+	}
+
+
 	/** When ignoring spaces, a special SpaceIgnoringString is used for diff comparison. */
 	private Object [] createSpaceFilters(Object [] lines)	{
 		Object [] oarr = new Object[lines.length];
@@ -337,6 +413,10 @@ public class FileDiffPanel extends DiffPanel
 		PlainDocument doc = doc1;
 		doc1 = doc2;
 		doc2 = doc;
+		
+		MappedLines lines = lines1;
+		lines1 = lines2;
+		lines2 = lines;
 	}
 
 	
@@ -293,19 +293,19 @@ public class BufferedTreeNode extends DefaultMutableTreeNode implements
 				treepanel.getShowHidden());
 								
 			
-		// remove children not contained in new list			
+		// remove children not contained in new list, index labels to avoid nested loops
+		Hashtable labels = new Hashtable(Math.max(11, list != null ? list.size() * 2 : 0));
+		for (int j = 0; list != null && j < list.size(); j++)	{
+			NetNode fn2 = (NetNode)list.elementAt(j);
+			labels.put(fn2.getLabel(), fn2);
+		}
+		
 		int anz = getChildCount();
 		for (int i = anz - 1; i >= 0; i--)	{
 			// Liste von hinten durchgehen, da herausgeloescht wird
 			BufferedTreeNode d = (BufferedTreeNode)getChildAt(i);
-			boolean found = false;
 			NetNode fn1 = (NetNode)d.getUserObject();
-
-			for (int j = 0; list != null && j < list.size(); j++)	{
-				NetNode fn2 = (NetNode)list.elementAt(j);
-				if (fn2.getLabel().equals(fn1.getLabel()))
-					found = true;
-			}
+			boolean found = labels.get(fn1.getLabel()) != null;
 
 			if (found == false)	{	// nodeDeleted()
 				d.removeNodeListener();
@@ -134,6 +134,7 @@ public class FileNode implements NetNode
 		//System.err.println("initing "+file.toString());
 		// set display-label from Java-File to be consistent
 		File f = getFile();
+		long oldSize = size, oldModified = modified;
 		String path = f.getPath();   // was toString(), but Java 11 returns different from toString() for drives
 		if (path.equals(rootDirectory))	{
 			label = path;
@@ -177,6 +178,9 @@ public class FileNode implements NetNode
 		this.size = f.length();
 		this.modified = f.lastModified();
 		
+		if (parent != null && oldModified != 0L && (oldSize != size || oldModified != modified))
+			FolderSizeIndex.invalidate(parent.getFile());	// was initialized before and changed
+		
 		// reset indicator for refreshing file information		
 		tooltip = null;
 		// if folder, this is not calculated
@@ -1325,44 +1329,11 @@ public class FileNode implements NetNode
 				// call medium to list nodes
 				String [] names = listDisk(scanDrives);
 				
-				// delete not existing children
-				if (children != null)	{
-					for (int i = children.size() - 1; i >= 0; i--)	{
-						FileNode fn = (FileNode)children.elementAt(i);
-						boolean found = false;
-						for (int j = 0; names != null && !found && j < names.length; j++)	{
-							if (names[j].equals(fn.getLabel()))
-								found = true;
-						}
-						if (found == false)	{
-							fn.listeners = null;
-							children.removeElement(fn);
-							//changed = true;
-						}
-					}
-				}
-				else	{	// allocate array for children
+				if (children == null)	// allocate array for children
 					children = new Vector(names != null ? names.length : 0);
-				}
-		
-				// insert new children
-				for (int i = 0; names != null && i < names.length; i++)	{
-					FileNode fn = null;
-					for (int j = 0; fn == null && j < children.size(); j++)	{
-						FileNode fn1 = (FileNode)children.elementAt(j);
-						if (names[i].equals(fn1.getLabel()))
-							fn = fn1;
-					}
-					if (fn == null)	{
-						fn = new FileNode(this, names[i]);
-						children.addElement(fn);
-						//changed = true;
-					}
-					else	{
-						//System.err.println("  initing "+fn.getFullText());
-						fn.init();	// reset node as it can be changed in size or time ...
-					}
-				}
+				
+				if (reconcileChildren(names))
+					FolderSizeIndex.invalidate(getFile());
 				
 				setRecursiveSize(-1);	// folder size is not calculated
 					
@@ -1374,6 +1345,74 @@ public class FileNode implements NetNode
 	}
 
 
+	/*
+		Merge the names read from medium into buffered children in linear time.
+		Children are indexed by label, so deleted ones are dropped, new ones are
+		allocated, and only those that changed in size, time or type are re-initialized.
+		The caller fires one childrenRefreshed() event for the whole diff.
+		@return true if children were inserted or deleted.
+	*/
+	private boolean reconcileChildren(String [] names)	{
+		Hashtable index = new Hashtable(Math.max(11, children.size() * 2));
+		for (int i = 0; i < children.size(); i++)	{
+			FileNode fn = (FileNode)children.elementAt(i);
+			index.put(fn.getLabel(), fn);
+		}
+		
+		Hashtable onDisk = new Hashtable(Math.max(11, names != null ? names.length * 2 : 0));
+		for (int i = 0; names != null && i < names.length; i++)
+			onDisk.put(names[i], names[i]);
+		
+		// delete not existing children, keeping the order of the remaining ones
+		Vector kept = new Vector(children.size());
+		for (int i = 0; i < children.size(); i++)	{
+			FileNode fn = (FileNode)children.elementAt(i);
+			if (onDisk.get(fn.getLabel()) != null)	{
+				kept.addElement(fn);
+			}
+			else	{
+				fn.listeners = null;
+				index.remove(fn.getLabel());
+			}
+		}
+		boolean changed = (kept.size() != children.size());
+		if (changed)	{
+			children.removeAllElements();
+			children.addAll(kept);
+		}
+		
+		// insert new children, refresh changed ones
+		for (int i = 0; names != null && i < names.length; i++)	{
+			FileNode fn = (FileNode)index.get(names[i]);
+			if (fn == null)	{
+				fn = new FileNode(this, names[i]);
+				children.addElement(fn);
+				index.put(names[i], fn);
+				changed = true;
+			}
+			else
+			if (fn.isChangedOnDisk())	{
+				//System.err.println("  initing "+fn.getFullText());
+				fn.init();	// reset node as it was changed in size or time ...
+			}
+			else
+			if (fn.isLeaf() == false)	{
+				fn.setRecursiveSize(-1);	// something deeper could have changed
+			}
+		}
+		return changed;
+	}
+
+	// @return true if size, modification time or leaf state differ from medium.
+	private boolean isChangedOnDisk()	{
+		File f = getFile();
+		return
+			f.lastModified() != modified ||
+			f.length() != size ||
+			(isDrive() == false && f.isDirectory() == isLeaf);
+	}
+
+
 	// apply filter to list if filterText is not null
 	private Vector listFiltered()	{
 		return listFiltered(false);
@@ -1434,15 +1473,15 @@ public class FileNode implements NetNode
 	
 		
 	private int checkListForDirty(String [] list, boolean floppyTest)	{
+		Hashtable onDisk = new Hashtable(Math.max(11, list != null ? list.length * 2 : 0));
+		for (int j = 0; list != null && j < list.length; j++)
+			onDisk.put(list[j], list[j]);
+		
 		// compare all children by label
 		for (int i = 0; i < children.size(); i++)	{
 			FileNode fn = (FileNode)children.elementAt(i);
 			if (floppyTest == false || fn.isFloppy() == false)	{
-				boolean found = false;
-				for (int j = 0; found == false && j < list.length; j++)
-					if (list[j].equals(fn.getLabel()))
-						found = true;
-				if (found == false)
+				if (onDisk.get(fn.getLabel()) == null)
 					return NEEDS_REFRESH;
 			}
 			/*
@@ -1807,6 +1846,7 @@ public class FileNode implements NetNode
 
 	private void fireNodeDeleted()	{	// called by the node
 		((FileNode)getParent()).children.removeElement(this);
+		FolderSizeIndex.invalidate(((FileNode)getParent()).getFile());
 		//System.err.println("removeElement "+this+" from "+parent.getFullText()+" = "+ret);
 
 		if (listeners == null)
@@ -1829,6 +1869,7 @@ public class FileNode implements NetNode
 		if (children == null)
 			children = new Vector();
 		children.addElement(newnode);
+		FolderSizeIndex.invalidate(getFile());
 				
 		if (listeners == null)
 			return;	// temporary allocated node
@@ -1969,15 +2010,37 @@ public class FileNode implements NetNode
 			if (recursiveSizeReady())	// do not calculate every time
 				return recursiveSize;
 			
+			if (FileNode.filterText == null && isComputer() == false)	{	// look for persistent size
+				FolderSizeIndex.Entry entry = FolderSizeIndex.get(getFile());
+				if (entry != null)	{
+					setRecursiveSize(size + entry.size + entry.folderSize);
+					return recursiveSize;
+				}
+			}
+			
 			Vector v = listFiltered();
+			long ownSize = 0L, ownFiles = 0L;
+			Vector subfolders = new Vector();
 			
 			for (int i = 0; v != null && i < v.size(); i++)	{
 				NetNode n = (NetNode)v.elementAt(i);
-				size += n.getRecursiveSize();
+				long childSize = n.getRecursiveSize();
+				size += childSize;
+				
+				if (n.isLeaf())	{
+					ownSize += childSize;
+					ownFiles++;
+				}
+				else	{
+					subfolders.addElement(((File)n.getObject()).getName());
+				}
 			}
 			
-			if (FileNode.filterText == null)	// if there was set no filter
+			if (FileNode.filterText == null)	{	// if there was set no filter
 				setRecursiveSize(size);	// buffer recursive size
+				if (isComputer() == false)
+					FolderSizeIndex.put(getFile(), ownSize, ownFiles, (String[])subfolders.toArray(new String[subfolders.size()]));
+			}
 		}
 		
 		return size;
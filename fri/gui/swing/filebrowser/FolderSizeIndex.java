@@ -0,0 +1,188 @@
+package fri.gui.swing.filebrowser;
+
+import java.io.*;
+import java.util.*;
+import fri.util.props.ConfigDir;
+import fri.util.props.PropertyUtil;
+
+/**
+	Persistent index of folder contents, so that big folders must
+	not be walked every time their recursive size is needed.
+	<p>
+	An entry holds only the own contents of one folder: the size and count of
+	the files directly within it, the names of its subfolders, and the
+	modification time of the folder when the entry was calculated.
+	The recursive size is summed up from the entries of the folder and all
+	its subfolders, and every one of these folders must still have its
+	stored modification time, so that a created, deleted or renamed item at
+	any depth makes the sum unavailable. Only folders are examined by this,
+	never files.
+	<p>
+	A file that is rewritten in place does not change the modification time
+	of its folder. Such a change is noticed when the FileBrowser invalidates
+	the folder, or when the entry gets older than system property
+	"folderSizeIndexHours" (default 24).
+	<p>
+	The index is stored in FolderContents.properties in the filebrowser configuration directory.
+*/
+
+public abstract class FolderSizeIndex
+{
+	/** Recursive content size and counts of a folder. */
+	public static class Entry
+	{
+		/** Size of all contained files. */
+		public final long size;
+		/** Sum of the lengths of all contained folders, as reported by File.length(). */
+		public final long folderSize;
+		/** Count of all contained files and folders. */
+		public final long files, folders;
+
+		Entry(long size, long folderSize, long files, long folders)	{
+			this.size = size;
+			this.folderSize = folderSize;
+			this.files = files;
+			this.folders = folders;
+		}
+	}
+
+	private static final String filename = ConfigDir.dir()+"filebrowser"+File.separator+"FolderContents.properties";
+	private static final long maxAge = 3600000L * PropertyUtil.getSystemInteger("folderSizeIndexHours", 24);
+	private static final int MAX_ENTRIES = 200000;
+	private static Map index;
+	private static boolean dirty;
+
+
+	private FolderSizeIndex()	{}
+
+
+	/** @return the recursive contents of passed folder, or null if some folder within must be calculated. */
+	public static synchronized Entry get(File folder)	{
+		long [] sums = new long[4];
+		if (add(folder.getAbsoluteFile(), false, sums, System.currentTimeMillis()) == false)
+			return null;
+
+		return new Entry(sums[0], sums[1], sums[2], sums[3]);
+	}
+
+	/**
+		Store the own contents of a folder.
+		@param folder the folder that was listed.
+		@param size size of the files directly within folder.
+		@param files count of the files directly within folder.
+		@param subfolders names of the folders directly within folder.
+	*/
+	public static synchronized void put(File folder, long size, long files, String [] subfolders)	{
+		long modified = folder.lastModified();
+		if (modified == 0L)	// no real folder
+			return;
+
+		StringBuffer sb = new StringBuffer(modified+" "+System.currentTimeMillis()+" "+size+" "+files);
+		for (int i = 0; i < subfolders.length; i++)
+			sb.append('/').append(subfolders[i]);
+
+		ensureIndex().put(folder.getAbsolutePath(), sb.toString());
+		dirty = true;
+	}
+
+	/** Forget the contents of passed folder, as they changed. This makes the sums of all parents unavailable. */
+	public static synchronized void invalidate(File folder)	{
+		if (ensureIndex().size() > 0)
+			remove(folder.getAbsolutePath());
+	}
+
+	/** Write the index to disk if it changed. */
+	public static synchronized void save()	{
+		if (index == null || dirty == false)
+			return;
+
+		try	{
+			new File(filename).getParentFile().mkdirs();
+			Properties props = new Properties();
+			props.putAll(index);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(filename));
+			try	{
+				props.store(out, "Folder contents: modified calculated size files/subfolder/subfolder...");
+			}
+			finally	{
+				out.close();
+			}
+			dirty = false;
+		}
+		catch (IOException e)	{
+			System.err.println("FEHLER: Sichern "+filename+", "+e.getMessage());
+		}
+	}
+
+
+	// adds the stored contents of folder and all its subfolders to sums (size, folderSize, files, folders)
+	private static boolean add(File folder, boolean subfolder, long [] sums, long now)	{
+		String path = folder.getPath();
+		String value = (String)ensureIndex().get(path);
+		if (value == null)
+			return false;
+
+		try	{
+			int names = value.indexOf('/');
+			StringTokenizer stok = new StringTokenizer(names < 0 ? value : value.substring(0, names));
+			long modified = Long.parseLong(stok.nextToken());
+			long calculated = Long.parseLong(stok.nextToken());
+			long size = Long.parseLong(stok.nextToken());
+			long files = Long.parseLong(stok.nextToken());
+
+			if (modified != 0L && modified == folder.lastModified() && now - calculated < maxAge)	{
+				sums[0] += size;
+				sums[2] += files;
+				if (subfolder)	{
+					sums[1] += folder.length();
+					sums[3]++;
+				}
+
+				if (names >= 0)	{
+					stok = new StringTokenizer(value.substring(names), "/");
+					while (stok.hasMoreTokens())
+						if (add(new File(folder, stok.nextToken()), true, sums, now) == false)
+							return false;	// own entry is still valid
+				}
+				return true;
+			}
+		}
+		catch (Exception e)	{	// NumberFormatException, NoSuchElementException
+			System.err.println("WARNING: invalid folder size entry "+folder+" = "+value);
+		}
+
+		remove(path);
+		return false;
+	}
+
+	private static void remove(String path)	{
+		if (index.remove(path) != null)
+			dirty = true;
+	}
+
+	private static Map ensureIndex()	{
+		if (index == null)	{
+			index = new LinkedHashMap(1024, 0.75f, true)	{	// least recently used get removed
+				protected boolean removeEldestEntry(Map.Entry eldest)	{
+					return size() > MAX_ENTRIES;
+				}
+			};
+			Properties props = new Properties();
+			try	{
+				InputStream in = new BufferedInputStream(new FileInputStream(filename));
+				try	{
+					props.load(in);
+				}
+				finally	{
+					in.close();
+				}
+			}
+			catch (IOException e)	{
+				// not yet saved
+			}
+			index.putAll(props);
+		}
+		return index;
+	}
+
+}
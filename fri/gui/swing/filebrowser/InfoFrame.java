@@ -540,6 +540,7 @@ public class InfoFrame extends JFrame implements
 			getRecursiveSize((File)node.getObject(), node);
 		}
 		setSize(true);
+		FolderSizeIndex.save();
 		System.err.println("run() ended");
 	}
 
@@ -567,7 +568,20 @@ public class InfoFrame extends JFrame implements
 			//System.err.println("Leaf "+f+" returns size "+size);
 			return size;
 		}
+		
+		// look for a persistent size of an unfiltered calculation
+		FolderSizeIndex.Entry entry = (filter == null) ? FolderSizeIndex.get(f) : null;
+		if (entry != null)	{
+			long contents = entry.size + (node != null ? entry.folderSize : 0L);
+			addSize(contents, entry.folders, entry.files);
+			size += contents;
+			
+			if (node == null && nonManipulable != null)
+				setSubFolderSize(nonManipulable, size);
 			
+			return size;
+		}
+		
 		Vector v = new Vector();
 		if (nonManipulable != null)	{	// first node or drive
 			v = nonManipulable.listSilent();
@@ -583,6 +597,8 @@ public class InfoFrame extends JFrame implements
 		// empty folder?
 		if (v.size() <= 0)	{
 			//System.err.println("Empty folder "+f+" returns size "+size);
+			if (filter == null)
+				FolderSizeIndex.put(f, 0L, 0L, new String[0]);
 			return size;
 		}
 		
@@ -594,7 +610,10 @@ public class InfoFrame extends JFrame implements
 				v = NodeFilter.filter(filter, v, include, showfiles, showhidden);
 		}
 		
-		// calculate size of all children
+		// calculate size of all children, remember own contents for the index
+		long ownSize = 0L, ownFiles = 0L;
+		Vector subfolders = new Vector();
+		
 		for (int i = 0; i < v.size(); i++)	{
 			if (interrupted)	{
 				return size;
@@ -603,22 +622,34 @@ public class InfoFrame extends JFrame implements
 			Filterable o = (Filterable)v.elementAt(i);
 			//System.err.println("getting size of "+o);
 			NetNode nn = null;
+			File child;
 			long currSize = 0L;
+			long foldersBefore = folders;
 			if (o instanceof File)	{
-				currSize = getRecursiveSize((File)o);
+				child = (File)o;
+				currSize = getRecursiveSize(child);
 				//System.err.println("File "+o+" returns size "+currSize);
 			}
 			else	{
 				nn = (NetNode)o;
+				child = (File)nn.getObject();
 				if (nn.isManipulable() == false)	// list a drive by NetNode
-					currSize = getRecursiveSize((File)nn.getObject(), nn);
+					currSize = getRecursiveSize(child, nn);
 				else	// list by File to avoid allocating NetNodes
-					currSize = getRecursiveSize((File)nn.getObject());
+					currSize = getRecursiveSize(child);
 				//System.err.println("NetNode "+nn+" returns size "+currSize);
 			}
 
 			size += currSize;
 			
+			if (folders == foldersBefore)	{	// was a file
+				ownSize += currSize;
+				ownFiles++;
+			}
+			else	{
+				subfolders.addElement(child.getName());
+			}
+			
 			// set the size of subfolders on first level to display
 			if (nn != null && nn.isLeaf() == false)	{
 				//System.err.println("setting size "+currSize+" to "+nn);
@@ -628,6 +659,9 @@ public class InfoFrame extends JFrame implements
 		
 		if (node == null && nonManipulable != null)
 			setSubFolderSize(nonManipulable, size);
+		
+		if (filter == null && interrupted == false)
+			FolderSizeIndex.put(f, ownSize, ownFiles, (String[])subfolders.toArray(new String[subfolders.size()]));
 					
 		return size;
 	}
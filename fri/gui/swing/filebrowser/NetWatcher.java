@@ -1,6 +1,10 @@
 package fri.gui.swing.filebrowser;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.nio.file.*;
 import fri.util.props.PropertyUtil;
 
 /**
@@ -13,6 +17,13 @@ import fri.util.props.PropertyUtil;
 		list(refresh = true) is called. If return is UP_TO_DATE,
 		the container is followed recursively.
 		For files the init() method gets called.
+	<p>
+	Expanded containers that represent local directories are not polled
+	but registered at a java.nio.file.WatchService. Their create, delete and
+	modify events trigger a refresh of just the affected container or file.
+	Containers on network filesystems, containers whose watch key reported
+	an OVERFLOW, and all other NetNodes are polled like before.
+	System property "refreshByPolling" switches off event-driven watching.
 */
 
 public class NetWatcher extends Thread implements
@@ -22,9 +33,25 @@ public class NetWatcher extends Thread implements
 	private TreeEditController tc;
 	// milli-seconds default refresh interval
 	private static final int interval = PropertyUtil.getSystemInteger("refreshInterval", 5000);
+	private static final boolean pollingOnly = PropertyUtil.checkSystemProperty("refreshByPolling");
+	// milli-seconds to wait for further events of a burst
+	private static final int COALESCE_MILLIS = 200;
+	private static final int MAX_COALESCE_MILLIS = 2000;
+	// filesystems where WatchService does not report changes made by other hosts
+	private static final String [] NETWORK_FILESYSTEMS = {
+		"nfs", "nfs4", "cifs", "smb", "smbfs", "smb2", "smb3", "afpfs", "webdav", "davfs", "fuse.sshfs", "9p",
+	};
 	private boolean stopped = false;
-	
-	
+
+	private WatchService watchService;	// null when only polling
+	private Hashtable keyToNode = new Hashtable();	// WatchKey -> NetNode
+	private Hashtable nodeToKey = new Hashtable();	// NetNode -> WatchKey
+	private Hashtable polledNodes = new Hashtable();	// containers that can not be watched
+	private Hashtable dirtyNodes = new Hashtable();	// containers that need list(true)
+	private Hashtable modifiedNames = new Hashtable();	// container -> Hashtable of modified child names
+	private Hashtable visited;	// containers found expanded during last walk
+
+
 	/**
 		Create a new NetWatcher thread.
 		@param root root of filesystem to watch
@@ -35,63 +62,98 @@ public class NetWatcher extends Thread implements
 		this.tc = tc;
 		start();
 	}
-	
+
 	/** Terminates Thread by breaking run loop */
 	public void stopRefresh()	{
 		stopped = true;
 	}
-	
-	
+
+
 	// interface Runnable
-	
+
 	public void run()	{
 		System.err.println("    /// NetWatcher refresh thread started ...");
-		
+
 		setPriority(MIN_PRIORITY);
+		openWatchService();
+
 		long next = 5000;	// give time to initialize all
-		
+		long lastWalk = 0L;
+
 		while (stopped == false)	{
-			try	{
-				sleep(next);
+			if (watchService != null)	{
+				collectEvents(next);
 			}
-			catch (InterruptedException e)	{
-				//System.err.println("    /// NetWatcher - thread was interrupted ...");
+			else	{
+				try	{
+					sleep(next);
+				}
+				catch (InterruptedException e)	{
+					//System.err.println("    /// NetWatcher - thread was interrupted ...");
+				}
 			}
-						
+
+			if (stopped)
+				break;
+
 			if (!tc.transactionsInProgress())	{
 				long time1 = System.currentTimeMillis();
 
-				updateNode(root);
+				refreshDirtyNodes();
+
+				if (time1 - lastWalk >= interval - COALESCE_MILLIS)	{
+					visited = new Hashtable();
+					updateNode(root);
+					cancelUnvisitedKeys();
+					lastWalk = System.currentTimeMillis();
+				}
 				//System.err.println("============================");
 
 				long time2 = System.currentTimeMillis();
-				long diff = (time2 - time1);		
+				long diff = (time2 - lastWalk);
 
-				//System.err.println("      // NetWatcher needed "+diff+" millis for update.");
+				//System.err.println("      // NetWatcher needed "+(time2 - time1)+" millis for update.");
 				next = (long)interval - diff;
 				if (next < 1000)
 					next = 1000;	// short pause
 			}
-			else	{	// do not slow down transaction
+			else	{	// do not slow down transaction, events stay pending
 				next = interval;
 				//System.err.println("      // NetWatcher: no update, transactionsInProgress");
 				continue;
 			}
 		}
+
+		closeWatchService();
 		System.err.println("    /// NetWatcher refresh thread stopped.");
 	}
-	
+
 	private void updateNode(NetNode node)	{
 		if (stopped)
 			return;
-			
+
 		// run through all containers and compare their list with current list
 		if (node.getNetNodeListeners() != null)	{	// if there are GUI listeners
+			if (watchService != null && node.isLeaf() == false && node.isExpanded())	{
+				visited.put(node, node);
+
+				if (polledNodes.get(node) == null && (isWatched(node) || register(node)))	{
+					// events report changes of this container, just look for expanded sub-containers
+					Vector list = node.listSilent();
+					for (int i = 0; list != null && i < list.size(); i++)	{
+						NetNode nn = (NetNode)list.elementAt(i);
+						if (nn.isLeaf() == false)
+							updateNode(nn);
+					}
+					return;
+				}
+			}
+
 			//System.err.println("    /// updateNode "+node.getFullText());
 			int ret = node.checkForDirty();
 			if (ret == NetNode.NOT_EXPANDED || ret == NetNode.NOT_LISTED)
 				return;
-				
+
 			//System.err.println("net watcher checking: "+node);
 			Vector list = null;
 			if (ret == NetNode.NEEDS_REFRESH)	{
@@ -102,11 +164,224 @@ public class NetWatcher extends Thread implements
 			if (ret == NetNode.UP_TO_DATE)	{
 				list = node.listSilent();	// no refresh, but recursive evaluation
 			}
-			 	
+
 			for (int i = 0; list != null && i < list.size(); i++)	{
 				NetNode nn = (NetNode)list.elementAt(i);
 				updateNode(nn);
 			}
 		}
 	}
-}
\ No newline at end of file
+
+
+
+	// WatchService management
+
+	private void openWatchService()	{
+		if (pollingOnly)
+			return;
+
+		try	{
+			watchService = FileSystems.getDefault().newWatchService();
+		}
+		catch (Exception e)	{	// IOException, UnsupportedOperationException
+			System.err.println("WARNING: NetWatcher falls back to polling: "+e);
+		}
+	}
+
+	private void closeWatchService()	{
+		if (watchService == null)
+			return;
+
+		try	{
+			watchService.close();
+		}
+		catch (IOException e)	{
+			e.printStackTrace();
+		}
+		watchService = null;
+		keyToNode.clear();
+		nodeToKey.clear();
+	}
+
+	/* Wait for events, then drain the following ones of a burst into dirty node lists. */
+	private void collectEvents(long timeout)	{
+		try	{
+			WatchKey key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+			long coalesceEnd = System.currentTimeMillis() + MAX_COALESCE_MILLIS;
+
+			while (key != null && stopped == false)	{
+				processEvents(key);
+
+				if (System.currentTimeMillis() >= coalesceEnd)
+					break;	// refresh at least every MAX_COALESCE_MILLIS
+
+				key = watchService.poll(COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException e)	{
+			//System.err.println("    /// NetWatcher - thread was interrupted ...");
+		}
+		catch (ClosedWatchServiceException e)	{
+			stopped = true;
+		}
+	}
+
+	private void processEvents(WatchKey key)	{
+		NetNode node = (NetNode)keyToNode.get(key);
+
+		for (Iterator it = key.pollEvents().iterator(); it.hasNext(); )	{
+			WatchEvent event = (WatchEvent)it.next();
+			if (node == null)
+				continue;	// already cancelled
+
+			WatchEvent.Kind kind = event.kind();
+			if (kind == StandardWatchEventKinds.OVERFLOW)	{
+				System.err.println("NetWatcher event overflow, polling "+node.getFullText());
+				polledNodes.put(node, node);
+				dirtyNodes.put(node, node);
+			}
+			else
+			if (kind == StandardWatchEventKinds.ENTRY_MODIFY)	{
+				Hashtable names = (Hashtable)modifiedNames.get(node);
+				if (names == null)
+					modifiedNames.put(node, names = new Hashtable());
+				String name = event.context().toString();
+				names.put(name, name);
+			}
+			else	{	// ENTRY_CREATE, ENTRY_DELETE
+				dirtyNodes.put(node, node);
+			}
+		}
+
+		if (key.reset() == false || node == null || polledNodes.get(node) != null)	// directory gone or overflowed
+			unregister(key);
+	}
+
+	/* Rescan containers that had create or delete events, re-init children that had modify events. */
+	private void refreshDirtyNodes()	{
+		for (Enumeration e = dirtyNodes.keys(); e.hasMoreElements(); )	{
+			NetNode node = (NetNode)e.nextElement();
+			modifiedNames.remove(node);	// list(true) refreshes changed children
+
+			if (node.getNetNodeListeners() != null && node.isExpanded())	{
+				//System.err.println("event refresh: "+node);
+				node.list(true);
+			}
+		}
+		dirtyNodes.clear();
+
+		for (Enumeration e = modifiedNames.keys(); e.hasMoreElements(); )	{
+			NetNode node = (NetNode)e.nextElement();
+			Hashtable names = (Hashtable)modifiedNames.get(node);
+			Vector list = node.listSilent();
+			boolean needsRefresh = false;
+
+			for (int i = 0; list != null && i < list.size(); i++)	{
+				NetNode nn = (NetNode)list.elementAt(i);
+				if (names.remove(nn.getLabel()) != null && nn.isLeaf())
+					nn.init();
+			}
+
+			for (Enumeration e2 = names.keys(); needsRefresh == false && e2.hasMoreElements(); )	{
+				File f = new File((File)node.getObject(), (String)e2.nextElement());
+				if (f.isDirectory() == false)	// a not yet listed file
+					needsRefresh = true;
+			}
+
+			if (needsRefresh && node.getNetNodeListeners() != null && node.isExpanded())
+				node.list(true);
+		}
+		modifiedNames.clear();
+	}
+
+	private boolean isWatched(NetNode node)	{
+		WatchKey key = (WatchKey)nodeToKey.get(node);
+		if (key == null)
+			return false;
+
+		if (key.isValid() && node.getObject() instanceof File &&
+				key.watchable().equals(((File)node.getObject()).toPath()))
+			return true;
+
+		unregister(key);	// node was renamed or directory was removed
+		return false;
+	}
+
+	private boolean register(NetNode node)	{
+		if (node.getObject() instanceof File == false)	{
+			polledNodes.put(node, node);
+			return false;
+		}
+
+		try	{
+			Path path = ((File)node.getObject()).toPath();
+			if (isWatchable(path) == false)	{
+				polledNodes.put(node, node);
+				return false;
+			}
+
+			WatchKey key = path.register(
+					watchService,
+					new WatchEvent.Kind [] {
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY,
+					});
+			keyToNode.put(key, node);
+			nodeToKey.put(node, key);
+			//System.err.println("net watcher registered: "+node);
+		}
+		catch (Exception e)	{	// IOException, UnsupportedOperationException, InvalidPathException
+			//System.err.println("net watcher can not register "+node+": "+e);
+			polledNodes.put(node, node);
+			return false;
+		}
+
+		// catch changes between listing and registration
+		if (node.checkForDirty() == NetNode.NEEDS_REFRESH)
+			dirtyNodes.put(node, node);
+
+		return true;
+	}
+
+	private void unregister(WatchKey key)	{
+		key.cancel();
+		Object node = keyToNode.remove(key);
+		if (node != null && nodeToKey.get(node) == key)
+			nodeToKey.remove(node);
+	}
+
+	/* Cancel keys of collapsed or removed containers, forget their polling state. */
+	private void cancelUnvisitedKeys()	{
+		Vector gone = new Vector();
+		for (Enumeration e = nodeToKey.keys(); e.hasMoreElements(); )	{
+			Object node = e.nextElement();
+			if (visited.get(node) == null)
+				gone.addElement(nodeToKey.get(node));
+		}
+		for (int i = 0; i < gone.size(); i++)
+			unregister((WatchKey)gone.elementAt(i));
+
+		gone.removeAllElements();
+		for (Enumeration e = polledNodes.keys(); e.hasMoreElements(); )	{
+			Object node = e.nextElement();
+			if (visited.get(node) == null)
+				gone.addElement(node);
+		}
+		for (int i = 0; i < gone.size(); i++)
+			polledNodes.remove(gone.elementAt(i));
+
+		visited = null;
+	}
+
+	private boolean isWatchable(Path path)
+		throws IOException
+	{
+		String type = Files.getFileStore(path).type().toLowerCase();
+		for (int i = 0; i < NETWORK_FILESYSTEMS.length; i++)
+			if (type.equals(NETWORK_FILESYSTEMS[i]))
+				return false;
+		return true;
+	}
+
+}
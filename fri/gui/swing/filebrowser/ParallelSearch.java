@@ -0,0 +1,236 @@
+package fri.gui.swing.filebrowser;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+	Parallel search engine for SearchFrame.
+	Directories are walked by a ForkJoinPool, every directory being a task
+	that forks its sub-directories. The files of a directory are matched
+	against the SearchCondition on a bounded worker pool, when its queue is full
+	the walking thread matches by itself. Found files are passed to the
+	Receiver in batches. Cancel and progress are routed through the
+	SearchResultDispatcher.
+*/
+
+class ParallelSearch
+{
+	/** Receives found files in batches, from any thread. */
+	public interface Receiver
+	{
+		public void addFound(Vector files);
+	}
+
+	private static final int BATCH_SIZE = 64;
+	private static final long BATCH_MILLIS = 250;
+	private static final long PROGRESS_MILLIS = 100;
+
+	private final SearchCondition condition;
+	private final SearchResultDispatcher dlg;
+	private final Receiver receiver;
+	private final boolean searchArchives;
+	private final int parallelism;
+	private ForkJoinPool walkers;
+	private ThreadPoolExecutor matchers;
+	private Vector found = new Vector();
+	private long lastFlush, lastProgress;
+
+
+	/**
+		Create a parallel search.
+		@param condition the conditions every file must match.
+		@param dlg observer for cancel and progress, receives grep results.
+		@param receiver receives found files in batches.
+		@param searchArchives true when archives are searched (NetNode lists are cloned).
+		@param parallelism number of walking and matching threads.
+	*/
+	public ParallelSearch(
+		SearchCondition condition,
+		SearchResultDispatcher dlg,
+		Receiver receiver,
+		boolean searchArchives,
+		int parallelism)
+	{
+		this.condition = condition;
+		this.dlg = dlg;
+		this.receiver = receiver;
+		this.searchArchives = searchArchives;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+
+	/** Search all passed start nodes, return when all files were matched or search was canceled. */
+	public void search(NetNode [] startNodes)	{
+		walkers = new ForkJoinPool(parallelism, new ForkJoinPool.ForkJoinWorkerThreadFactory()	{
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool)	{
+				ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		}, null, false);
+
+		matchers = new ThreadPoolExecutor(
+				parallelism,
+				parallelism,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue(parallelism * 64),
+				new ThreadFactory()	{
+					public Thread newThread(Runnable r)	{
+						Thread t = new Thread(r, "SearchMatcher");
+						t.setDaemon(true);
+						t.setPriority(Thread.MIN_PRIORITY);
+						return t;
+					}
+				},
+				new ThreadPoolExecutor.CallerRunsPolicy());	// back pressure when queue is full
+		condition.setEntryMatchers(matchers);	// entries of archives are matched while reading on
+
+		try	{
+			Vector tasks = new Vector(startNodes.length);
+			for (int i = 0; i < startNodes.length; i++)
+				tasks.addElement(new DirectoryTask((File)startNodes[i].getObject(), startNodes[i]));
+
+			walkers.invoke(new RecursiveAction()	{
+				protected void compute()	{
+					invokeAll(tasks);
+				}
+			});
+		}
+		finally	{
+			walkers.shutdown();
+			matchers.shutdown();
+			try	{
+				while (matchers.awaitTermination(BATCH_MILLIS, TimeUnit.MILLISECONDS) == false)
+					flush(false);
+			}
+			catch (InterruptedException e)	{
+				matchers.shutdownNow();
+			}
+			condition.setEntryMatchers(null);
+			flush(true);
+		}
+	}
+
+
+
+	// a directory of the search tree, NetNode is used for root or drive, else null
+	private class DirectoryTask extends RecursiveAction
+	{
+		private final File f;
+		private final NetNode n;
+
+		DirectoryTask(File f, NetNode n)	{
+			this.f = f;
+			this.n = n;
+		}
+
+		protected void compute()	{
+			if (dlg.canceled())
+				return;
+
+			flush(false);	// deliver results of a slow period
+			dlg.setNote(n != null ? n.getFullText() : f.getPath());
+
+			Vector v = null;
+			if (n != null)	{	// root node or drive
+				v = n.listSilent();
+
+				if (v != null && searchArchives)	{
+					v = (Vector)v.clone();	// do not let created archive folders come into list
+				}
+			}
+			else	{	// below first level
+				String [] sarr = f.list();
+				v = new Vector(sarr != null ? sarr.length : 0);
+				for (int i = 0; sarr != null && i < sarr.length; i++)
+					v.addElement(new File(f, sarr[i]));
+			}
+
+			if (v == null || v.size() <= 0)	{
+				if (n != null && n.isLeaf())	{	// add target for containment search
+					v = new Vector(1);
+					v.addElement(n);
+				}
+				else
+					return;
+			}
+
+			Vector subTasks = new Vector();
+
+			for (int i = 0; i < v.size(); i++)	{
+				if (dlg.canceled())
+					return;
+
+				Object o = v.elementAt(i);
+				final File file;
+				if (o instanceof NetNode)	{
+					NetNode nn = (NetNode)o;
+					file = (File)nn.getObject();
+					if (nn.isLeaf() == false)
+						subTasks.addElement(new DirectoryTask(file, nn.isManipulable() ? null : nn));
+				}
+				else	{
+					file = (File)o;
+					if (file.isDirectory())
+						subTasks.addElement(new DirectoryTask(file, null));
+				}
+
+				matchers.execute(new Runnable()	{
+					public void run()	{
+						match(file);
+					}
+				});
+			}
+
+			invokeAll(subTasks);
+		}
+	}
+
+
+	private void match(File file)	{
+		if (dlg.canceled())
+			return;
+
+		progress();
+
+		Vector v = condition.match(file);
+		if (v != null)
+			addFound(v);
+	}
+
+	private void progress()	{
+		long now = System.currentTimeMillis();
+		synchronized(this)	{
+			if (now - lastProgress < PROGRESS_MILLIS)
+				return;
+			lastProgress = now;
+		}
+		dlg.progress(1L);
+	}
+
+	private void addFound(Vector files)	{
+		synchronized(this)	{
+			found.addAll(files);
+		}
+		flush(false);
+	}
+
+	private void flush(boolean always)	{
+		Vector batch;
+		synchronized(this)	{
+			long now = System.currentTimeMillis();
+			if (found.size() <= 0 || always == false && found.size() < BATCH_SIZE && now - lastFlush < BATCH_MILLIS)
+				return;
+
+			batch = found;
+			found = new Vector();
+			lastFlush = now;
+		}
+
+		if (dlg.canceled() == false)
+			receiver.addFound(batch);
+	}
+
+}
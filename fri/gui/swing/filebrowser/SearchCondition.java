@@ -2,22 +2,36 @@ package fri.gui.swing.filebrowser;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import fri.util.FileUtil;
 import fri.util.observer.CancelProgressObserver;
 import fri.util.os.OS;
+import fri.util.props.PropertyUtil;
 import fri.util.file.*;
 import fri.util.file.archive.*;
 
 /**
 	Mehrere verschiedene Bedingungen in einer Liste halten und
 	mittels einer Methode "match(File)" abfragbar machen.
+	<p>
+	Archives are read in one pass by ArchiveStream, nested archives down to
+	system property "searchArchiveDepth" (default 2). Entries up to "searchArchiveBufferSize"
+	bytes (default 256 KB) are held in memory and matched by the entry matchers, while the
+	archive is read on. Only matching entries are written to the extract folder, those that
+	were matched from the archive stream together in one more pass after the archive was read.
+	When replacing, archives are extracted like before, as the replacement writes files.
 */
 
 public class SearchCondition extends Vector
 {
+	private static final int archiveDepth = PropertyUtil.getSystemInteger("searchArchiveDepth", 2);
+	private static final int bufferSize = PropertyUtil.getSystemInteger("searchArchiveBufferSize", 256 * 1024);
+
 	private boolean searchArchives;
+	private SearchFrame dlg;
 	private CancelProgressObserver observer;
 	private Vector extractRootFolders;
+	private Executor entryMatchers;
 	
 	
 	/**
@@ -33,6 +47,7 @@ public class SearchCondition extends Vector
 		gnu.regexp.REException,
 		ArrayIndexOutOfBoundsException
 	{
+		this.dlg = dlg;
 		this.observer = dlg;
 		this.searchArchives = searchArchives;
 		
@@ -62,6 +77,7 @@ public class SearchCondition extends Vector
 		gnu.regexp.REException,
 		ArrayIndexOutOfBoundsException
 	{
+		this.dlg = dlg;
 		this.observer = dlg;
 		this.searchArchives = searchArchives;
 		
@@ -81,6 +97,15 @@ public class SearchCondition extends Vector
 	}
 
 
+	/**
+		Set the threads that match contents of archive entries held in memory.
+		Without, entries are matched by the thread that reads the archive.
+	*/
+	public void setEntryMatchers(Executor entryMatchers)	{
+		this.entryMatchers = entryMatchers;
+	}
+
+
 	/**
 		Match a File against all contained search criteria (SearchPattern).
 		Loop an archive file if archive option was given.
@@ -90,6 +115,10 @@ public class SearchCondition extends Vector
 		Vector v = new Vector();
 		
 		// identify and do archive
+		if (searchArchives && ArchiveFactory.isArchive(f) && dlg.isReplacing() == false)	{
+			matchStreamed(f, v);
+		}
+		else
 		if (searchArchives && ArchiveFactory.isArchive(f))	{
 			Archive archive = null;
 			try	{
@@ -113,12 +142,8 @@ public class SearchCondition extends Vector
 			}
 			finally	{
 				if (archive != null)	{
-					if (archive.getExtractRootFolder() != null)	{
-						if (extractRootFolders == null)
-							extractRootFolders = new Vector();
-							
-						extractRootFolders.add(archive.getExtractRootFolder());
-					}
+					if (archive.getExtractRootFolder() != null)
+						addExtractRootFolder(archive.getExtractRootFolder());
 					archive.close();
 				}
 			}
@@ -133,6 +158,132 @@ public class SearchCondition extends Vector
 		return v.size() > 0 ? v : null;
 	}
 
+	private void addExtractRootFolder(File folder)	{
+		synchronized(this)	{	// files are matched in parallel
+			if (extractRootFolders == null)
+				extractRootFolders = new Vector();
+		}
+		extractRootFolders.add(folder);
+	}
+
+
+	// read the archive in one pass, match entries from memory or stream, add matching files to v
+	private void matchStreamed(final File f, Vector v)	{
+		final SearchPattern contentPattern = getContentPattern();
+		final Vector results = new Vector();	// Files and FutureTasks in archive order
+		final Vector pending = new Vector();	// streamed entries that matched, extracted after walk
+		try	{
+			ArchiveStream.walk(f, archiveDepth, new ArchiveStream.EntryVisitor()	{
+				public boolean visitEntry(String path, long size, long time, InputStream in)
+					throws IOException
+				{
+					observer.progress(0L);
+					
+					byte [] content = null;
+					InputStream stream = in;
+					if (size < 0L || contentPattern != null && size <= bufferSize)	{
+						byte [] bytes = read(in, size < 0L ? bufferSize + 1 : (int)size);
+						if (bytes.length <= bufferSize)
+							content = bytes;
+						else	// too big, match the read part and the rest from stream
+							stream = new SequenceInputStream(new ByteArrayInputStream(bytes), in);
+					}
+					
+					final SearchFile sf = new SearchFile(f, path, size, time, content, stream, pending);
+					for (int i = 0; i < size(); i++)	{
+						SearchPattern patt = (SearchPattern)elementAt(i);
+						if (patt != contentPattern && patt.match(sf) == false)
+							return true;
+					}
+					
+					if (contentPattern == null)	{
+						results.add(sf.getFile());
+					}
+					else
+					if (content != null && entryMatchers != null)	{	// match while reading on
+						FutureTask task = new FutureTask(new Callable()	{
+							public Object call()
+								throws IOException
+							{
+								return contentPattern.match(sf) ? sf.getFile() : null;
+							}
+						});
+						entryMatchers.execute(task);
+						results.add(task);
+					}
+					else
+					if (contentPattern.match(sf))	{
+						results.add(sf.getFile());
+					}
+					
+					return observer.canceled() == false;
+				}
+			}, observer);
+		}
+		catch (Exception e)	{
+			e.printStackTrace();
+		}
+		finally	{
+			for (int i = 0; i < results.size(); i++)	{
+				Object o = results.get(i);
+				if (o instanceof FutureTask)	{
+					FutureTask task = (FutureTask)o;
+					task.run();	// help when the task still waits in queue, does nothing when it ran
+					try	{
+						o = task.get();
+					}
+					catch (ExecutionException e)	{
+						e.getCause().printStackTrace();
+						o = null;
+					}
+					catch (InterruptedException e)	{
+						Thread.currentThread().interrupt();
+						o = null;
+					}
+				}
+				if (o != null)
+					v.add(o);
+			}
+			
+			if (pending.size() > 0)	{
+				try	{
+					SearchFile.extractPending(f, pending, observer);
+				}
+				catch (Exception e)	{
+					e.printStackTrace();
+				}
+			}
+			
+			File extractRoot = SearchFile.getExtractRootFolder(f);
+			if (extractRoot.exists())
+				addExtractRootFolder(extractRoot);
+		}
+	}
+
+	private SearchPattern getContentPattern()	{
+		for (int i = 0; i < size(); i++)
+			if (elementAt(i) instanceof SearchContentPattern)
+				return (SearchPattern)elementAt(i);
+		return null;
+	}
+
+	// read count bytes or less when stream ends
+	private static byte [] read(InputStream in, int count)
+		throws IOException
+	{
+		byte [] bytes = new byte[count];
+		int pos = 0;
+		for (int cnt; pos < count && (cnt = in.read(bytes, pos, count - pos)) > 0; )
+			pos += cnt;
+		
+		if (pos == count)
+			return bytes;
+		
+		byte [] shorter = new byte[pos];
+		System.arraycopy(bytes, 0, shorter, 0, pos);
+		return shorter;
+	}
+
 
 	// match exactly one file
 	private File match(SearchFile sf)	{
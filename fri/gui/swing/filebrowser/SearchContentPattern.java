@@ -2,9 +2,11 @@ package fri.gui.swing.filebrowser;
 
 import java.io.*;
 import java.awt.Point;
+import java.nio.charset.Charset;
 import java.util.Vector;	
 import gnu.regexp.*;
 import fri.util.regexp.*;
+import fri.util.io.MappedLiteralScanner;
 import fri.util.io.NewlineDetectingInputStreamReader;
 
 /**
@@ -12,6 +14,11 @@ import fri.util.io.NewlineDetectingInputStreamReader;
 	The pattern can be single- or multiline.
 	Sends numbered result lines to a
 	SearchResultDispatcher if requested.
+	<p>
+	Single-line patterns of "No Regular Expressions" and "Wildcards" syntax
+	contain a literal that every matching line must contain. Such files are
+	scanned by bytes for that literal (see MappedLiteralScanner), and only lines containing it
+	are decoded and matched by the regular expression.
 */
 
 public class SearchContentPattern implements SearchPattern
@@ -25,8 +32,7 @@ public class SearchContentPattern implements SearchPattern
 	private String origPattern;
 	private String origSyntaxString;
 	private boolean ignoreCase, wordMatch, positive;
-	private NewlineDetectingInputStreamReader newlineAwareReader;
-	private InputStream in;
+	private MappedLiteralScanner literalScanner;	// null when regular expression must read all lines
 	
 	
 	public SearchContentPattern(
@@ -76,6 +82,90 @@ public class SearchContentPattern implements SearchPattern
 			expr = new RE [1];
 			expr[0] = getRE(pattern, compFlags, syntax, wordMatch);
 		}
+		
+		if ((Syntaxes.doWildcards(regExpSyntax) || Syntaxes.doNoRegExp(regExpSyntax)) && origPattern.indexOf("\n") < 0)	{
+			String [] literals = getRequiredLiterals(pattern, ignoreCase);
+			Charset charset = Charset.defaultCharset();	// as used by NewlineDetectingInputStreamReader
+			
+			if (literals != null && MappedLiteralScanner.isAsciiCompatible(charset))
+				literalScanner = new MappedLiteralScanner(literals, ignoreCase, charset);
+		}
+	}
+	
+	
+	/*
+		Returns the longest literal of every alternative of the passed PERL5 pattern,
+		as generated by RegExpUtil for wildcards or no regular expressions.
+		Returns null if any alternative has no literal, or when it is not ASCII with ignoreCase.
+	*/
+	private String [] getRequiredLiterals(String pattern, boolean ignoreCase)	{
+		Vector literals = new Vector();
+		StringBuffer run = new StringBuffer();
+		String best = "";
+		
+		for (int i = 0; i <= pattern.length(); i++)	{
+			char c = i < pattern.length() ? pattern.charAt(i) : '|';
+			boolean closeRun = true, endOfAlternative = false;
+			
+			switch (c)	{
+				case '\\':
+					if (i + 1 >= pattern.length())
+						return null;
+					c = pattern.charAt(++i);
+					if (Character.isLetterOrDigit(c) == false)	{	// masked meta character
+						run.append(c);
+						closeRun = false;
+					}
+					break;	// else character class like "\w"
+				case '*':
+				case '?':
+					if (run.length() > 0)	// preceding character is optional
+						run.setLength(run.length() - 1);
+					break;
+				case '(':
+				case ')':
+				case '{':
+				case '}':
+					return null;	// not generated by RegExpUtil
+				case '[':
+					for (i++; i < pattern.length() && pattern.charAt(i) != ']'; i++)
+						if (pattern.charAt(i) == '\\')
+							i++;
+					break;
+				case '+':
+				case '.':
+				case '^':
+				case '$':
+					break;
+				case '|':
+					endOfAlternative = true;
+					break;
+				default:
+					run.append(c);
+					closeRun = false;
+					break;
+			}
+			
+			if (closeRun)	{
+				if (run.length() > best.length())
+					best = run.toString();
+				run.setLength(0);
+			}
+			
+			if (endOfAlternative)	{
+				if (best.length() <= 0)
+					return null;
+				for (int j = 0; ignoreCase && j < best.length(); j++)
+					if (best.charAt(j) > 127)
+						return null;
+				literals.addElement(best);
+				best = "";
+			}
+		}
+		
+		String [] result = new String[literals.size()];
+		literals.copyInto(result);
+		return result;
 	}
 	
 	
@@ -115,22 +205,35 @@ public class SearchContentPattern implements SearchPattern
 	}
 	
 	
-	private BufferedReader createBufferedReader(SearchFile f)
+	// not held in member variables, as patterns are matched by several threads in parallel
+	private NewlineDetectingInputStreamReader createNewlineAwareReader(SearchFile f)
 		throws IOException
 	{
-		in = f.getInputStream(dlg);
-		newlineAwareReader = new NewlineDetectingInputStreamReader(in);
-		BufferedReader br = new BufferedReader(newlineAwareReader);
-		return br;
+		return new NewlineDetectingInputStreamReader(f.getInputStream(dlg));
 	}
 
 
 	private boolean matchSingleline(SearchFile f)	{
+		if (literalScanner != null &&
+				f.isTemporaryFile() == false &&
+				dlg.isReplacing() == false &&
+				(positive || showFoundLines == false))	// negative search showing lines must read all lines
+		{
+			try	{
+				return matchMapped(f);
+			}
+			catch (IOException e)	{	// file can not be mapped, try to read it
+				System.err.println("WARNING: can not map "+f.getName()+": "+e);
+			}
+		}
+		
 		BufferedReader br = null;
+		NewlineDetectingInputStreamReader newlineAwareReader = null;
 		boolean matched = (positive == false);
 		
 		try {
-			br = createBufferedReader(f);
+			newlineAwareReader = createNewlineAwareReader(f);
+			br = new BufferedReader(newlineAwareReader);
 
 			int matchCount = 0;
 			String line;
@@ -179,7 +282,7 @@ public class SearchContentPattern implements SearchPattern
 
 				// consider text replacement of result dispatcher
 
-				handleReplacement(lineNr == 1, f, line, matchesList, false);
+				handleReplacement(lineNr == 1, f, line, newlineAwareReader, matchesList, false);
 
 			}	// end for all lines
 
@@ -216,17 +319,19 @@ public class SearchContentPattern implements SearchPattern
 	
 	private boolean matchMultiline(SearchFile f)	{
 		BufferedReader br = null;
+		NewlineDetectingInputStreamReader newlineAwareReader = null;
 		boolean matched = (positive == false);
 		
 		try {
 			// open the inputstream
-			br = createBufferedReader(f);
+			newlineAwareReader = createNewlineAwareReader(f);
+			br = new BufferedReader(newlineAwareReader);
 			
 			// read the whole file text while replacing platform newlines with \n
 			// and creating a list of line start and end offsets
 
 			String line;
-			StringBuffer sb = new StringBuffer(in.available());
+			StringBuffer sb = new StringBuffer((int)Math.min(Integer.MAX_VALUE, Math.max(16L, f.getSize())));
 			Vector lineCoords = new Vector(128, 128);
 			int start = 0, end;
 			
@@ -304,7 +409,7 @@ public class SearchContentPattern implements SearchPattern
 
 			// consider text replacement of result dispatcher
 
-			handleReplacement(true, f, text, matchesList, true);
+			handleReplacement(true, f, text, newlineAwareReader, matchesList, true);
 
 		}
 		catch (IOException e)	{
@@ -323,6 +428,61 @@ public class SearchContentPattern implements SearchPattern
 
 
 
+	private boolean matchMapped(SearchFile f)
+		throws IOException
+	{
+		File file = f.getFile();
+		MappedMatcher matcher = new MappedMatcher();
+		literalScanner.scan(file, matcher, dlg);
+		
+		if (matcher.matched && showFoundLines && dlg.canceled() == false)	{
+			matcher.sb.deleteCharAt(matcher.sb.length() - 1);	// delete newline at end
+			dlg.showGrepResult(file, matcher.matchCount, matcher.sb.toString(), origPattern, origSyntaxString, ignoreCase, wordMatch);
+		}
+		
+		return matcher.matched;
+	}
+	
+	
+	// matches lines found by literal scanner, like matchSingleline() does
+	private class MappedMatcher implements MappedLiteralScanner.LineVisitor
+	{
+		boolean matched = (positive == false);
+		int matchCount = 0;
+		StringBuffer sb = new StringBuffer();
+		
+		public boolean visitLine(int lineNr, String line)	{
+			boolean found = false;
+			
+			// loop through alternative patterns
+			for (int i = 0; i < expr.length; i++)	{
+				if (showFoundLines)	{	// get all matches, only positive here
+					REMatch [] matches = expr[i].getAllMatches(line);
+					if (matches != null && matches.length > 0)	{
+						matched = found = true;
+						matchCount = matchCount + matches.length;
+					}
+				}
+				else	{	// we need only first match
+					if (expr[i].getMatch(line) != null)	{
+						matched = positive;
+						return false;
+					}
+				}
+			}
+			
+			if (found)	{
+				sb.append(lineNr);
+				sb.append(displayBlanks(lineNr));
+				sb.append(line);
+				sb.append("\n");
+			}
+			
+			return dlg.canceled() == false;
+		}
+	}
+	
+	
 	private Vector collectMatches(Vector matchesList, REMatch [] matches)	{
 		for (int i = 0; dlg.isReplacing() && i < matches.length; i++)	{
 			if (matchesList == null)
@@ -337,6 +497,7 @@ public class SearchContentPattern implements SearchPattern
 		boolean isFirst,
 		SearchFile f,
 		String text,
+		NewlineDetectingInputStreamReader newlineAwareReader,
 		Vector matchesList,
 		boolean isWholeText)
 	{
@@ -3,13 +3,24 @@ package fri.gui.swing.filebrowser;
 import java.io.File;
 import java.io.InputStream;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Vector;
+import fri.util.file.ValidFilename;
 import fri.util.file.archive.Archive;
 import fri.util.file.archive.ArchiveEntry;
+import fri.util.file.archive.ArchiveStream;
+import fri.util.io.CopyStream;
 import fri.util.observer.CancelProgressObserver;
 
 /**
 	A wrapper for a transparent search across files and archive entries.
+	Entries read by ArchiveStream are matched from memory or from the archive stream,
+	they are written to the extract folder of their archive only when getFile() is called.
+	Entries that were matched from the archive stream are collected by getFile() and
+	written together by <i>extractPending()</i> in one more pass, after the archive was read.
 */
 
 public class SearchFile
@@ -17,6 +28,14 @@ public class SearchFile
 	private File file = null;
 	private ArchiveEntry entry;
 	private Archive archive;
+	private File archiveFile;
+	private String entryPath;
+	private long size, time;
+	private byte [] content;
+	private InputStream stream;
+	private boolean streamUsed;
+	private File extracted;
+	private Vector pending;
 	
 	
 	public SearchFile(ArchiveEntry entry, Archive archive)	{
@@ -28,10 +47,32 @@ public class SearchFile
 		this.file = file;
 	}
 	
+	/**
+		Wraps an entry that was read by ArchiveStream.
+		@param archiveFile the archive the entry was read from.
+		@param entryPath the entry path from ArchiveStream, can contain nested archives.
+		@param content the contents of the entry, or null when it is read from stream.
+		@param stream the entry stream, used when content is null.
+		@param pending collects entries that must be extracted by <i>extractPending()</i>
+			because their stream was read when getFile() is called.
+	*/
+	public SearchFile(File archiveFile, String entryPath, long size, long time, byte [] content, InputStream stream, Vector pending)	{
+		this.archiveFile = archiveFile;
+		this.entryPath = entryPath;
+		this.size = size;
+		this.time = time;
+		this.content = content;
+		this.stream = stream;
+		this.pending = pending;
+	}
+	
 
 	public boolean isDirectory()	{
 		if (file != null)
 			return file.isDirectory();
+		
+		if (archiveFile != null)
+			return false;	// ArchiveStream does not visit directories
 			
 		return entry.isDirectory();
 	}
@@ -40,6 +81,9 @@ public class SearchFile
 		if (file != null)
 			return file.getName();
 			
+		if (archiveFile != null)
+			return entryPath.substring(entryPath.lastIndexOf('/') + 1);
+			
 		File f = new File(entry.getName());
 		return f.getName();
 	}
@@ -48,6 +92,9 @@ public class SearchFile
 		if (file != null)
 			return file.length();
 			
+		if (archiveFile != null)
+			return content != null ? content.length : size;
+			
 		return entry.getSize();
 	}
 	
@@ -55,6 +102,9 @@ public class SearchFile
 		if (file != null)
 			return file.lastModified();
 			
+		if (archiveFile != null)
+			return time;
+			
 		return entry.getTime();
 	}
 	
@@ -65,9 +115,111 @@ public class SearchFile
 		if (file != null)
 			return file;
 			
+		if (archiveFile != null)
+			return extract();
+			
 		return archive.getFile(entry);
 	}
 	
+	/** Returns the folder entries of passed archive are extracted to, like Archive.getFile() does. */
+	public static File getExtractRootFolder(File archiveFile)	{
+		return new File(archiveFile.getParent(), "."+archiveFile.getName());
+	}
+	
+	/**
+		Writes the entries collected by getFile() to the extract folder, reading passed archive once.
+		@param archiveFile the archive all passed entries were read from.
+		@param pending SearchFiles that were collected by getFile().
+	*/
+	public static void extractPending(File archiveFile, Vector pending, CancelProgressObserver observer)
+		throws IOException
+	{
+		final Hashtable entries = new Hashtable();
+		int depth = 1;
+		for (int i = 0; i < pending.size(); i++)	{
+			SearchFile sf = (SearchFile)pending.get(i);
+			entries.put(sf.entryPath, sf);
+			depth = Math.max(depth, sf.getDepth());
+		}
+		
+		ArchiveStream.walk(archiveFile, depth, new ArchiveStream.EntryVisitor()	{
+			public boolean visitEntry(String path, long size, long time, InputStream in)
+				throws IOException
+			{
+				SearchFile sf = (SearchFile)entries.remove(path);
+				if (sf != null)	{
+					write(in, sf.extracted);
+					sf.extracted.setLastModified(sf.time);
+				}
+				return entries.size() > 0;
+			}
+		}, observer);
+		
+		if (entries.size() > 0 && (observer == null || observer.canceled() == false))
+			throw new IOException("Entries not found in "+archiveFile+": "+entries.keySet());
+	}
+	
+	private int getDepth()	{
+		int depth = 1;
+		for (int i = entryPath.indexOf(ArchiveStream.NESTED_SEPARATOR); i >= 0; i = entryPath.indexOf(ArchiveStream.NESTED_SEPARATOR, i + 1))
+			depth++;
+		return depth;
+	}
+	
+	// writes the streamed entry to the extract folder, reads the archive again when contents were not held
+	private synchronized File extract()
+		throws IOException
+	{
+		if (extracted != null)
+			return extracted;
+			
+		File tgt = new File(getExtractRootFolder(archiveFile), entryPath.replace(ArchiveStream.NESTED_SEPARATOR, "/"));
+		tgt.getParentFile().mkdirs();
+		final File target = new File(tgt.getParentFile(), ValidFilename.correctFilename(tgt.getName()));
+		
+		if (content != null)	{
+			write(new ByteArrayInputStream(content), target);
+		}
+		else
+		if (streamUsed == false)	{	// no pattern read the entry, archive stream is still there
+			streamUsed = true;
+			write(stream, target);
+		}
+		else
+		if (pending != null)	{	// a pattern read the entry, written with all others after the archive was read
+			extracted = target;
+			pending.add(this);
+			return extracted;
+		}
+		else	{
+			final boolean [] found = new boolean[1];
+			ArchiveStream.walk(archiveFile, getDepth(), new ArchiveStream.EntryVisitor()	{
+				public boolean visitEntry(String path, long size, long time, InputStream in)
+					throws IOException
+				{
+					if (path.equals(entryPath) == false)
+						return true;
+					write(in, target);
+					found[0] = true;
+					return false;
+				}
+			}, null);
+			
+			if (found[0] == false)
+				throw new IOException("Entry not found in "+archiveFile+": "+entryPath);
+		}
+		
+		target.setLastModified(time);
+		extracted = target;
+		return extracted;
+	}
+	
+	private static void write(InputStream in, File target)
+		throws IOException
+	{
+		new CopyStream(in, -1L, new FileOutputStream(target), null, true, false).copy();
+	}
+	
 	public boolean isTemporaryFile()	{
 		return file == null;
 	}
@@ -78,6 +230,14 @@ public class SearchFile
 		if (file != null)
 			return new FileInputStream(file);
 		
+		if (archiveFile != null)	{
+			if (content != null)
+				return new ByteArrayInputStream(content);
+			
+			streamUsed = true;
+			return stream;
+		}
+		
 		return archive.getInputStream(entry, observer);	
 	}
 	
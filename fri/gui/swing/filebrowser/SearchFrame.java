@@ -66,6 +66,7 @@ public class SearchFrame extends JFrame implements
 	private boolean wordMatch = PropertyUtil.checkClassProperty("wordMatch", getClass(), "true", false);
 	private JCheckBox cb_ShowLines;
 	private boolean showLines = PropertyUtil.checkClassProperty("showLines", getClass(), "true", false);
+	private int parallelism = PropertyUtil.getClassInteger("parallelism", getClass(), Runtime.getRuntime().availableProcessors());
 	private JComboBox cmb_include, cmb_positive;
 	private boolean include = true, include_string = true;	// defaults
 	private JButton help;
@@ -466,6 +467,7 @@ public class SearchFrame extends JFrame implements
 		ClassProperties.put(getClass(), "contentIgnoreCase", cb_ContIgnoreCase.isSelected() ? "true" : "false");
 		ClassProperties.put(getClass(), "wordMatch", cb_WordMatch.isSelected() ? "true" : "false");
 		ClassProperties.put(getClass(), "showLines", cb_ShowLines.isSelected() ? "true" : "false");
+		ClassProperties.put(getClass(), "parallelism", Integer.toString(parallelism));
 		ClassProperties.store(getClass());
 	}
 	
@@ -916,9 +918,23 @@ public class SearchFrame extends JFrame implements
 		//System.err.println("run() starts ...");
 		setButtonStates(true);
 		
-		for (int i = 0; i < startNodes.length; i++)	{
-			NetNode n = (NetNode)startNodes[i].getUserObject();
-			getAllMatches((File)n.getObject(), n);
+		if (parallelism > 1 && isReplacing == false)	{	// replacement writer works on one file at a time
+			NetNode [] narr = new NetNode[startNodes.length];
+			for (int i = 0; i < startNodes.length; i++)
+				narr[i] = (NetNode)startNodes[i].getUserObject();
+
+			ParallelSearch search = new ParallelSearch(condition, this, new ParallelSearch.Receiver()	{
+				public void addFound(Vector files)	{
+					SearchFrame.this.addFound(files);
+				}
+			}, searchArchives, parallelism);
+			search.search(narr);
+		}
+		else	{
+			for (int i = 0; i < startNodes.length; i++)	{
+				NetNode n = (NetNode)startNodes[i].getUserObject();
+				getAllMatches((File)n.getObject(), n);
+			}
 		}
 		
 		//System.err.println("thread terminating, locking lock object ...");
@@ -720,6 +720,8 @@ public class TreePanel extends JPanel implements
 			cmb_filter.save();
 		}
 		
+		FolderSizeIndex.save();
+		
 		return true;
 	}
 
@@ -1,6 +1,7 @@
 package fri.gui.swing.foldermonitor;
 
 import java.util.Date;
+import java.util.List;
 
 /**
 	The View interface:
@@ -13,4 +14,7 @@ interface EventRenderer
 	/** Renders the passed event information. */
 	public void event(Date time, String change, String name, String path, String type, long size);
 
+	/** Renders a list of FolderEvents, in order of occurrence. */
+	public void events(List batch);
+
 }
\ No newline at end of file
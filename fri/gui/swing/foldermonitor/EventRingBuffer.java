@@ -0,0 +1,81 @@
+package fri.gui.swing.foldermonitor;
+
+import java.util.*;
+
+/**
+	Bounded ring buffer between the watch thread and the EventRenderer.
+	It is the EventRenderer of Visitor and FileCache. A dispatcher thread
+	takes all buffered events at once and passes them to the real renderer
+	as one batch. When the buffer is full the watch thread waits until
+	the dispatcher took the events.
+*/
+
+class EventRingBuffer implements EventRenderer
+{
+	private final FolderEvent [] ring;
+	private int head, count;
+	private boolean closed;
+
+
+	EventRingBuffer(int capacity)	{
+		ring = new FolderEvent[Math.max(1, capacity)];
+	}
+
+
+	/** Implements EventRenderer: appends the event, waits while buffer is full. */
+	public void event(Date time, String change, String name, String path, String type, long size)	{
+		put(new FolderEvent(time, change, name, path, type, size));
+	}
+
+	/** Implements EventRenderer: appends all events of the batch. */
+	public void events(List batch)	{
+		for (int i = 0; i < batch.size(); i++)
+			put((FolderEvent)batch.get(i));
+	}
+
+	private synchronized void put(FolderEvent e)	{
+		while (count >= ring.length && closed == false)	{
+			try	{ wait(); }	catch (InterruptedException ex)	{ return; }
+		}
+		if (closed)
+			return;
+
+		ring[(head + count) % ring.length] = e;
+		count++;
+		notifyAll();
+	}
+
+	/**
+		Waits for at least one event, then the passed time for following events
+		of the burst, and returns all of them. Returns an empty list on timeout or close.
+	*/
+	synchronized List take(long timeoutMillis, long burstMillis)	{
+		if (count <= 0 && closed == false)
+			try	{ wait(timeoutMillis); }	catch (InterruptedException ex)	{}
+
+		long burstEnd = System.currentTimeMillis() + burstMillis;
+		long rest;
+		while (count > 0 && count < ring.length && closed == false && (rest = burstEnd - System.currentTimeMillis()) > 0L)
+			try	{ wait(rest); }	catch (InterruptedException ex)	{ break; }
+
+		Vector batch = new Vector(count);
+		for (; count > 0; count--)	{
+			batch.add(ring[head]);
+			ring[head] = null;
+			head = (head + 1) % ring.length;
+		}
+		notifyAll();	// wake up waiting put()
+		return batch;
+	}
+
+	/** Releases waiting threads, following events are dropped. */
+	synchronized void close()	{
+		closed = true;
+		notifyAll();
+	}
+
+	synchronized boolean isClosed()	{
+		return closed;
+	}
+
+}
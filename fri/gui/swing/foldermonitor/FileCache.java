@@ -6,59 +6,152 @@ import java.util.*;
 /**
 	The Model:
 	Buffer file and folders and their dynamical retrieved info (lastModified, type).
+	<p>
+	To watch big trees with little memory no File and Info objects are held.
+	Parent folder paths are interned, every file is a row of primitive arrays
+	(folder index, name position in a char pool, lastModified, size, type), found by an open addressing
+	hash table of row numbers. The rows of a folder are linked, so that a check for
+	deleted files lists every folder once instead of asking every file for existence.
 */
 
-class FileCache extends Hashtable
+class FileCache
 {
+	private static final byte FREE = 0, FOLDER = 1, FILE = 2, UNKNOWN = 3;
+	private static final int NONE = -1;
+	private static final int REMOVED = -1, EMPTY = 0;	// slot values, else row + 1
+
 	private EventRenderer renderer;
 	private WatchThread homeThread;
-	
+
+	// interned parent folder paths
+	private Vector folderPaths = new Vector();	// folder index -> path, null when removed
+	private Hashtable folderIndexes = new Hashtable();	// path -> Integer folder index
+	private Vector freeFolders = new Vector();	// Integer indexes of removed folders
+	private int [] firstRow = new int[16];	// folder index -> first row of folder, NONE if empty
+
+	// rows
+	private int rows;	// count of rows ever used
+	private int size;	// count of living rows
+	private int [] folders = new int[16];
+	private int [] nextRow = new int[16], prevRow = new int[16];	// rows of same folder
+	private int [] nameStarts = new int[16], nameLengths = new int[16];	// in name pool, length -1 when free
+	private long [] lastModifieds = new long[16];
+	private long [] sizes = new long[16];
+	private byte [] types = new byte[16];
+	private int [] freeRows = new int[16];
+	private int freeCount;
+
+	// names of all rows, without String objects
+	private char [] namePool = new char[1024];
+	private int poolEnd;	// first unused char
+	private int poolGarbage;	// chars of removed names
+
+	// hash table of rows
+	private int [] slots = new int[32];
+	private int usedSlots;	// living and removed
+
+
 	FileCache(EventRenderer renderer, WatchThread homeThread)	{
 		this.renderer = renderer;
 		this.homeThread = homeThread;
 	}
-	
+
+	/** @return count of cached files and folders. */
+	public int size()	{
+		return size;
+	}
+
 	public void putFile(File f)	{
-		super.put(f, new Info(f));
+		int row = find(f);
+		if (row == NONE)
+			row = insert(f);
+
+		String type = Constants.toTypeString(f);
+		types[row] = type == Constants.TYPE_FOLDER ? FOLDER : type == Constants.TYPE_FILE ? FILE : UNKNOWN;
+		lastModifieds[row] = f.lastModified();
+		sizes[row] = f.length();
+	}
+
+	public Info getInfo(File f)	{
+		int row = find(f);
+		return row == NONE ? null : info(row);
 	}
-	
+
+	/**
+		Removes the passed file and, when it was a folder, all cached files below it.
+		@return the info of the removed file, or null if it was not cached.
+	*/
+	public Info removeTree(File f)	{
+		int row = find(f);
+		if (row == NONE)
+			return null;
+
+		Info info = info(row);
+		removeRow(row);
+
+		if (info.type.equals(Constants.TYPE_FOLDER))	{
+			String path = f.getPath();
+			String prefix = path.endsWith(File.separator) ? path : path+File.separator;
+
+			for (int i = 0; i < folderPaths.size(); i++)	{
+				String folderPath = (String)folderPaths.get(i);
+				if (folderPath != null && (folderPath.equals(path) || folderPath.startsWith(prefix)))
+					removeFolder(i);
+			}
+		}
+		return info;
+	}
+
 	public void checkFiles()	{
-		// collect deleted files sorted by path (length)
+		// collect deleted files sorted by path (length), list every folder once
 		TreeMap deleted = new TreeMap();
-		Set set = entrySet();
-		Iterator it = set.iterator();
-		
-		while (it.hasNext())	{
+
+		for (int i = 0; i < folderPaths.size(); i++)	{
 			if (homeThread.isInterrupted())
 				return;
-				
-			Map.Entry entry = (Map.Entry)it.next();
-			File f = (File)entry.getKey();
-			if (f.exists() == false)	{
-				deleted.put(f.getPath(), f);
+
+			String folderPath = (String)folderPaths.get(i);
+			if (folderPath == null)
+				continue;
+
+			Hashtable existing = null;
+			if (folderPath.length() > 0)	{
+				String [] list = new File(folderPath).list();
+				existing = new Hashtable(list != null ? list.length * 2 + 1 : 1);
+				for (int j = 0; list != null && j < list.length; j++)
+					existing.put(list[j], list[j]);
+			}
+
+			for (int row = firstRow[i]; row != NONE; row = nextRow[row])	{
+				boolean exists = existing != null
+						? existing.get(name(row)) != null
+						: new File(name(row)).exists();	// file without parent
+
+				if (exists == false)
+					deleted.put(path(row), Integer.valueOf(row));
 			}
 		}
 
 		// loop deleted files sorted by path length, avoid indicating deletion of folder children
 		Date date = new Date();
-		set = deleted.entrySet();
-		it = set.iterator();
+		Iterator it = deleted.entrySet().iterator();
 		String prevPath = null;
-		
+
 		while (it.hasNext())	{	// directories will be first
 			if (homeThread.isInterrupted())
 				return;
-				
+
 			Map.Entry entry = (Map.Entry)it.next();
 			String path = (String)entry.getKey();
-			File f = (File)entry.getValue();
-			
-			Info info = (Info)get(f);	// get file info before removing from cache
-			remove(f);	// remove deleted file from cache
-			
+			int row = ((Integer)entry.getValue()).intValue();
+
+			Info info = info(row);	// get file info before removing from cache
+			File f = file(row);
+			removeRow(row);	// remove deleted file from cache
+
 			if (prevPath == null || path.startsWith(prevPath) == false)	{
 				renderer.event(date, Constants.EVENT_DELETED, f.getName(), f.getParent(), info.type, info.size);
-				
+
 				prevPath = path;
 				if (prevPath.endsWith(File.separator) == false)	// ensure that startsWith() works correctly
 					prevPath = prevPath+File.separator;
@@ -68,6 +161,243 @@ class FileCache extends Hashtable
 
 
 
+	// row management
+
+	private Info info(int row)	{
+		byte type = types[row];
+		return new Info(
+				type == FOLDER ? Constants.TYPE_FOLDER : type == FILE ? Constants.TYPE_FILE : Constants.TYPE_UNKNOWN,
+				lastModifieds[row],
+				sizes[row]);
+	}
+
+	private File file(int row)	{
+		String folderPath = (String)folderPaths.get(folders[row]);
+		return folderPath.length() > 0 ? new File(folderPath, name(row)) : new File(name(row));
+	}
+
+	private String path(int row)	{
+		return file(row).getPath();
+	}
+
+	private static String parentOf(File f)	{
+		String parent = f.getParent();
+		return parent != null ? parent : "";	// "" holds files without parent by path
+	}
+
+	private static String nameOf(File f)	{
+		return f.getParent() != null ? f.getName() : f.getPath();
+	}
+
+	private int find(File f)	{
+		Integer folder = (Integer)folderIndexes.get(parentOf(f));
+		if (folder == null)
+			return NONE;
+
+		String name = nameOf(f);
+		int folderIndex = folder.intValue();
+		int mask = slots.length - 1;
+		for (int i = hash(folderIndex, name.hashCode()) & mask; slots[i] != EMPTY; i = (i + 1) & mask)	{
+			int row = slots[i] - 1;
+			if (row >= 0 && folders[row] == folderIndex && nameEquals(row, name))
+				return row;
+		}
+		return NONE;
+	}
+
+	private int insert(File f)	{
+		String parent = parentOf(f);
+		Integer folder = (Integer)folderIndexes.get(parent);
+		if (folder == null)	{
+			if (freeFolders.size() > 0)	{
+				folder = (Integer)freeFolders.remove(freeFolders.size() - 1);
+				folderPaths.set(folder.intValue(), parent);
+			}
+			else	{
+				folder = Integer.valueOf(folderPaths.size());
+				folderPaths.add(parent);
+				if (folder.intValue() >= firstRow.length)
+					firstRow = grow(firstRow, firstRow.length * 2);
+			}
+			folderIndexes.put(parent, folder);
+			firstRow[folder.intValue()] = NONE;
+		}
+		int folderIndex = folder.intValue();
+
+		int row;
+		if (freeCount > 0)	{
+			row = freeRows[--freeCount];
+		}
+		else	{
+			if (rows >= folders.length)
+				growRows(folders.length * 2);
+			row = rows++;
+		}
+
+		folders[row] = folderIndex;
+		storeName(row, nameOf(f));
+		prevRow[row] = NONE;
+		nextRow[row] = firstRow[folderIndex];
+		if (nextRow[row] != NONE)
+			prevRow[nextRow[row]] = row;
+		firstRow[folderIndex] = row;
+		size++;
+
+		if ((usedSlots + 1) * 2 > slots.length)	// keep load below one half
+			rehash(size * 2 > slots.length / 2 ? slots.length * 2 : slots.length);
+
+		int mask = slots.length - 1;
+		int i = hash(folderIndex, nameHash(row)) & mask;
+		while (slots[i] > EMPTY)
+			i = (i + 1) & mask;
+		if (slots[i] == EMPTY)
+			usedSlots++;
+		slots[i] = row + 1;
+
+		return row;
+	}
+
+	private void removeRow(int row)	{
+		if (nameLengths[row] < 0)
+			return;
+
+		int mask = slots.length - 1;
+		for (int i = hash(folders[row], nameHash(row)) & mask; slots[i] != EMPTY; i = (i + 1) & mask)	{
+			if (slots[i] == row + 1)	{
+				slots[i] = REMOVED;
+				break;
+			}
+		}
+
+		int folder = folders[row];
+		if (prevRow[row] != NONE)
+			nextRow[prevRow[row]] = nextRow[row];
+		else
+			firstRow[folder] = nextRow[row];
+		if (nextRow[row] != NONE)
+			prevRow[nextRow[row]] = prevRow[row];
+
+		if (firstRow[folder] == NONE)	{	// forget empty folder
+			folderIndexes.remove(folderPaths.get(folder));
+			folderPaths.set(folder, null);
+			freeFolders.add(Integer.valueOf(folder));
+		}
+
+		poolGarbage += nameLengths[row];
+		nameLengths[row] = -1;
+		types[row] = FREE;
+		if (freeCount >= freeRows.length)
+			freeRows = grow(freeRows, freeRows.length * 2);
+		freeRows[freeCount++] = row;
+		size--;
+	}
+
+	private void removeFolder(int folderIndex)	{
+		while (folderPaths.get(folderIndex) != null)	// last row removes folder
+			removeRow(firstRow[folderIndex]);
+	}
+
+	private void rehash(int length)	{
+		int [] old = slots;
+		slots = new int[length];
+		usedSlots = 0;
+		int mask = length - 1;
+		for (int j = 0; j < old.length; j++)	{
+			if (old[j] > EMPTY)	{
+				int row = old[j] - 1;
+				int i = hash(folders[row], nameHash(row)) & mask;
+				while (slots[i] != EMPTY)
+					i = (i + 1) & mask;
+				slots[i] = old[j];
+				usedSlots++;
+			}
+		}
+	}
+
+	private static int hash(int folderIndex, int nameHash)	{
+		int h = folderIndex * 31 + nameHash;
+		return h ^ (h >>> 16);
+	}
+
+	private String name(int row)	{
+		return new String(namePool, nameStarts[row], nameLengths[row]);
+	}
+
+	private boolean nameEquals(int row, String name)	{
+		int length = nameLengths[row];
+		if (length != name.length())
+			return false;
+		int start = nameStarts[row];
+		for (int i = 0; i < length; i++)
+			if (namePool[start + i] != name.charAt(i))
+				return false;
+		return true;
+	}
+
+	// same as String.hashCode()
+	private int nameHash(int row)	{
+		int h = 0;
+		for (int i = nameStarts[row], end = i + nameLengths[row]; i < end; i++)
+			h = 31 * h + namePool[i];
+		return h;
+	}
+
+	private void storeName(int row, String name)	{
+		int length = name.length();
+		if (poolEnd + length > namePool.length)	{
+			int living = poolEnd - poolGarbage;
+			if (poolGarbage > living)	// compact before growing
+				compactNamePool(Math.max(namePool.length, (living + length) * 2));
+			else
+				compactNamePool(Math.max(namePool.length * 2, poolEnd + length));
+		}
+		name.getChars(0, length, namePool, poolEnd);
+		nameStarts[row] = poolEnd;
+		nameLengths[row] = length;
+		poolEnd += length;
+	}
+
+	private void compactNamePool(int length)	{
+		char [] pool = new char[length];
+		int end = 0;
+		for (int row = 0; row < rows; row++)	{
+			int nameLength = nameLengths[row];
+			if (nameLength > 0)	{
+				System.arraycopy(namePool, nameStarts[row], pool, end, nameLength);
+				nameStarts[row] = end;
+				end += nameLength;
+			}
+		}
+		namePool = pool;
+		poolEnd = end;
+		poolGarbage = 0;
+	}
+
+	private void growRows(int length)	{
+		folders = grow(folders, length);
+		nextRow = grow(nextRow, length);
+		prevRow = grow(prevRow, length);
+		nameStarts = grow(nameStarts, length);
+		nameLengths = grow(nameLengths, length);
+		long [] l = new long[length];
+		System.arraycopy(lastModifieds, 0, l, 0, lastModifieds.length);
+		lastModifieds = l;
+		l = new long[length];
+		System.arraycopy(sizes, 0, l, 0, sizes.length);
+		sizes = l;
+		byte [] b = new byte[length];
+		System.arraycopy(types, 0, b, 0, types.length);
+		types = b;
+	}
+
+	private static int [] grow(int [] a, int length)	{
+		int [] n = new int[length];
+		System.arraycopy(a, 0, n, 0, a.length);
+		return n;
+	}
+
+
+
 	static class Info
 	{
 		public final String type;
@@ -75,11 +405,15 @@ class FileCache extends Hashtable
 		public final long size;
 
 		Info(File f)	{
-			type = Constants.toTypeString(f);
-			lastModified = f.lastModified();
-			size = f.length();
+			this(Constants.toTypeString(f), f.lastModified(), f.length());
 		}
-	
+
+		Info(String type, long lastModified, long size)	{
+			this.type = type;
+			this.lastModified = lastModified;
+			this.size = size;
+		}
+
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,176 @@
+package fri.gui.swing.foldermonitor;
+
+import java.io.*;
+import java.util.*;
+
+/**
+	Compares heap usage and deletion check time of FileCache with the
+	former Hashtable of File and Info objects. Creates a tree of empty files
+	in folders of 1000 files, fills both caches, checks for deleted files
+	while nothing was deleted, then after one folder was deleted.
+	<pre>
+		java fri.gui.swing.foldermonitor.FileCacheBenchmark [fileCount [parentDirectory]]
+	</pre>
+	Default is 1000000 files in the temporary directory. The tree is removed at end.
+*/
+
+class FileCacheBenchmark
+{
+	private static final int FILES_PER_FOLDER = 1000;
+
+	public static void main(String [] args)
+		throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		File parent = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+		File root = new File(parent, "FileCacheBenchmark"+System.currentTimeMillis());
+
+		System.err.println("Creating "+count+" files in "+root+" ...");
+		long time = System.currentTimeMillis();
+		File [] files = createTree(root, count);
+		System.err.println("... took "+(System.currentTimeMillis() - time)+" millis");
+
+		try	{
+			Counter renderer = new Counter();
+			WatchThread homeThread = new WatchThread(new File [] { root }, renderer, 0);	// not started
+
+			// former cache
+			long heap = usedHeap();
+			HashtableCache hashtable = new HashtableCache(renderer);
+			for (int i = 0; i < files.length; i++)
+				hashtable.putFile(files[i]);
+			long hashtableHeap = usedHeap() - heap;
+
+			time = System.currentTimeMillis();
+			hashtable.checkFiles();
+			long hashtableSweep = System.currentTimeMillis() - time;
+
+			hashtable = null;
+
+			// compact cache
+			heap = usedHeap();
+			FileCache cache = new FileCache(renderer, homeThread);
+			for (int i = 0; i < files.length; i++)
+				cache.putFile(files[i]);
+			long cacheHeap = usedHeap() - heap;
+
+			time = System.currentTimeMillis();
+			cache.checkFiles();
+			long cacheSweep = System.currentTimeMillis() - time;
+
+			System.err.println("Hashtable: "+(hashtableHeap / files.length)+" bytes per file, "+(hashtableHeap >> 20)+" MB, check "+hashtableSweep+" millis");
+			System.err.println("FileCache: "+(cacheHeap / files.length)+" bytes per file, "+(cacheHeap >> 20)+" MB, check "+cacheSweep+" millis");
+
+			// deletion of a folder
+			File deleted = files[0].getParentFile();
+			deleteTree(deleted);
+
+			renderer.count = 0;
+			time = System.currentTimeMillis();
+			cache.checkFiles();
+			System.err.println("FileCache: check after deleting "+deleted+" took "+(System.currentTimeMillis() - time)+" millis, "+renderer.count+" event(s), "+cache.size()+" files left");
+
+			cache = null;
+			hashtable = new HashtableCache(renderer);
+			for (int i = 0; i < files.length; i++)
+				hashtable.putFile(files[i]);
+
+			renderer.count = 0;
+			time = System.currentTimeMillis();
+			hashtable.checkFiles();
+			System.err.println("Hashtable: check after deleting "+deleted+" took "+(System.currentTimeMillis() - time)+" millis, "+renderer.count+" event(s)");
+		}
+		finally	{
+			System.err.println("Removing "+root+" ...");
+			deleteTree(root);
+		}
+	}
+
+
+	private static File [] createTree(File root, int count)
+		throws IOException
+	{
+		File [] files = new File[count];
+		File folder = null;
+		for (int i = 0; i < count; i++)	{
+			if (i % FILES_PER_FOLDER == 0)	{
+				folder = new File(root, "folder"+(i / FILES_PER_FOLDER));
+				if (folder.mkdirs() == false)
+					throw new IOException("Could not create "+folder);
+			}
+			files[i] = new File(folder, "file"+i+".txt");
+			new FileOutputStream(files[i]).close();
+		}
+		return files;
+	}
+
+	private static void deleteTree(File f)	{
+		File [] list = f.listFiles();
+		for (int i = 0; list != null && i < list.length; i++)
+			deleteTree(list[i]);
+		f.delete();
+	}
+
+	private static long usedHeap()	{
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++)	{
+			System.gc();
+			try	{ Thread.sleep(100); }	catch (InterruptedException e)	{}
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+
+
+
+	private static class Counter implements EventRenderer
+	{
+		int count;
+
+		public void event(Date time, String change, String name, String path, String type, long size)	{
+			count++;
+		}
+		public void events(List batch)	{
+			count += batch.size();
+		}
+	}
+
+
+	// the former FileCache: File keys and Info values, existence check for every file
+	private static class HashtableCache extends Hashtable
+	{
+		private EventRenderer renderer;
+
+		HashtableCache(EventRenderer renderer)	{
+			this.renderer = renderer;
+		}
+
+		void putFile(File f)	{
+			f = new File(f.getParentFile(), f.getName());	// Visitor creates a File for every cached file
+			put(f, new FileCache.Info(f));
+		}
+
+		void checkFiles()	{
+			TreeMap deleted = new TreeMap();
+			for (Iterator it = entrySet().iterator(); it.hasNext(); )	{
+				File f = (File)((Map.Entry)it.next()).getKey();
+				if (f.exists() == false)
+					deleted.put(f.getPath(), f);
+			}
+
+			Date date = new Date();
+			String prevPath = null;
+			for (Iterator it = deleted.entrySet().iterator(); it.hasNext(); )	{
+				Map.Entry entry = (Map.Entry)it.next();
+				String path = (String)entry.getKey();
+				File f = (File)entry.getValue();
+				FileCache.Info info = (FileCache.Info)remove(f);
+
+				if (prevPath == null || path.startsWith(prevPath) == false)	{
+					renderer.event(date, Constants.EVENT_DELETED, f.getName(), f.getParent(), info.type, info.size);
+					prevPath = path+File.separator;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,24 @@
+package fri.gui.swing.foldermonitor;
+
+import java.util.Date;
+
+/**
+	One change of a watched file or folder, as passed to EventRenderer in batches.
+*/
+
+class FolderEvent
+{
+	public final Date time;
+	public final String change, name, path, type;
+	public final long size;
+
+	FolderEvent(Date time, String change, String name, String path, String type, long size)	{
+		this.time = time;
+		this.change = change;
+		this.name = name;
+		this.path = path;
+		this.type = type;
+		this.size = size;
+	}
+
+}
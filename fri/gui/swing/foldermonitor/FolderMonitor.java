@@ -94,13 +94,7 @@ public class FolderMonitor extends JScrollPane implements
 
 	/** Implements EventRenderer: adds a row to table (in Swing event thread). */
 	public void event(Date time, String change, String name, String path, String type, long size)	{
-		final Object [] row = new Object [Constants.columns.size()];
-		row[Constants.columns.indexOf(Constants.TIME)] = formatter.format(time);
-		row[Constants.columns.indexOf(Constants.FILETYPE)] = type;
-		row[Constants.columns.indexOf(Constants.CHANGE)] = change;
-		row[Constants.columns.indexOf(Constants.NAME)] = name;
-		row[Constants.columns.indexOf(Constants.PATH)] = path;
-		row[Constants.columns.indexOf(Constants.SIZE)] = NumberUtil.getFileSizeString(size);
+		final Object [] row = toRow(time, change, name, path, type, size);
 		
 		EventQueue.invokeLater(new Runnable()	{
 			public void run()	{
@@ -109,6 +103,34 @@ public class FolderMonitor extends JScrollPane implements
 		});
 	}
 	
+	/** Implements EventRenderer: adds all rows of the batch to table at once (in Swing event thread). */
+	public void events(List batch)	{
+		final Vector rows = new Vector(batch.size());
+		for (int i = 0; i < batch.size(); i++)	{
+			FolderEvent e = (FolderEvent)batch.get(i);
+			rows.add(toRow(e.time, e.change, e.name, e.path, e.type, e.size));
+		}
+		
+		EventQueue.invokeLater(new Runnable()	{
+			public void run()	{
+				DefaultTableModel model = (DefaultTableModel)table.getModel();
+				for (int i = 0; i < rows.size(); i++)
+					model.addRow((Object [])rows.get(i));
+			}
+		});
+	}
+	
+	private Object [] toRow(Date time, String change, String name, String path, String type, long size)	{
+		Object [] row = new Object [Constants.columns.size()];
+		row[Constants.columns.indexOf(Constants.TIME)] = formatter.format(time);
+		row[Constants.columns.indexOf(Constants.FILETYPE)] = type;
+		row[Constants.columns.indexOf(Constants.CHANGE)] = change;
+		row[Constants.columns.indexOf(Constants.NAME)] = name;
+		row[Constants.columns.indexOf(Constants.PATH)] = path;
+		row[Constants.columns.indexOf(Constants.SIZE)] = NumberUtil.getFileSizeString(size);
+		return row;
+	}
+	
 
 	private void initColumnWidth()	{
 		if (PersistentColumnsTable.load(table, FolderMonitor.class) == false)	{
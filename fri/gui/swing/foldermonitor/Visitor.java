@@ -29,8 +29,11 @@ class Visitor extends RecursiveFileVisitor
 		if (homeThread.isInterrupted())
 			throw new RuntimeException("halting file tree recursion ...");
 
+		if (f.isDirectory())
+			homeThread.watch(f);	// register at WatchService before contained files are visited
+
 		if (doCheck)	{
-			FileCache.Info info = (FileCache.Info)cache.get(f);
+			FileCache.Info info = cache.getInfo(f);
 			if (info == null)	{	// was not there
 				renderer.event(new Date(), Constants.EVENT_CREATED, f.getName(), f.getParent(), Constants.toTypeString(f), f.length());
 				cache.putFile(f);	// refresh time
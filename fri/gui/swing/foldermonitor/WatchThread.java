@@ -1,16 +1,48 @@
 package fri.gui.swing.foldermonitor;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.nio.file.*;
+import fri.util.file.Link;
+import fri.util.os.OS;
+import fri.util.props.PropertyUtil;
+
+/**
+	Watches the roots from a background thread.
+	<p>
+	When a WatchService is available, every folder below the roots gets registered
+	at it while the cache is filled. Events are collected until their burst is over,
+	then every changed path is compared with the cache once. Resulting changes go to
+	a bounded EventRingBuffer, a dispatcher thread passes them in batches to the
+	EventRenderer. The whole tree is walked again only after an event overflow
+	or a resume from suspend.
+	<p>
+	Without WatchService, when a folder can not be registered, or when system property
+	"folderMonitorPolling" is set, the whole tree is walked every pauseMillis.
+*/
 
 class WatchThread extends Thread
 {
+	private static final boolean pollingOnly = PropertyUtil.checkSystemProperty("folderMonitorPolling");
+	private static final int QUEUE_SIZE = PropertyUtil.getSystemInteger("folderMonitorQueueSize", 1024);
+	private static final int POLL_MILLIS = 500;	// check for stop
+	private static final int COALESCE_MILLIS = 200;	// wait for further events of a burst
+	private static final int MAX_COALESCE_MILLIS = 2000;
+	private static final int BATCH_MILLIS = 250;	// collect events for one renderer call
 	private int pauseMillis;
-	private boolean stopped;
-	private boolean suspended;
+	private volatile boolean stopped;
+	private volatile boolean suspended;
 	private File [] roots;
 	private EventRenderer renderer;
-	
-	
+	private EventRingBuffer ring;
+	private WatchService watchService;	// null when polling
+	private Hashtable keyToFolder = new Hashtable();	// WatchKey -> File
+	private boolean needsReconcile;	// events were lost, walk whole tree
+	private boolean registerFailed;	// fall back to polling
+
+
 	WatchThread(File [] roots, EventRenderer renderer, int pauseMillis)	{
 		this.roots = roots;
 		this.renderer = renderer;
@@ -21,34 +53,242 @@ class WatchThread extends Thread
 	public void setStopped()	{
 		this.stopped = true;
 	}
-	
+
 	public void setSuspended(boolean suspended)	{
 		this.suspended = suspended;
 	}
-	
+
 	public boolean isInterrupted()	{
 		return stopped || suspended;
 	}
 
-	
+
 	public void run()	{
-		FileCache cache = new FileCache(renderer, this);
-		boolean doCheck = false;
-		
+		ring = new EventRingBuffer(QUEUE_SIZE);
+		startDispatcher();
+		openWatchService();
+
+		FileCache cache = new FileCache(ring, this);
+		try	{
+			if (watchService != null)
+				watchEvents(cache);
+			else
+				poll(cache, false);
+		}
+		finally	{
+			closeWatchService();
+			ring.close();
+		}
+		//System.err.println("WatchThread "+hashCode()+" has been finished!");
+	}
+
+	private void poll(FileCache cache, boolean doCheck)	{
 		while (stopped == false)	{
 			if (suspended == false)	{
 				//System.err.println("WatchThread "+hashCode()+" working after pause of "+pauseMillis+" millis ...");
 				for (int i = 0; i < roots.length; i++)	{	// fill cache or check for new and modified files
-					new Visitor(renderer, this, roots[i], cache, doCheck);
+					new Visitor(ring, this, roots[i], cache, doCheck);
 				}
 				doCheck = true;
 				cache.checkFiles();	// check for deleted files
 			}
-				
+
 			if (pauseMillis > 0)
 				try	{ Thread.sleep(pauseMillis); }	catch (Exception e)	{}
 		}
-		//System.err.println("WatchThread "+hashCode()+" has been finished!");
 	}
 
-}
\ No newline at end of file
+	private void watchEvents(FileCache cache)	{
+		boolean filled = false;
+
+		while (stopped == false)	{
+			if (suspended)	{
+				discardEvents();
+				needsReconcile = filled;	// changes during suspend are not reported by events
+				try	{ Thread.sleep(POLL_MILLIS); }	catch (Exception e)	{}
+				continue;
+			}
+
+			if (filled == false || needsReconcile)	{
+				boolean doCheck = filled;
+				needsReconcile = false;
+				for (int i = 0; i < roots.length; i++)	// register folders, fill cache or check for new and modified files
+					new Visitor(ring, this, roots[i], cache, doCheck);
+				if (doCheck)
+					cache.checkFiles();	// check for deleted files
+				filled = true;
+			}
+
+			if (registerFailed)	{
+				System.err.println("WARNING: FolderMonitor falls back to polling, not all folders could be registered");
+				closeWatchService();
+				poll(cache, true);
+				return;
+			}
+
+			Vector changed = collectEvents();
+			for (int i = 0; i < changed.size(); i++)	{
+				if (isInterrupted())	{
+					needsReconcile = true;
+					break;
+				}
+				reconcile(cache, (File)changed.get(i));
+			}
+		}
+	}
+
+	/* Compare one changed path with cache, report and store the difference. */
+	private void reconcile(FileCache cache, File f)	{
+		FileCache.Info info = cache.getInfo(f);
+
+		if (info != null && (f.exists() == false || info.type.equals(Constants.toTypeString(f)) == false))	{	// deleted or replaced
+			cache.removeTree(f);
+			ring.event(new Date(), Constants.EVENT_DELETED, f.getName(), f.getParent(), info.type, info.size);
+			info = null;
+		}
+
+		if (f.exists())	{
+			if (info == null)	{
+				new Visitor(ring, this, f, cache, true);	// reports the new file or folder and all its contents
+			}
+			else
+			if (f.isDirectory() == false && info.lastModified != f.lastModified())	{
+				ring.event(new Date(), Constants.EVENT_MODIFIED, f.getName(), f.getParent(), Constants.toTypeString(f), f.length());
+				cache.putFile(f);	// refresh time
+			}
+		}
+	}
+
+
+
+	// WatchService management
+
+	/** Called by Visitor for every folder, registers it at WatchService. */
+	void watch(File folder)	{
+		if (watchService == null || OS.isWindows == false && Link.isLink(folder))
+			return;	// contents of links are not visited
+
+		try	{
+			WatchKey key = folder.toPath().register(
+					watchService,
+					new WatchEvent.Kind [] {
+						StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE,
+						StandardWatchEventKinds.ENTRY_MODIFY,
+					});
+			keyToFolder.put(key, folder);
+		}
+		catch (Exception e)	{	// IOException, too many watches
+			System.err.println("WARNING: FolderMonitor can not watch "+folder+": "+e);
+			registerFailed = true;
+		}
+	}
+
+	private void openWatchService()	{
+		if (pollingOnly)
+			return;
+
+		try	{
+			watchService = FileSystems.getDefault().newWatchService();
+		}
+		catch (Exception e)	{	// IOException, UnsupportedOperationException
+			System.err.println("WARNING: FolderMonitor falls back to polling: "+e);
+		}
+	}
+
+	private void closeWatchService()	{
+		if (watchService == null)
+			return;
+
+		try	{
+			watchService.close();
+		}
+		catch (IOException e)	{
+			e.printStackTrace();
+		}
+		watchService = null;
+		keyToFolder.clear();
+	}
+
+	/* Wait for events, collect changed paths of the burst in order of occurrence, each once. */
+	private Vector collectEvents()	{
+		Vector changed = new Vector();
+		Hashtable unique = new Hashtable();
+		try	{
+			WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			long coalesceEnd = System.currentTimeMillis() + MAX_COALESCE_MILLIS;
+
+			while (key != null && stopped == false)	{
+				File folder = (File)keyToFolder.get(key);
+
+				for (Iterator it = key.pollEvents().iterator(); it.hasNext(); )	{
+					WatchEvent event = (WatchEvent)it.next();
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW)	{
+						needsReconcile = true;
+					}
+					else
+					if (folder != null)	{
+						File f = new File(folder, event.context().toString());
+						if (unique.put(f, f) == null)
+							changed.add(f);
+					}
+				}
+
+				if (key.reset() == false)	{	// folder was deleted, its parent reports that
+					keyToFolder.remove(key);
+					if (isRoot(folder))
+						needsReconcile = true;
+				}
+
+				if (System.currentTimeMillis() >= coalesceEnd)
+					break;
+
+				key = watchService.poll(COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException e)	{
+		}
+		catch (ClosedWatchServiceException e)	{
+			stopped = true;
+		}
+		return changed;
+	}
+
+	private void discardEvents()	{
+		WatchKey key;
+		while ((key = watchService.poll()) != null)	{
+			key.pollEvents();
+			if (key.reset() == false)
+				keyToFolder.remove(key);
+		}
+	}
+
+	private boolean isRoot(File folder)	{
+		for (int i = 0; folder != null && i < roots.length; i++)
+			if (roots[i].equals(folder))
+				return true;
+		return false;
+	}
+
+
+
+	/* Pass events from ring buffer to renderer in batches, until ring buffer is closed. */
+	private void startDispatcher()	{
+		Thread dispatcher = new Thread(new Runnable()	{
+			public void run()	{
+				for (;;)	{
+					List batch = ring.take(POLL_MILLIS, BATCH_MILLIS);
+					if (batch.size() > 0 && stopped == false)
+						renderer.events(batch);
+					else
+					if (batch.size() <= 0 && ring.isClosed())
+						return;
+				}
+			}
+		}, "FolderMonitorDispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.setPriority(Thread.MIN_PRIORITY);
+		dispatcher.start();
+	}
+
+}
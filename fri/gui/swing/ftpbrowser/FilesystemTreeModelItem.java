@@ -4,7 +4,6 @@ import java.io.File;
 import javax.swing.tree.DefaultMutableTreeNode;
 import fri.util.file.*;
 import fri.util.ftp.*;
-import fri.util.io.CopyStream;
 import fri.gui.mvc.model.ModelItem;
 import fri.gui.mvc.controller.CommandArguments;
 
@@ -124,7 +123,6 @@ public class FilesystemTreeModelItem extends AbstractTreeModelItem
 				FilesystemTreeNode fnTarget = (FilesystemTreeNode)target.getUserObject();
 				File newFile = new File((File)fnTarget.getUserObject(), name);
 				
-				CopyStream.bufsize = CopyStream.ONE_MB;
 				new CopyFile(f, newFile, ProgressAndErrorReporter.getObserver()).copy();
 				
 				return new FilesystemTreeModelItem(fnTarget.createTreeNode(newFile));
@@ -53,6 +53,8 @@ public class FtpController extends ActionConnector implements
 	public static final String MENUITEM_VIEW = "View";
 	public static final String MENUITEM_PROXY = "Proxy";
 	public static final String MENUITEM_ACTIVE_FTP = "Active FTP";
+	public static final String MENUITEM_RESUME = "Resume Transfers";
+	public static final String MENUITEM_VERIFY = "Verify Checksums";
 	
 	private boolean isFileView = true;
 	private HistCombo host, user;
@@ -64,10 +66,12 @@ public class FtpController extends ActionConnector implements
 	private JLabel ftpServerLabel;
 	private JTextField ftpServerStatus, fileStatus;
 	private SpinNumberField timeoutField;
+	private SpinNumberField connectionsField;
 	private FtpClipboard clipboard = FtpClipboard.getFtpClipboard();
 	private File selectedFile;
 	private String selectedPath;
 	private int timeout = FtpClient.DEFAULT_TIMEOUT;
+	private int connections = 1;
 	private KeyListener escapeKeyListener;
 	private Point viewPosition;
 	private LogTextArea logArea;
@@ -82,6 +86,7 @@ public class FtpController extends ActionConnector implements
 		JLabel ftpServerLabel,
 		JTextField ftpServerStatus,
 		SpinNumberField timeoutField,
+		SpinNumberField connectionsField,
 		LogTextArea logArea)
 	{
 		super(null, null, null);
@@ -130,6 +135,17 @@ public class FtpController extends ActionConnector implements
 		this.timeoutField = timeoutField;
 		timeoutField.addActionListener(al2);
 
+		ActionListener al3 = new ActionListener()	{
+			public void actionPerformed(ActionEvent e)	{
+				connections = Math.max(1, (int)((WholeNumberField)e.getSource()).getValue());
+				
+				if (ftpClient != null)
+					ftpClient.setTransferSessions(connections);
+			}
+		};
+		this.connectionsField = connectionsField;
+		connectionsField.addActionListener(al3);
+
 		this.logArea= logArea;
 
 
@@ -152,9 +168,13 @@ public class FtpController extends ActionConnector implements
 		registerAction(MENUITEM_SLOWDIRLIST_MODE, (String)null, "Recognize Directories By Trying To \"cd\" To There");
 
 		registerAction(MENUITEM_ACTIVE_FTP, (String)null, "Active FTP is rarely used, most servers support passive FTP.");
+		registerAction(MENUITEM_RESUME, (String)null, "Continue Partially Transferred Files And Interrupted Directory Transfers");
+		registerAction(MENUITEM_VERIFY, (String)null, "Compare Transferred Files By Server Checksum, When Supported");
 
 		setAllDisabled();
 		setEnabled(MENUITEM_ACTIVE_FTP, true);
+		setEnabled(MENUITEM_RESUME, true);
+		setEnabled(MENUITEM_VERIFY, true);
 		setEnabled(MENUITEM_CONNECT, true);
 		setEnabled(MENUITEM_SLOWDIRLIST_MODE, true);
 		setEnabled(MENUITEM_NEW_WINDOW, true);
@@ -394,6 +414,7 @@ public class FtpController extends ActionConnector implements
 
 			try	{
 				ftpClient.renameTo(selectedPath, newpath);
+				((FtpServerTreeNode)ftpServerTree.getModel().getRoot()).getListingCache().invalidate(selectedPath);
 
 				if (existsNotWorking == false && ftpClient.exists(newpath) == false)
 					throw new IOException("File \""+oldName+"\" Could Not Be Renamed To \""+newname+"\"");
@@ -449,9 +470,13 @@ public class FtpController extends ActionConnector implements
 		timeout = (int)timeoutField.getValue();
 		if (timeout <= 0)
 			timeout = FtpClient.DEFAULT_TIMEOUT;
+		connections = Math.max(1, (int)connectionsField.getValue());
 		
 		ftpClient = FtpClientFactory.getFtpClient(null, h, portNumber, u, pw, logArea.getPrintStream());
 		ftpClient.setActiveFtp(FtpServerTreeNode.activeFtp);
+		ftpClient.setResume(FtpServerTreeNode.resumeTransfers);
+		ftpClient.setVerify(FtpServerTreeNode.verifyTransfers);
+		ftpClient.setTransferSessions(connections);
 		
 		Runnable todo = new Runnable()	{
 			public void run()	{
@@ -511,8 +536,11 @@ public class FtpController extends ActionConnector implements
 			savePathes(ftpServerTree, ftpClient.getHost(), false);
 
 			FtpClientFactory.freeFtpClient(ftpClient);	// disconnects if no other reference
-			if (TreeModelFactory.freeFtpServerTreeModel(ftpClient) != null)	// last instance was released
+			FtpServerTreeModel model = (FtpServerTreeModel)TreeModelFactory.freeFtpServerTreeModel(ftpClient);
+			if (model != null)	{	// last instance was released
 				clipboard.freeFtpClient(ftpClient);
+				((FtpServerTreeNode)model.getRoot()).getListingCache().save();
+			}
 
 			ftpServerTree.setModel(TreeModelFactory.getFtpServerTreeModel(null));
 			ftpClient = null;
@@ -781,6 +809,8 @@ public class FtpController extends ActionConnector implements
 	public void cb_Refresh(Object selection)	{
 		String [][] pathes = memorizePathes(currentTree);
 		AbstractTreeNode root = (AbstractTreeNode)currentTree.getModel().getRoot();
+		if (root instanceof FtpServerTreeNode)	// user wants to see the current server state
+			((FtpServerTreeNode)root).getListingCache().clear();
 		root.releaseChildren();
 		((DefaultTreeModel)currentTree.getModel()).reload();
 		restorePathes(currentTree, pathes);
@@ -818,6 +848,18 @@ public class FtpController extends ActionConnector implements
 			ftpClient.setActiveFtp(FtpServerTreeNode.activeFtp);
 	}
 
+	public void cb_Resume_Transfers(Object selection)	{
+		FtpServerTreeNode.resumeTransfers = isChecked(getCurrentActionEvent().getSource());
+		if (ftpClient != null)
+			ftpClient.setResume(FtpServerTreeNode.resumeTransfers);
+	}
+
+	public void cb_Verify_Checksums(Object selection)	{
+		FtpServerTreeNode.verifyTransfers = isChecked(getCurrentActionEvent().getSource());
+		if (ftpClient != null)
+			ftpClient.setVerify(FtpServerTreeNode.verifyTransfers);
+	}
+
 
 
 	public void close()	{
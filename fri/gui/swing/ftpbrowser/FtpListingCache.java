@@ -0,0 +1,201 @@
+package fri.gui.swing.ftpbrowser;
+
+import java.io.*;
+import java.util.*;
+import fri.util.ftp.FtpClient;
+import fri.util.ftp.FtpListEntry;
+import fri.util.props.ConfigDir;
+import fri.util.props.PropertyUtil;
+
+/**
+	Cache of directory listings of one FTP server, so that expanding a node
+	of a remote tree that was visited before needs no server round trip.
+	<p>
+	Listings are keyed by absolute remote path. A listing is valid for system
+	property "ftpListingCacheMinutes" (default 30) minutes, at most
+	"ftpListingCacheSize" (default 256) listings are kept, the least recently
+	used is dropped first. Changes made by the FTP browser invalidate the changed
+	directory, its parent and all directories below it. "Refresh" clears the cache.
+	<p>
+	Unless system property "ftpListingCachePersistent" is "false", the cache is stored
+	per server and user in the "ftpbrowser/listings" configuration directory.
+*/
+
+public class FtpListingCache
+{
+	private static final long maxAge = 60000L * PropertyUtil.getSystemInteger("ftpListingCacheMinutes", 30);
+	private static final int MAX_LISTINGS = PropertyUtil.getSystemInteger("ftpListingCacheSize", 256);
+	private static final boolean persistent = PropertyUtil.checkSystemProperty("ftpListingCachePersistent", true);
+	private static final int VERSION = 2;
+
+	private final String filename;
+	private Map listings;	// path -> Listing, in access order
+	private boolean dirty;
+
+
+	/** Creates a listing cache for the server, port and user of passed client. */
+	public FtpListingCache(FtpClient ftpClient)	{
+		String key = ftpClient.getUser()+"@"+ftpClient.getHost()+"_"+ftpClient.getPort();
+		StringBuffer sb = new StringBuffer(key.length());
+		for (int i = 0; i < key.length(); i++)	{
+			char c = key.charAt(i);
+			sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '@' || c == '-' ? c : '_');
+		}
+		this.filename = ConfigDir.dir()+"ftpbrowser"+File.separator+"listings"+File.separator+sb+".cache";
+	}
+
+
+	/** Returns the valid listing of passed absolute remote directory, or null if it must be listed. */
+	public synchronized FtpListEntry [] get(String path)	{
+		Listing listing = (Listing)ensureListings().get(path);
+		if (listing == null)
+			return null;
+
+		if (System.currentTimeMillis() - listing.listed < maxAge)
+			return listing.entries;
+
+		listings.remove(path);
+		dirty = true;
+		return null;
+	}
+
+	/** Stores the listing of passed absolute remote directory. */
+	public synchronized void put(String path, FtpListEntry [] entries)	{
+		ensureListings().put(path, new Listing(System.currentTimeMillis(), entries));
+		dirty = true;
+	}
+
+	/**
+		Forgets the listing of passed absolute remote path, of its parent directory,
+		and of all directories below it, as they were changed, renamed or deleted.
+	*/
+	public synchronized void invalidate(String path)	{
+		if (ensureListings().size() <= 0)
+			return;
+
+		int i = path.lastIndexOf('/');
+		if (i >= 0)
+			remove(i == 0 ? "/" : path.substring(0, i));
+		remove(path);
+
+		String prefix = path.endsWith("/") ? path : path+"/";
+		for (Iterator it = listings.keySet().iterator(); it.hasNext(); )	{
+			if (((String)it.next()).startsWith(prefix))	{
+				it.remove();
+				dirty = true;
+			}
+		}
+	}
+
+	/** Forgets all listings. */
+	public synchronized void clear()	{
+		if (ensureListings().size() > 0)	{
+			listings.clear();
+			dirty = true;
+		}
+	}
+
+	/** Write the cache to disk if it changed. */
+	public synchronized void save()	{
+		if (persistent == false || listings == null || dirty == false)
+			return;
+
+		try	{
+			new File(filename).getParentFile().mkdirs();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+			try	{
+				out.writeInt(VERSION);
+				out.writeInt(listings.size());
+				for (Iterator it = listings.entrySet().iterator(); it.hasNext(); )	{
+					Map.Entry e = (Map.Entry)it.next();
+					Listing listing = (Listing)e.getValue();
+					out.writeUTF((String)e.getKey());
+					out.writeLong(listing.listed);
+					out.writeInt(listing.entries.length);
+					for (int i = 0; i < listing.entries.length; i++)	{
+						FtpListEntry entry = listing.entries[i];
+						out.writeUTF(entry.getName());
+						out.writeBoolean(entry.isDirectory());
+						out.writeBoolean(entry.isLink());
+						out.writeLong(entry.getSize());
+						out.writeLong(entry.getTime());
+						out.writeBoolean(entry.isExactTime());
+					}
+				}
+			}
+			finally	{
+				out.close();
+			}
+			dirty = false;
+		}
+		catch (IOException e)	{
+			System.err.println("WARNING: could not save FTP listing cache "+filename+", "+e.getMessage());
+		}
+	}
+
+
+	private void remove(String path)	{
+		if (listings.remove(path) != null)
+			dirty = true;
+	}
+
+	private Map ensureListings()	{
+		if (listings == null)	{
+			listings = new LinkedHashMap(MAX_LISTINGS, 0.75f, true)	{
+				protected boolean removeEldestEntry(Map.Entry eldest)	{
+					return size() > MAX_LISTINGS;
+				}
+			};
+			if (persistent)
+				load();
+		}
+		return listings;
+	}
+
+	private void load()	{
+		File file = new File(filename);
+		if (file.exists() == false)
+			return;
+
+		try	{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try	{
+				if (in.readInt() != VERSION)
+					return;
+
+				long now = System.currentTimeMillis();
+				for (int count = in.readInt(); count > 0; count--)	{
+					String path = in.readUTF();
+					long listed = in.readLong();
+					FtpListEntry [] entries = new FtpListEntry[in.readInt()];
+					for (int i = 0; i < entries.length; i++)
+						entries[i] = new FtpListEntry(in.readUTF(), in.readBoolean(), in.readBoolean(), in.readLong(), in.readLong(), in.readBoolean());
+
+					if (now - listed < maxAge)
+						listings.put(path, new Listing(listed, entries));
+				}
+			}
+			finally	{
+				in.close();
+			}
+		}
+		catch (IOException e)	{
+			System.err.println("WARNING: could not load FTP listing cache "+filename+", "+e.getMessage());
+			listings.clear();
+		}
+	}
+
+
+
+	private static class Listing
+	{
+		final long listed;
+		final FtpListEntry [] entries;
+
+		Listing(long listed, FtpListEntry [] entries)	{
+			this.listed = listed;
+			this.entries = entries;
+		}
+	}
+
+}
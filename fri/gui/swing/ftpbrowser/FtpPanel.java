@@ -25,6 +25,8 @@ import fri.gui.mvc.view.swing.PopupMouseListener;
 public class FtpPanel extends JPanel implements
 	FocusListener
 {
+	private static final int DEFAULT_CONNECTIONS = 1;
+	
 	private FtpController controller;
 
 
@@ -155,6 +157,19 @@ public class FtpPanel extends JPanel implements
 		tb2.add(timeout);
 		tb2.addSeparator();
 		
+		SpinNumberField connections = new SpinNumberField(DEFAULT_CONNECTIONS, 1, 32, (short)2)	{
+			public Dimension getMaximumSize()	{
+				Dimension d = super.getMaximumSize();
+				d.width = 30;
+				return d;
+			}
+		};
+		connections.setValue(DEFAULT_CONNECTIONS);
+		connections.setToolTipText("Connections Transferring Files Of Directories In Parallel (Defaults To "+DEFAULT_CONNECTIONS+")");
+		tb2.add(new JLabel(" Connections: "));
+		tb2.add(connections);
+		tb2.addSeparator();
+		
 		controller = new FtpController(
 				host,
 				port,
@@ -164,10 +179,13 @@ public class FtpPanel extends JPanel implements
 				ftpServerLabel,
 				ftpServerStatus,
 				timeout,
+				connections,
 				logTextArea);
 		
 		controller.visualizeCheckableAction(FtpController.MENUITEM_ACTIVE_FTP, FtpServerTreeNode.activeFtp, tb2);
 		controller.visualizeCheckableAction(FtpController.MENUITEM_SLOWDIRLIST_MODE, FtpServerTreeNode.doSlowButSafeListing, tb2);
+		controller.visualizeCheckableAction(FtpController.MENUITEM_RESUME, FtpServerTreeNode.resumeTransfers, tb2);
+		controller.visualizeCheckableAction(FtpController.MENUITEM_VERIFY, FtpServerTreeNode.verifyTransfers, tb2);
 		tb2.add(new JSeparator(SwingConstants.VERTICAL));
 		
 		controller.visualizeAction(FtpController.MENUITEM_CONNECT, tb2);
@@ -65,7 +65,8 @@ public class FtpServerTreeModelItem extends AbstractTreeModelItem
 				ftpClient.deleteFile(fn.getAbsolutePath());
 			else
 				ftpClient.deleteDirectory(fn.getAbsolutePath());
-				
+			
+			fn.getListingCache().invalidate(fn.getAbsolutePath());
 			return true; 
 		}
 		catch (Exception e)	{
@@ -119,6 +120,7 @@ public class FtpServerTreeModelItem extends AbstractTreeModelItem
 		try	{
 			// do the rename
 			ftpClient.renameTo(fn.getAbsolutePath(), newPath);
+			fn.getListingCache().invalidate(fn.getAbsolutePath());
 
 			return new FtpServerTreeModelItem(fnTarget.createTreeNode(name));
 		}
@@ -9,6 +9,8 @@ import fri.util.NumberUtil;
 /**
 	The FTP server tree node.
 	Contains FTP specific child list logic and retrieval of propeties (size, time).
+	Typed listings are kept in a per-connection FtpListingCache, their entries
+	provide type, size and time of child nodes without further server requests.
 	
 	@author Fritz Ritzberger
 */
@@ -17,9 +19,14 @@ public class FtpServerTreeNode extends AbstractTreeNode
 {
 	public static boolean doSlowButSafeListing = false;
 	public static boolean activeFtp = false;
+	public static boolean resumeTransfers = false;
+	public static boolean verifyTransfers = false;
 	
 	private ObservableFtpClient ftpClient;
 	private String system;
+	private FtpListingCache listingCache;
+	private boolean entriesNotUnderstood;	// server listing can not be parsed, use names
+	private boolean link;
 	private Vector unsortedList;
 	private Vector longList;
 	private long bufferedSize = -1L;
@@ -59,17 +66,30 @@ public class FtpServerTreeNode extends AbstractTreeNode
 		return ((FtpServerTreeNode)getRoot()).system;
 	}
 
+	/** Returns the listing cache of the connection of this node. */
+	public FtpListingCache getListingCache()	{
+		FtpServerTreeNode root = (FtpServerTreeNode)getRoot();
+		synchronized(root)	{
+			if (root.listingCache == null)
+				root.listingCache = new FtpListingCache(root.ftpClient);
+			return root.listingCache;
+		}
+	}
+
 		
 	/** Overridden to set is-directory property when new node gets inserted. */
 	public void insert(MutableTreeNode newChild, int childIndex)	{
-		try	{	// need to know if new node is a directory, but it is not in longList
-			longList = null;
-			FtpServerTreeNode n = (FtpServerTreeNode)newChild;
-			n.isDirectory = Boolean.valueOf(getFtpClient().isDirectory(getAbsolutePath()+"/"+n.toString()));
-			// do it the hard way as the parent listing will not contain the new node
-		}
-		catch (Exception e)	{
-			ProgressAndErrorReporter.error(e);
+		FtpServerTreeNode n = (FtpServerTreeNode)newChild;
+		if (n.isDirectory == null && n.link == false)	{	// not from a typed listing, maybe created by an action
+			getListingCache().invalidate(getAbsolutePath());
+			try	{	// need to know if new node is a directory, but it is not in longList
+				longList = null;
+				n.isDirectory = Boolean.valueOf(getFtpClient().isDirectory(getAbsolutePath()+"/"+n.toString()));
+				// do it the hard way as the parent listing will not contain the new node
+			}
+			catch (Exception e)	{
+				ProgressAndErrorReporter.error(e);
+			}
 		}
 		
 		super.insert(newChild, childIndex);
@@ -81,7 +101,7 @@ public class FtpServerTreeNode extends AbstractTreeNode
 	}
 	
 	protected boolean isDirectory()	{
-		if (doSlowButSafeListing)	{
+		if (doSlowButSafeListing || link || ((FtpServerTreeNode)getParent()).unsortedList == null)	{	// links, and typed listing nodes that were released
 			try	{
 				return getFtpClient().isDirectory(getAbsolutePath());
 			}
@@ -156,6 +176,19 @@ public class FtpServerTreeNode extends AbstractTreeNode
 		try	{
 			String dir = getAbsolutePath();
 			
+			FtpListEntry [] entries = listEntries(dir);
+			if (entries != null)	{
+				for (int i = 0; i < entries.length; i++)	{
+					FtpServerTreeNode n = (FtpServerTreeNode)createTreeNode(entries[i].getName());
+					n.setListEntry(entries[i]);
+					add(n);
+				}
+				
+				if (children != null)
+					children = sortChildren(children);
+				return;
+			}
+			
 			getFtpClient().chdir(dir);
 			String [] sarr = getFtpClient().listNames();
 			getFtpClient().chdir(getRootName());
@@ -178,6 +211,37 @@ public class FtpServerTreeNode extends AbstractTreeNode
 		}
 	}
 
+	// returns the typed listing from cache or server, null when not available
+	private FtpListEntry [] listEntries(String dir)
+		throws Exception
+	{
+		FtpServerTreeNode root = (FtpServerTreeNode)getRoot();
+		if (doSlowButSafeListing || isVMS() || root.entriesNotUnderstood)
+			return null;
+		
+		FtpListingCache cache = getListingCache();
+		FtpListEntry [] entries = cache.get(dir);
+		if (entries == null)	{
+			entries = getFtpClient().listEntries(dir);
+			if (entries != null)
+				cache.put(dir, entries);
+			else
+				root.entriesNotUnderstood = true;
+		}
+		return entries;
+	}
+
+	// take type, size and time from listing, links must be tested if they point to a directory
+	private void setListEntry(FtpListEntry entry)	{
+		link = entry.isLink();
+		if (link == false)
+			isDirectory = Boolean.valueOf(entry.isDirectory());
+		if (entry.isDirectory() == false && entry.getSize() >= 0L)
+			bufferedSize = entry.getSize();
+		if (entry.getTime() != 0L)
+			bufferedDate = FileInfo.dateFormater.format(new Date(entry.getTime()));
+	}
+
 	public String getRootName()	{
 		return ((DefaultMutableTreeNode)getRoot()).getUserObject().toString();
 	}
@@ -4,6 +4,7 @@ import java.util.*;
 
 import fri.util.collections.AggregatingHashtable;
 import fri.util.observer.CancelProgressObserver;
+import fri.util.props.PropertyUtil;
 
 /**
 	<p>
@@ -50,22 +51,44 @@ import fri.util.observer.CancelProgressObserver;
 		------
 		8: ccc
 		======
-	</pre></p>
+	</pre></p><p>
+	By default blocks are found by FingerprintBlockFinder, which works on equivalence numbers
+	of lines and needs near-linear time. The system property "concordanceFingerprints=false"
+	switches back to following the position lists of every line, which needs much more
+	time and memory on big inputs.
+	</p><p>
+	A BlockListener receives every Block as soon as it is found, so that results
+	can be rendered while the search is still running.
+	</p>
 	
 	@author Fritz Ritzberger, 2003
 */
 
 public class Concordance
 {
+	/** Receives every Block as soon as it was found by <i>getBlockedResult()</i>. */
+	public interface BlockListener
+	{
+		/** Called from the searching thread. */
+		public void blockFound(Block block);
+	}
+	
 	private static final boolean MAXIMIZE_BLOCKSIZE = true;
+	private static final boolean useFingerprints = PropertyUtil.checkSystemProperty("concordanceFingerprints", true);
 	
 	protected int breakAfterCount;
 	protected int minimumLinesPerBlock;
+	protected int parallelism = 1;	// threads that build the fingerprint index
 	
 	private AggregatingHashtable linePositionsMap;
 	private ArrayList linesInOriginalOrder;
 	private ArrayList blockedList;
 	
+	private List lines;	// input objects, kept for wrapping found block parts
+	private int [] lineIds;	// equivalence number per line
+	private boolean [] significant;	// per line
+	private BlockListener blockListener;
+	
 	/** Hidden do-nothing constructor for derivations. */
 	protected Concordance()	{
 	}
@@ -97,7 +120,10 @@ public class Concordance
 	}
 	
 	protected void startSearch(List lines, ValidityFilter filter, CancelProgressObserver observer)	{
-		loopList(lines, filter, observer);
+		if (useFingerprints)
+			numberLines(lines, filter, observer);
+		else
+			loopList(lines, filter, observer);
 	}
 	
 	
@@ -157,6 +183,73 @@ public class Concordance
 	}
 
 
+	private void numberLines(List lines, ValidityFilter filter, CancelProgressObserver observer)	{
+		// give every line the equivalence number of its key, all lines with
+		// same key have the significance of the first one
+		
+		Hashtable keyIds = new Hashtable();	// key -> Integer
+		boolean [] significantIds = new boolean[64];
+		int [] ids = new int[lines.size()];
+		boolean [] significant = new boolean[lines.size()];
+		
+		for (int i = 0; i < ids.length; i++)	{
+			if (observer != null && i % 1000 == 0 && observer.canceled())
+				return;
+			
+			Object line = lines.get(i);
+			Object key = (filter != null) ? filter.isValid(line) : null;
+			boolean isSignificant = (filter == null || key != null);
+			if (key == null)
+				key = line.toString();
+			
+			Integer id = (Integer) keyIds.get(key);
+			if (id == null)	{
+				id = Integer.valueOf(keyIds.size());
+				keyIds.put(key, id);
+				
+				if (id.intValue() >= significantIds.length)	{
+					boolean [] newIds = new boolean[significantIds.length * 2];
+					System.arraycopy(significantIds, 0, newIds, 0, significantIds.length);
+					significantIds = newIds;
+				}
+				significantIds[id.intValue()] = isSignificant;
+			}
+			
+			ids[i] = id.intValue();
+			significant[i] = significantIds[ids[i]];
+		}
+		
+		this.lines = lines;
+		this.lineIds = ids;
+		this.significant = significant;
+	}
+
+
+	/**
+		Sets lines numbered by a derivation, instead of numbering them in <i>startSearch()</i>.
+		Blocks will be found by FingerprintBlockFinder in any case.
+		@param lines the input objects, passed to <i>createWrapper()</i> for found blocks.
+		@param lineIds equivalence number per line, equal lines must have equal numbers.
+		@param significant per line, false when line must not start a block.
+	*/
+	protected void setNumberedLines(List lines, int [] lineIds, boolean [] significant)	{
+		this.lines = lines;
+		this.lineIds = lineIds;
+		this.significant = significant;
+	}
+
+	/** Sets a listener that receives every Block as soon as it is found. */
+	public void setBlockListener(BlockListener blockListener)	{
+		this.blockListener = blockListener;
+	}
+
+	private void addBlock(Block block)	{
+		blockedList.add(block);
+		if (blockListener != null)
+			blockListener.blockFound(block);
+	}
+
+
 	/** Implements a factory method. Override to wrap the passed object. This implementation just returns object. */
 	protected Object createWrapper(Object object, int index)	{
 		return object;
@@ -175,6 +268,9 @@ public class Concordance
 		if (blockedList != null)
 			return blockedList;
 		
+		if (useFingerprints || lineIds != null)
+			return getFingerprintBlockedResult(observer);
+		
 		blockedList = new ArrayList(linesInOriginalOrder.size());
 		
 		// loop over unique but originally ordered line list
@@ -193,7 +289,7 @@ public class Concordance
 					block = new Block(positionsToFollow);
 
 				if (isBlockSufficient(block.getPartCount()))	{
-					blockedList.add(block);
+					addBlock(block);
 					i--;	// do this pass again as there might be indexes not followed yet
 				}
 				else	{
@@ -204,6 +300,41 @@ public class Concordance
 		return blockedList;
 	}
 
+	private List getFingerprintBlockedResult(CancelProgressObserver observer)	{
+		blockedList = new ArrayList();
+		if (lineIds == null)	// was canceled
+			return blockedList;
+		
+		FingerprintBlockFinder finder = new FingerprintBlockFinder(lineIds, significant, Math.max(1, minimumLinesPerBlock));
+		finder.setParallelism(parallelism);
+		finder.find(new FingerprintBlockFinder.BlockListener()	{
+			public boolean block(int [] starts, int count, int length)	{
+				addBlock(createBlock(starts, count, length));
+				return breakAfterCount <= 0 || breakAfterCount > blockedList.size();
+			}
+		}, observer);
+		
+		return blockedList;
+	}
+
+	/** Creates a Block from the first line indexes of its occurences and its line count. */
+	protected Block createBlock(int [] starts, int count, int length)	{
+		Block block = null;
+		for (int part = 0; part < length; part++)	{
+			ArrayList partPositions = new ArrayList(count);
+			for (int i = 0; i < count; i++)	{
+				int position = starts[i] + part;
+				partPositions.add(new PositionWrapper(position, createWrapper(lines.get(position), position)));
+			}
+			
+			if (block == null)
+				block = new Block(partPositions);
+			else
+				block.addPart(partPositions);
+		}
+		return block;
+	}
+
 	// measures the line ("part") count of one occurence in a Block (all occurences must have the same count)
 	private boolean isBlockSufficient(int numberOfLines)	{
 		 return minimumLinesPerBlock <= 0 || numberOfLines >= minimumLinesPerBlock;
@@ -0,0 +1,375 @@
+package fri.util.concordance;
+
+import java.util.Arrays;
+import java.util.Vector;
+import fri.util.observer.CancelProgressObserver;
+
+/**
+	Finds maximal blocks of duplicate lines in near-linear time.
+	<UL>
+		<LI>Target: concordance search on big sources, where lines like braces or blank
+			lines repeat a lot, without following position lists again and again.
+		<LI>Behaviour: every line is given as equivalence number, equal lines have equal numbers.
+			Windows of k lines are fingerprinted by a Rabin-Karp rolling hash, and windows
+			with same fingerprint are chained in ascending line order.
+			From the first line on, every significant line not yet in a block, whose window
+			occurs again, starts a block with all later non-overlapping free occurrences of its window.
+			The block grows line by line while all occurrences are followed by the same line.
+			When the followers differ, the occurrences are split by their follower,
+			every group of at least two grows on as a block of its own, the others
+			remain as block of the length reached so far when they are at least two.
+		<LI>Memory: primitive int, long and boolean arrays, proportional to line count.
+	</UL>
+	Lines that are not significant are never the first line of a block, but can be contained.
+	The window size is the minimum count of lines per block.
+	<p>
+	With a parallelism greater than 1, fingerprints are calculated in parallel portions,
+	and the fingerprint index is sharded by hash, every shard is chained by its own thread.
+	Results do not depend on parallelism.
+*/
+
+public class FingerprintBlockFinder
+{
+	/** Receives the found blocks. */
+	public interface BlockListener
+	{
+		/**
+			@param starts the ascending first line indexes of the occurences of the block.
+			@param count the number of valid elements in starts, at least two.
+			@param length the number of lines of every occurence.
+			@return false to stop searching.
+		*/
+		public boolean block(int [] starts, int count, int length);
+	}
+
+	private static final long BASE = 1000003L;
+	private static final long MIX = 0x9E3779B97F4A7C15L;
+	private static final int PARALLEL_MINIMUM = 100000;	// lines, below sharding costs more than it brings
+
+	private final int [] lines;
+	private final boolean [] significant;
+	private final int windowSize;
+	private int parallelism = 1;
+	private int [] next;	// next later window start with same fingerprint, -1 at end
+	private boolean [] blocked;	// line is part of a block
+
+
+	/**
+		@param lines equivalence number of every line.
+		@param significant per line, false when the line must not start a block.
+		@param windowSize the minimum count of lines of a block, at least 1.
+	*/
+	public FingerprintBlockFinder(int [] lines, boolean [] significant, int windowSize)	{
+		this.lines = lines;
+		this.significant = significant;
+		this.windowSize = Math.max(1, windowSize);
+	}
+
+
+	/** Sets the number of threads that build the fingerprint index, default 1. */
+	public void setParallelism(int parallelism)	{
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+
+	/**
+		Search blocks and pass them to listener, ordered by their first line.
+		@param listener receives every found block.
+		@param observer optional, is asked for cancel, can be null.
+	*/
+	public void find(BlockListener listener, CancelProgressObserver observer)	{
+		int n = lines.length;
+		next = new int[n];
+		blocked = new boolean[n];
+		if (parallelism > 1 && n >= PARALLEL_MINIMUM)
+			chainWindowsParallel();
+		else
+			chainWindows();
+
+		int [] occurences = new int[16];
+		for (int p = 0; p < n; p++)	{
+			if (p % 1000 == 0 && observer != null && observer.canceled())
+				return;
+
+			if (next[p] < 0 || significant[p] == false || isFree(p) == false)
+				continue;
+
+			// collect all later free and non-overlapping occurences of window
+			int count = 0;
+			occurences[count++] = p;
+			int last = p;
+			for (int q = next[p]; q >= 0; q = next[q])	{
+				if (q >= last + windowSize && equalWindows(p, q) && isFree(q))	{
+					if (count >= occurences.length)
+						occurences = grow(occurences);
+					occurences[count++] = q;
+					last = q;
+				}
+			}
+
+			if (count > 1)	{
+				int [] group = new int[count];
+				System.arraycopy(occurences, 0, group, 0, count);
+				for (int i = 0; i < count; i++)
+					claim(group[i], 0, windowSize);
+
+				if (growBlocks(group, listener) == false)
+					return;
+			}
+		}
+	}
+
+
+	// chain window starts of same fingerprint, in ascending order
+	private void chainWindows()	{
+		int n = lines.length;
+		Arrays.fill(next, -1);
+
+		int windows = n - windowSize + 1;
+		if (windows <= 1)
+			return;
+
+		int capacity = 16;
+		while (capacity < windows * 2 && capacity < (1 << 30))
+			capacity <<= 1;
+		long [] keys = new long[capacity];
+		int [] tails = new int[capacity];	// last window start + 1, 0 is free
+		int mask = capacity - 1;
+
+		long power = 1L;	// BASE ^ (windowSize - 1)
+		for (int i = 1; i < windowSize; i++)
+			power *= BASE;
+
+		long hash = 0L;
+		for (int i = 0; i < windowSize - 1; i++)
+			hash = hash * BASE + lines[i] * MIX;
+
+		for (int p = 0; p < windows; p++)	{
+			hash = hash * BASE + lines[p + windowSize - 1] * MIX;
+
+			if (significant[p])	{
+				int slot = (int)(hash ^ (hash >>> 32)) & mask;
+				while (tails[slot] != 0 && keys[slot] != hash)
+					slot = (slot + 1) & mask;
+
+				if (tails[slot] != 0)
+					next[tails[slot] - 1] = p;
+				keys[slot] = hash;
+				tails[slot] = p + 1;
+			}
+
+			hash -= lines[p] * MIX * power;	// leaves the window
+		}
+	}
+
+	// chain windows like chainWindows(), but by threads
+	private void chainWindowsParallel()	{
+		Arrays.fill(next, -1);
+
+		final int windows = lines.length - windowSize + 1;
+		if (windows <= 1)
+			return;
+
+		// fingerprints of portions in parallel
+		final long [] fingerprints = new long[windows];
+		final int portion = (windows + parallelism - 1) / parallelism;
+		runParallel(new ShardTask()	{
+			public void run(int shard)	{
+				int start = shard * portion;
+				int end = Math.min(windows, start + portion);
+				if (start >= end)
+					return;
+
+				long power = 1L;
+				for (int i = 1; i < windowSize; i++)
+					power *= BASE;
+
+				long hash = 0L;
+				for (int i = 0; i < windowSize - 1; i++)
+					hash = hash * BASE + lines[start + i] * MIX;
+
+				for (int p = start; p < end; p++)	{
+					hash = hash * BASE + lines[p + windowSize - 1] * MIX;
+					fingerprints[p] = hash;
+					hash -= lines[p] * MIX * power;
+				}
+			}
+		});
+
+		// every shard chains the windows whose fingerprint belongs to it, in ascending order
+		runParallel(new ShardTask()	{
+			public void run(int shard)	{
+				int capacity = 16;
+				while (capacity < windows * 2 / parallelism && capacity < (1 << 30))
+					capacity <<= 1;
+				long [] keys = new long[capacity];
+				int [] tails = new int[capacity];
+				int mask = capacity - 1;
+
+				for (int p = 0; p < windows; p++)	{
+					long hash = fingerprints[p];
+					if (significant[p] == false || shardOf(hash) != shard)
+						continue;
+
+					int slot = (int)(hash ^ (hash >>> 32)) & mask;
+					while (tails[slot] != 0 && keys[slot] != hash)
+						slot = (slot + 1) & mask;
+
+					if (tails[slot] != 0)
+						next[tails[slot] - 1] = p;
+					keys[slot] = hash;
+					tails[slot] = p + 1;
+				}
+			}
+		});
+	}
+
+	private int shardOf(long hash)	{
+		return (int)((hash >>> 33) % parallelism);
+	}
+
+	private void runParallel(final ShardTask task)	{
+		Thread [] threads = new Thread[parallelism];
+		for (int i = 0; i < threads.length; i++)	{
+			final int shard = i;
+			threads[i] = new Thread("FingerprintShard"+i)	{
+				public void run()	{
+					task.run(shard);
+				}
+			};
+			threads[i].start();
+		}
+
+		for (int i = 0; i < threads.length; i++)	{
+			try	{
+				threads[i].join();
+			}
+			catch (InterruptedException e)	{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private interface ShardTask
+	{
+		public void run(int shard);
+	}
+
+
+	/*
+		Grow the block of passed occurences, split it when followers differ.
+		Lines of occurences are claimed while growing, released when they stay alone.
+	*/
+	private boolean growBlocks(int [] group, BlockListener listener)	{
+		Vector stack = new Vector();
+		stack.add(new Object [] { group, Integer.valueOf(windowSize) });
+
+		while (stack.size() > 0)	{
+			Object [] entry = (Object []) stack.remove(stack.size() - 1);
+			int [] occurences = (int []) entry[0];
+			int length = ((Integer) entry[1]).intValue();
+
+			for (boolean same = true; same; )	{	// grow while all are followed by same line
+				int follower = -1;
+				for (int i = 0; same && i < occurences.length; i++)	{
+					int pos = occurences[i] + length;
+					if (isFreeLine(pos) == false)
+						same = false;
+					else
+					if (i == 0)
+						follower = lines[pos];
+					else
+						same = (lines[pos] == follower);
+				}
+
+				if (same)	{
+					for (int i = 0; i < occurences.length; i++)
+						claim(occurences[i], length, 1);
+					length++;
+				}
+			}
+
+			// split by follower: sort continuable occurences by follower line and index
+			long [] followers = new long[occurences.length];
+			int continuable = 0;
+			int [] rest = new int[occurences.length];
+			int restCount = 0;
+			for (int i = 0; i < occurences.length; i++)	{
+				int pos = occurences[i] + length;
+				if (isFreeLine(pos))
+					followers[continuable++] = ((long)lines[pos] << 32) | i;
+				else
+					rest[restCount++] = occurences[i];
+			}
+			Arrays.sort(followers, 0, continuable);
+
+			for (int start = 0; start < continuable; )	{
+				int end = start + 1;
+				while (end < continuable && (followers[end] >>> 32) == (followers[start] >>> 32))
+					end++;
+
+				if (end - start > 1)	{	// grows on as own block
+					int [] subgroup = new int[end - start];
+					for (int i = start; i < end; i++)	{
+						subgroup[i - start] = occurences[(int)followers[i]];
+						claim(subgroup[i - start], length, 1);
+					}
+					stack.add(new Object [] { subgroup, Integer.valueOf(length + 1) });
+				}
+				else	{
+					rest[restCount++] = occurences[(int)followers[start]];
+				}
+				start = end;
+			}
+
+			if (restCount > 1)	{
+				Arrays.sort(rest, 0, restCount);
+				if (listener.block(rest, restCount, length) == false)
+					return false;
+			}
+			else
+			if (restCount == 1)	{	// no duplicate
+				release(rest[0], length);
+			}
+		}
+		return true;
+	}
+
+
+	private boolean equalWindows(int p, int q)	{
+		for (int i = 0; i < windowSize; i++)
+			if (lines[p + i] != lines[q + i])
+				return false;
+		return true;
+	}
+
+	private boolean isFree(int start)	{
+		if (start + windowSize > lines.length)
+			return false;
+		for (int i = 0; i < windowSize; i++)
+			if (blocked[start + i])
+				return false;
+		return true;
+	}
+
+	private boolean isFreeLine(int pos)	{
+		return pos < lines.length && blocked[pos] == false;
+	}
+
+	private void claim(int start, int offset, int count)	{
+		for (int i = offset; i < offset + count; i++)
+			blocked[start + i] = true;
+	}
+
+	private void release(int start, int length)	{
+		for (int i = 0; i < length; i++)
+			blocked[start + i] = false;
+	}
+
+	private static int [] grow(int [] array)	{
+		int [] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+}
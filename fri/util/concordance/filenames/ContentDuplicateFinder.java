@@ -0,0 +1,276 @@
+package fri.util.concordance.filenames;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import fri.util.io.BufferPool;
+import fri.util.observer.CancelProgressObserver;
+import fri.util.props.PropertyUtil;
+
+/**
+	Finds files with identical contents, reading as few bytes as possible.
+	<UL>
+		<LI>Target: find duplicates in big archives, where most files have a unique size
+			or differ at start or end, without reading all of them.
+		<LI>Behaviour: files are grouped by size. Files of groups with more than one member
+			get a digest of their first and last 64 KB, files that still share size and
+			this digest get a digest of their whole content. Files up to 128 KB are read
+			only once, as their edges are their whole content. Empty files are not reported.
+			Digests are SHA-256, calculated by a pool of threads, the system property
+			"concordanceIoThreads" (default 4) sets its size.
+		<LI>Errors: files that can not be read are reported to System.err and treated as unique.
+	</UL>
+	The observer gets the names of digested files as notes and the digested bytes as progress.
+*/
+
+public class ContentDuplicateFinder
+{
+	private static final int EDGE = 64 * 1024;
+	private static final int threads = Math.max(1, PropertyUtil.getSystemInteger("concordanceIoThreads", 4));
+
+	private final CancelProgressObserver observer;
+
+
+	/** @param observer optional, is asked for cancel, gets notes and progress, can be null. */
+	public ContentDuplicateFinder(CancelProgressObserver observer)	{
+		this.observer = observer;
+	}
+
+
+	/**
+		Returns a content key for every passed file. Files with identical contents
+		have equal keys, files with unique or empty contents have null as key.
+	*/
+	public String [] getContentKeys(File [] files)	{
+		String [] keys = new String[files.length];
+
+		// group by size
+		long [] sizes = new long[files.length];
+		Hashtable sizeGroups = new Hashtable();
+		for (int i = 0; i < files.length; i++)	{
+			sizes[i] = files[i].length();
+			if (sizes[i] > 0L)
+				addToGroup(sizeGroups, Long.valueOf(sizes[i]), i);
+		}
+		List candidates = getDuplicateGroupMembers(sizeGroups);
+
+		// group by size and digest of edges, which is the whole content for small files
+		String [] edgeDigests = digest(files, candidates, true);
+		if (edgeDigests == null)
+			return keys;
+
+		Hashtable edgeGroups = new Hashtable();
+		for (int i = 0; i < candidates.size(); i++)	{
+			int index = ((Integer) candidates.get(i)).intValue();
+			if (edgeDigests[index] != null)
+				addToGroup(edgeGroups, sizes[index]+":"+edgeDigests[index], index);
+		}
+		candidates = getDuplicateGroupMembers(edgeGroups);
+
+		// group by size and digest of whole content
+		ArrayList bigCandidates = new ArrayList();
+		for (int i = 0; i < candidates.size(); i++)	{
+			int index = ((Integer) candidates.get(i)).intValue();
+			if (sizes[index] > 2 * EDGE)
+				bigCandidates.add(candidates.get(i));
+			else
+				keys[index] = sizes[index]+":"+edgeDigests[index];
+		}
+
+		String [] fullDigests = digest(files, bigCandidates, false);
+		if (fullDigests == null)
+			return new String[files.length];
+
+		for (int i = 0; i < bigCandidates.size(); i++)	{
+			int index = ((Integer) bigCandidates.get(i)).intValue();
+			if (fullDigests[index] != null)
+				keys[index] = sizes[index]+":"+fullDigests[index];
+		}
+
+		// keys that occur only once are unique
+		Hashtable keyGroups = new Hashtable();
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != null)
+				addToGroup(keyGroups, keys[i], i);
+
+		for (Iterator it = keyGroups.values().iterator(); it.hasNext(); )	{
+			List group = (List) it.next();
+			if (group.size() == 1)
+				keys[((Integer) group.get(0)).intValue()] = null;
+		}
+
+		return keys;
+	}
+
+
+	private static void addToGroup(Hashtable groups, Object key, int index)	{
+		List group = (List) groups.get(key);
+		if (group == null)
+			groups.put(key, group = new ArrayList(2));
+		group.add(Integer.valueOf(index));
+	}
+
+	// returns the indexes of all groups with more than one member
+	private static List getDuplicateGroupMembers(Hashtable groups)	{
+		ArrayList members = new ArrayList();
+		for (Iterator it = groups.values().iterator(); it.hasNext(); )	{
+			List group = (List) it.next();
+			if (group.size() > 1)
+				members.addAll(group);
+		}
+		return members;
+	}
+
+
+	// digests the files of passed indexes in parallel, returns null when canceled
+	private String [] digest(final File [] files, List indexes, final boolean edges)	{
+		final String [] digests = new String[files.length];
+		if (indexes.size() <= 0)
+			return digests;
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, indexes.size()), new ThreadFactory()	{
+			public Thread newThread(Runnable r)	{
+				Thread t = new Thread(r, "DuplicateDigester");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		try	{
+			Future [] futures = new Future[indexes.size()];
+			for (int i = 0; i < futures.length; i++)	{
+				final int index = ((Integer) indexes.get(i)).intValue();
+				futures[i] = pool.submit(new Runnable()	{
+					public void run()	{
+						if (canceled())
+							return;
+
+						if (observer != null)
+							observer.setNote((edges ? "Checking " : "Digesting ")+files[index].getName());
+
+						try	{
+							digests[index] = edges ? digestEdges(files[index]) : digestAll(files[index]);
+						}
+						catch (IOException e)	{
+							System.err.println("WARNING: could not read "+files[index]+", "+e.getMessage());
+						}
+					}
+				});
+			}
+
+			for (int i = 0; i < futures.length; i++)	{
+				try	{
+					futures[i].get();
+				}
+				catch (ExecutionException e)	{
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					throw new RuntimeException(e.getCause());
+				}
+				catch (InterruptedException e)	{
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+		finally	{
+			pool.shutdownNow();
+		}
+
+		return canceled() ? null : digests;
+	}
+
+	// digest of first and last EDGE bytes, or of whole file when not bigger than two edges
+	private String digestEdges(File file)
+		throws IOException
+	{
+		MessageDigest md = newDigest();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		byte [] buffer = BufferPool.get(EDGE);
+		try	{
+			long size = raf.length();
+			if (size <= 2 * EDGE)	{
+				update(md, raf, buffer, size);
+			}
+			else	{
+				update(md, raf, buffer, EDGE);
+				raf.seek(size - EDGE);
+				update(md, raf, buffer, EDGE);
+			}
+		}
+		finally	{
+			BufferPool.release(buffer);
+			raf.close();
+		}
+		return toHex(md.digest());
+	}
+
+	private void update(MessageDigest md, RandomAccessFile raf, byte [] buffer, long count)
+		throws IOException
+	{
+		while (count > 0L)	{
+			int read = raf.read(buffer, 0, (int) Math.min(buffer.length, count));
+			if (read < 0)
+				throw new EOFException("File was truncated while reading");
+			md.update(buffer, 0, read);
+			count -= read;
+			progress(read);
+		}
+	}
+
+	// streaming digest of the whole file, null when canceled
+	private String digestAll(File file)
+		throws IOException
+	{
+		MessageDigest md = newDigest();
+		InputStream in = new FileInputStream(file);
+		byte [] buffer = BufferPool.get(BufferPool.SIZE);
+		try	{
+			int read;
+			while ((read = in.read(buffer)) != -1)	{
+				if (canceled())
+					return null;
+				md.update(buffer, 0, read);
+				progress(read);
+			}
+		}
+		finally	{
+			BufferPool.release(buffer);
+			in.close();
+		}
+		return toHex(md.digest());
+	}
+
+
+	private boolean canceled()	{
+		return observer != null && observer.canceled();
+	}
+
+	private void progress(long bytes)	{
+		if (observer != null)
+			synchronized(observer)	{	// observers are not required to be thread safe
+				observer.progress(bytes);
+			}
+	}
+
+	private static MessageDigest newDigest()	{
+		try	{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)	{
+			throw new IllegalStateException("SHA-256 is not available: "+e);
+		}
+	}
+
+	private static String toHex(byte [] bytes)	{
+		StringBuffer sb = new StringBuffer(bytes.length * 2);
+		for (int i = 0; i < bytes.length; i++)	{
+			sb.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(bytes[i] & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+}
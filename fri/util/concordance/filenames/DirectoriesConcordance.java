@@ -12,6 +12,9 @@ import fri.util.observer.CancelProgressObserver;
 /**
 	Concordance search for files with same names within directories, recursive.
 	The passed ValidityFilter filters files before concordance search is started.
+	<p>
+	When contents are compared, files are concordant when they have identical
+	contents, whatever their names are, see ContentDuplicateFinder.
 */
 public class DirectoriesConcordance extends Concordance
 {
@@ -23,6 +26,16 @@ public class DirectoriesConcordance extends Concordance
 	
 	public DirectoriesConcordance(File [] directories, ValidityFilter fileFilter, CancelProgressObserver observer)
 		throws IOException
+	{
+		this(directories, fileFilter, observer, false);
+	}
+	
+	/**
+		@param compareContents when true, files with identical contents are searched,
+			else files with same name (the key returned by fileFilter).
+	*/
+	public DirectoriesConcordance(File [] directories, ValidityFilter fileFilter, CancelProgressObserver observer, boolean compareContents)
+		throws IOException
 	{
 		ArrayList fileList = new ArrayList();
 		
@@ -33,7 +46,33 @@ public class DirectoriesConcordance extends Concordance
 			new DirectoryVisitor(directories[i], fileList, fileFilter, observer);
 		}
 
-		startSearch(fileList, null, observer);	// filter was already applied
+		if (compareContents)
+			fileList = toContentKeys(fileList, observer);
+		
+		if (observer != null && observer.canceled())
+			return;
+		
+		// filter was already applied, just provide the keys of the wrappers
+		startSearch(fileList, new ValidityFilter()	{
+			public Object isValid(Object o)	{
+				return ((FileWrapper) o).getKey();
+			}
+		}, observer);
+	}
+
+
+	// replaces keys by contents, files with unique contents get their path as key
+	private ArrayList toContentKeys(ArrayList fileList, CancelProgressObserver observer)	{
+		File [] files = new File[fileList.size()];
+		for (int i = 0; i < files.length; i++)
+			files[i] = ((FileWrapper) fileList.get(i)).file;
+		
+		String [] keys = new ContentDuplicateFinder(observer).getContentKeys(files);
+		
+		ArrayList contentList = new ArrayList(files.length);
+		for (int i = 0; i < files.length; i++)
+			contentList.add(new FileWrapper(files[i], keys[i] != null ? keys[i] : files[i].getPath()));
+		return contentList;
 	}
 
 
@@ -77,16 +116,18 @@ public class DirectoriesConcordance extends Concordance
 	public static void main(String [] args)
 		throws IOException
 	{
-		if (args.length <= 0)	{
-			System.err.println("SYNTAX: java "+DirectoriesConcordance.class.getName()+" directory directory ...");
+		boolean contents = args.length > 0 && args[0].equals("-c");
+		if (args.length <= (contents ? 1 : 0))	{
+			System.err.println("SYNTAX: java "+DirectoriesConcordance.class.getName()+" [-c] directory directory ...");
+			System.err.println("	-c: search files with identical contents instead of names");
 			System.exit(1);
 		}
 		
-		File [] farr = new File[args.length];
-		for (int i = 0; i < args.length; i++)
-			farr[i] = new File(args[i]);
+		File [] farr = new File[args.length - (contents ? 1 : 0)];
+		for (int i = 0; i < farr.length; i++)
+			farr[i] = new File(args[i + (contents ? 1 : 0)]);
 			
-		Concordance search = new DirectoriesConcordance(farr, new DefaultFilenameValidityFilter());
+		Concordance search = new DirectoriesConcordance(farr, new DefaultFilenameValidityFilter(), null, contents);
 		
 		List blockedList = search.getBlockedResult();
 		for (int b = 0; b < blockedList.size(); b++)	{
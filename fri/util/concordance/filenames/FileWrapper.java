@@ -25,7 +25,12 @@ public class FileWrapper
 		return key.hashCode();
 	}
 
-	/** Returns the hashing object for Concordance algorithm. */
+	/** Returns the key that decides if files are concordant. */
+	public Object getKey()	{
+		return key;
+	}
+
+	/** Returns name and directory of the file for rendering. */
 	public String toString()	{
 		return file.getName()+":	"+file.getParent();
 	}
@@ -0,0 +1,292 @@
+package fri.util.concordance.textfiles;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import fri.util.concordance.Concordance;
+import fri.util.concordance.ValidityFilter;
+import fri.util.file.SortedFileCollectVisitor;
+import fri.util.observer.CancelProgressObserver;
+import fri.util.props.PropertyUtil;
+
+/**
+	Concordance search within all text files of whole source trees.
+	<UL>
+		<LI>Target: find copy + paste sections across big trees, using all processors.
+		<LI>Behaviour: directories are walked sorted by name, files are read and their lines
+			are normalized by the text line filter in parallel. Every normalized line gets an
+			equivalence number from a table that is sharded by hash, so that threads rarely
+			wait for each other. Numbers are made sequential in order of first occurence at end.
+			Blocks are found by FingerprintBlockFinder, with a fingerprint index that is sharded
+			by hash, too. Results are the same as those of TextfilesConcordance.
+		<LI>Errors: the first IOException of any file is thrown after all reading stopped.
+	</UL>
+	The thread count is the system property "concordanceThreads" (default count of processors).
+	The text line filter must be callable by parallel threads.
+*/
+
+public class TreeConcordance extends Concordance
+{
+	private static final int threads = PropertyUtil.getSystemInteger("concordanceThreads", Runtime.getRuntime().availableProcessors());
+
+	private NumberingShard [] shards;
+
+	public TreeConcordance(File [] filesOrDirectories, ValidityFilter textlineFilter)
+		throws IOException
+	{
+		this(filesOrDirectories, null, textlineFilter, null, 0, 0);
+	}
+
+	/**
+		@param filesOrDirectories files and directories to search, directories are searched recursively.
+		@param fileFilter optional, files it returns null for are not searched, can be null.
+		@param textlineFilter optional, normalizes lines and decides if they are significant, can be null.
+		@param observer optional, is asked for cancel and gets the names of read files, can be null.
+	*/
+	public TreeConcordance(
+			File [] filesOrDirectories,
+			ValidityFilter fileFilter,
+			ValidityFilter textlineFilter,
+			CancelProgressObserver observer,
+			int breakAfterCount,
+			int minimumLinesPerBlock)
+		throws IOException
+	{
+		this.breakAfterCount = breakAfterCount;
+		this.minimumLinesPerBlock = minimumLinesPerBlock;
+		this.parallelism = Math.max(1, threads);
+
+		List files = collectFiles(filesOrDirectories, fileFilter, observer);
+		if (observer != null && observer.canceled())
+			return;
+
+		shards = new NumberingShard[parallelism * 2];
+		for (int i = 0; i < shards.length; i++)
+			shards[i] = new NumberingShard();
+
+		NumberedFile [] numbered = readFiles(files, textlineFilter, observer);
+		if (observer != null && observer.canceled())
+			return;
+
+		// concatenate files in their sorted order, renumber keys in order of first occurence
+		// like Concordance does, as the order of found blocks depends on the numbers
+		int maxId = 0;
+		for (int i = 0; i < shards.length; i++)
+			maxId = Math.max(maxId, shards[i].maxId());
+		int [] renumbered = new int[maxId + 1];
+		Arrays.fill(renumbered, -1);
+		int nextId = 0;
+
+		int count = 0;
+		for (int i = 0; i < numbered.length; i++)
+			count += numbered[i].lines.size();
+
+		ArrayList lines = new ArrayList(count);
+		int [] ids = new int[count];
+		boolean [] significant = new boolean[count];
+		for (int i = 0, pos = 0; i < numbered.length; i++)	{
+			lines.addAll(numbered[i].lines);
+			for (int j = 0; j < numbered[i].keys.length; j++, pos++)	{
+				KeyEntry entry = numbered[i].keys[j];
+				if (renumbered[entry.id] < 0)
+					renumbered[entry.id] = nextId++;
+				ids[pos] = renumbered[entry.id];
+				significant[pos] = entry.significant;
+			}
+		}
+		shards = null;
+
+		setNumberedLines(lines, ids, significant);
+	}
+
+
+	/** Implements a factory method for the text line wrapper. Lines already are FileLineWrappers. */
+	protected Object createWrapper(Object object, int index)	{
+		return object;
+	}
+
+
+	private List collectFiles(File [] filesOrDirectories, ValidityFilter fileFilter, CancelProgressObserver observer)	{
+		ArrayList files = new ArrayList();
+		for (int i = 0; filesOrDirectories != null && i < filesOrDirectories.length; i++)	{
+			File f = filesOrDirectories[i];
+			if (f.isDirectory())
+				new FileCollector(fileFilter, observer, f, files);
+			else
+			if (f.isFile() && (fileFilter == null || fileFilter.isValid(f) != null))
+				files.add(f);
+		}
+		return files;
+	}
+
+	private NumberedFile [] readFiles(List files, final ValidityFilter textlineFilter, final CancelProgressObserver observer)
+		throws IOException
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism, new ThreadFactory()	{
+			public Thread newThread(Runnable r)	{
+				Thread t = new Thread(r, "ConcordanceReader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		try	{
+			Future [] futures = new Future[files.size()];
+			for (int i = 0; i < futures.length; i++)	{
+				final File file = (File) files.get(i);
+				final int fileIndex = i;
+				futures[i] = pool.submit(new Callable()	{
+					public Object call()
+						throws IOException
+					{
+						if (observer != null)
+							if (observer.canceled())
+								return null;
+							else
+								observer.setNote(file.getName());
+
+						return readFile(file, fileIndex, textlineFilter);
+					}
+				});
+			}
+
+			NumberedFile [] numbered = new NumberedFile[futures.length];
+			IOException error = null;
+			for (int i = 0; i < futures.length; i++)	{
+				try	{
+					numbered[i] = (NumberedFile) futures[i].get();
+				}
+				catch (ExecutionException e)	{
+					if (e.getCause() instanceof IOException)	{
+						if (error == null)
+							error = (IOException) e.getCause();
+					}
+					else
+					if (e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					else
+						throw new RuntimeException(e.getCause());
+				}
+				catch (InterruptedException e)	{
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Concordance search was interrupted");
+				}
+			}
+
+			if (error != null)
+				throw error;
+
+			return numbered;
+		}
+		finally	{
+			pool.shutdownNow();
+		}
+	}
+
+	// reads the lines of a file and gives them equivalence numbers, runs in a pool thread
+	private NumberedFile readFile(File file, int fileIndex, ValidityFilter filter)
+		throws IOException
+	{
+		ArrayList lines = new ArrayList(Math.max(10, (int)Math.min(1000000L, file.length() / 40)));
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try	{
+			String line;
+			for (int i = 0; (line = in.readLine()) != null; i++)
+				lines.add(new FileLineWrapper(line, i, file));
+		}
+		finally	{
+			in.close();
+		}
+
+		KeyEntry [] keys = new KeyEntry[lines.size()];
+		for (int i = 0; i < keys.length; i++)	{
+			Object line = lines.get(i);
+			Object key = (filter != null) ? filter.isValid(line) : null;
+			boolean isSignificant = (filter == null || key != null);
+			if (key == null)
+				key = line.toString();
+
+			int shard = (key.hashCode() & 0x7FFFFFFF) % shards.length;
+			keys[i] = shards[shard].number(key, ((long)fileIndex << 32) | i, isSignificant, shard, shards.length);
+		}
+
+		NumberedFile numbered = new NumberedFile();
+		numbered.lines = lines;
+		numbered.keys = keys;
+		return numbered;
+	}
+
+
+
+	private static class NumberedFile
+	{
+		List lines;
+		KeyEntry [] keys;	// per line, read for ids after all files were numbered
+	}
+
+
+	// equivalence number of a key, with the significance of its first occurence
+	private static class KeyEntry
+	{
+		int id;
+		long first;	// file index << 32 | line index
+		boolean significant;
+	}
+
+
+	// a part of the key table, numbers are unique over all shards
+	private static class NumberingShard
+	{
+		private HashMap keyEntries = new HashMap();
+		private int maxId;
+
+		synchronized KeyEntry number(Object key, long position, boolean significant, int shard, int shardCount)	{
+			KeyEntry entry = (KeyEntry) keyEntries.get(key);
+			if (entry == null)	{
+				entry = new KeyEntry();
+				entry.id = keyEntries.size() * shardCount + shard;
+				maxId = entry.id;
+				entry.first = position;
+				entry.significant = significant;
+				keyEntries.put(key, entry);
+			}
+			else
+			if (position < entry.first)	{	// files are read in parallel, the first occurence decides
+				entry.first = position;
+				entry.significant = significant;
+			}
+			return entry;
+		}
+
+		synchronized int maxId()	{
+			return maxId;
+		}
+	}
+
+
+	private static class FileCollector extends SortedFileCollectVisitor
+	{
+		private ValidityFilter filter;
+		private CancelProgressObserver observer;
+
+		FileCollector(ValidityFilter filter, CancelProgressObserver observer, File dir, List list)	{
+			super(list);
+			this.filter = filter;
+			this.observer = observer;
+			loop(dir);
+		}
+
+		protected void visit(File f)	{
+			if (filter == null || filter.isValid(f) != null)
+				super.visit(f);
+		}
+
+		/** Stops descending when canceled. */
+		protected String [] getDirectoryFilenames(File dir)	{
+			if (observer != null && observer.canceled())
+				return null;
+			return super.getDirectoryFilenames(dir);
+		}
+	}
+
+}
@@ -11,6 +11,8 @@ import java.util.Vector;
 	<pre>
 		BalancedLines [] lines = BalancedLines.createBalancedLines(lines1, lines2);
 	</pre>
+	Big files can be compared as MappedLines by <i>createExcerpts()</i>,
+	then only changed lines and some lines around them are held.
 */
 
 public class BalancedLines extends Vector
@@ -25,6 +27,65 @@ public class BalancedLines extends Vector
 		return new BalancedLines[] { left, right };
 	}
 	
+	/**
+		Compare two mapped files and return only their differences, with passed
+		number of unchanged lines before and after every change. Skipped lines
+		are shown as "...". Lines hold their real line numbers and a newline.
+	*/
+	public static BalancedLines [] createExcerpts(MappedLines lines1, MappedLines lines2, int context)	{
+		Diff d = new Diff(lines1, lines2);
+		Diff.change script = d.diff_2(false);
+		
+		BalancedLines left = new BalancedLines();
+		BalancedLines right = new BalancedLines();
+		int shown = 0;	// left lines before this were added or skipped
+		int offset = 0;	// right line number minus left line number of unchanged lines
+		
+		for (Diff.change hunk = script; hunk != null; hunk = hunk.link)	{
+			int from = Math.max(shown, hunk.line0 - context);
+			if (from > shown)	{
+				left.add(new Line(-1, "...\n"));
+				right.add(new Line(-1, "...\n"));
+			}
+			left.addUnchanged(lines1, right, lines2, offset, from, hunk.line0);
+			
+			String flag = hunk.inserted > 0 && hunk.deleted > 0 ? DiffChangeFlags.CHANGED : null;
+			for (int i = 0; i < Math.max(hunk.deleted, hunk.inserted); i++)	{
+				left.add(i < hunk.deleted
+						? new Line(hunk.line0 + i, lines1.getLine(hunk.line0 + i)+"\n", flag != null ? flag : DiffChangeFlags.DELETED)
+						: new Line(flag));
+				right.add(i < hunk.inserted
+						? new Line(hunk.line1 + i, lines2.getLine(hunk.line1 + i)+"\n", flag != null ? flag : DiffChangeFlags.INSERTED)
+						: new Line(flag));
+			}
+			
+			shown = hunk.line0 + hunk.deleted;
+			offset = hunk.line1 + hunk.inserted - shown;
+			int next = (hunk.link != null) ? hunk.link.line0 : lines1.size();
+			int to = Math.min(next, shown + context);
+			left.addUnchanged(lines1, right, lines2, offset, shown, to);
+			shown = to;
+		}
+		
+		if (shown < lines1.size())	{
+			left.add(new Line(-1, "...\n"));
+			right.add(new Line(-1, "...\n"));
+		}
+		
+		return new BalancedLines[] { left, right };
+	}
+	
+	private void addUnchanged(MappedLines lines1, BalancedLines right, MappedLines lines2, int offset, int from, int to)	{
+		for (int i = from; i < to; i++)	{
+			add(new Line(i, lines1.getLine(i)+"\n"));
+			right.add(new Line(i + offset, lines2.getLine(i + offset)+"\n"));
+		}
+	}
+	
+	
+	private BalancedLines()	{
+	}
+	
 
 	public BalancedLines(boolean isLeft, Object [] lines, Diff.change script)	{
 		super(lines.length + lines.length / 2);
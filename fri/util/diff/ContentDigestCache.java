@@ -0,0 +1,227 @@
+package fri.util.diff;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import fri.util.io.BufferPool;
+import fri.util.props.ConfigDir;
+
+/**
+	Persistent cache of file content digests, so that unchanged files must not be
+	read again to compare them with another file.
+	<p>
+	A digest is valid as long as the size and modification time of the file did not change.
+	There are three kinds of digests: of the bytes, and of the lines normalized like
+	SpaceIgnoringString does it, with or without leading spaces. Normalized digests
+	leave out empty lines, so two files have equal normalized digests exactly when
+	DiffFileTree would find them equal when ignoring spaces.
+	<p>
+	At most 200000 digests are kept, the least recently used is dropped first, so that
+	digests of deleted files do not fill up the cache.
+	The cache is stored in ContentDigests.cache in the "diff" configuration directory.
+*/
+
+public abstract class ContentDigestCache
+{
+	/** Digest kinds. */
+	public static final int BYTES = 0, IGNORE_SPACES = 1, IGNORE_SPACES_EXCEPT_LEADING = 2;
+
+	private static final String filename = ConfigDir.dir()+"diff"+File.separator+"ContentDigests.cache";
+	private static final int MAX_ENTRIES = 200000;
+	private static final int VERSION = 1;
+	private static final long RACY_MILLIS = 2000;	// files modified more recently could change unnoticed within same millisecond
+	private static Map index;	// kind:path -> "size modified digest", in access order
+	private static boolean dirty;
+
+
+	private ContentDigestCache()	{}
+
+
+	/**
+		Returns the cached digest of passed file, or null when it is not cached or the file changed.
+		@param file the file to digest.
+		@param kind one of BYTES, IGNORE_SPACES, IGNORE_SPACES_EXCEPT_LEADING.
+	*/
+	public static String getCachedDigest(File file, int kind)	{
+		String value;
+		synchronized(ContentDigestCache.class)	{
+			value = (String) ensureIndex().get(kind+":"+file.getAbsolutePath());
+		}
+		if (value == null)
+			return null;
+
+		StringTokenizer stok = new StringTokenizer(value);
+		if (stok.countTokens() == 3 &&
+				stok.nextToken().equals(""+file.length()) &&
+				stok.nextToken().equals(""+file.lastModified()))
+			return stok.nextToken();
+
+		return null;
+	}
+
+	/**
+		Returns the digest of passed file, from cache when the file did not change, else calculated and cached.
+		@param file the file to digest.
+		@param kind one of BYTES, IGNORE_SPACES, IGNORE_SPACES_EXCEPT_LEADING.
+	*/
+	public static String getDigest(File file, int kind)
+		throws IOException
+	{
+		String digest = getCachedDigest(file, kind);
+		if (digest != null)
+			return digest;
+
+		long size = file.length();
+		long modified = file.lastModified();
+		digest = kind == BYTES ? digestBytes(file) : digestLines(file, kind == IGNORE_SPACES_EXCEPT_LEADING);
+		put(file, kind, size, modified, digest);
+		return digest;
+	}
+
+	/**
+		Caches a digest that is known, e.g. that of another file with equal content.
+		@param file the file the digest belongs to.
+		@param kind one of BYTES, IGNORE_SPACES, IGNORE_SPACES_EXCEPT_LEADING.
+	*/
+	public static void putDigest(File file, int kind, String digest)	{
+		put(file, kind, file.length(), file.lastModified(), digest);
+	}
+
+	/** Write the cache to disk if it changed. */
+	public static synchronized void save()	{
+		if (index == null || dirty == false)
+			return;
+
+		try	{
+			new File(filename).getParentFile().mkdirs();
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+			try	{
+				out.writeInt(VERSION);
+				out.writeInt(index.size());
+				for (Iterator it = index.entrySet().iterator(); it.hasNext(); )	{	// least recently used first
+					Map.Entry e = (Map.Entry) it.next();
+					out.writeUTF((String) e.getKey());
+					out.writeUTF((String) e.getValue());
+				}
+			}
+			finally	{
+				out.close();
+			}
+			dirty = false;
+		}
+		catch (IOException e)	{
+			System.err.println("FEHLER: Sichern "+filename+", "+e.getMessage());
+		}
+	}
+
+
+	private static void put(File file, int kind, long size, long modified, String digest)	{
+		// the file must not have changed while digesting, and not be modified too recently
+		if (file.length() != size || file.lastModified() != modified || System.currentTimeMillis() - modified <= RACY_MILLIS)
+			return;
+
+		synchronized(ContentDigestCache.class)	{
+			ensureIndex().put(kind+":"+file.getAbsolutePath(), size+" "+modified+" "+digest);
+			dirty = true;
+		}
+	}
+
+	private static Map ensureIndex()	{
+		if (index == null)	{
+			index = new LinkedHashMap(1024, 0.75f, true)	{
+				protected boolean removeEldestEntry(Map.Entry eldest)	{
+					return size() > MAX_ENTRIES;
+				}
+			};
+			load();
+		}
+		return index;
+	}
+
+	private static void load()	{
+		File file = new File(filename);
+		if (file.exists() == false)
+			return;
+
+		try	{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try	{
+				if (in.readInt() != VERSION)
+					return;
+
+				for (int count = in.readInt(); count > 0; count--)	{
+					String key = in.readUTF();
+					index.put(key, in.readUTF());
+				}
+			}
+			finally	{
+				in.close();
+			}
+		}
+		catch (IOException e)	{
+			System.err.println("FEHLER: Lesen "+filename+", "+e.getMessage());
+			index.clear();
+		}
+	}
+
+
+	private static String digestBytes(File file)
+		throws IOException
+	{
+		MessageDigest md = newDigest();
+		InputStream in = new FileInputStream(file);
+		byte [] buffer = BufferPool.get(BufferPool.SIZE);
+		try	{
+			int read;
+			while ((read = in.read(buffer)) != -1)
+				md.update(buffer, 0, read);
+		}
+		finally	{
+			BufferPool.release(buffer);
+			in.close();
+		}
+		return toHex(md.digest());
+	}
+
+	// read lines like DiffFileTree does, digest their trimmed form, skip empty lines
+	private static String digestLines(File file, boolean exceptLeading)
+		throws IOException
+	{
+		MessageDigest md = newDigest();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try	{
+			String line;
+			while ((line = in.readLine()) != null)	{
+				String trimmed = new SpaceIgnoringString(line, exceptLeading).getTrimmed();
+				if (trimmed.length() > 0)	{
+					md.update(trimmed.getBytes("UTF-8"));
+					md.update((byte)'\n');
+				}
+			}
+		}
+		finally	{
+			in.close();
+		}
+		return toHex(md.digest());
+	}
+
+	private static MessageDigest newDigest()	{
+		try	{
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e)	{
+			throw new IllegalStateException("MD5 is not available: "+e);
+		}
+	}
+
+	private static String toHex(byte [] bytes)	{
+		StringBuffer sb = new StringBuffer(bytes.length * 2);
+		for (int i = 0; i < bytes.length; i++)	{
+			sb.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(bytes[i] & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+}
@@ -1,7 +1,5 @@
 package fri.util.diff;
 
-import java.util.Hashtable;
-
 /** A class to compare vectors of objects.  The result of comparison
     is a list of <code>change</code> objects which form an
     edit script.  The objects compared are traditionally lines
@@ -17,6 +15,12 @@ import java.util.Hashtable;
    inputs.  Our results are actually better (smaller change list, smaller
    total size of changes), but it would be nice to know why.  Perhaps
    there is a memory overwrite bug in GNU diff 1.15.
+<p>
+   Lines are translated to equivalence numbers in primitive int arrays.
+   Big files can be compared as <code>MappedLines</code>, then only line offsets
+   are held in memory. When both files have many lines, lines that occur
+   exactly once in both files are used as anchors (patience diff),
+   and only the ranges between anchors are compared.
 
   @author Stuart D. Gathman, translated from GNU diff 1.15
     Copyright (C) 2000  Business Management Systems, Inc.
@@ -53,6 +57,11 @@ public class Diff
       set of changes.  This makes things slower, sometimes much slower. */
   public boolean no_discards = false;
 
+  /** When both files have more undiscarded lines than this,
+      the ranges between unique common lines are compared separately.
+      This is fast for big files, but the result might not be minimal. */
+  public int anchor_lines = 100000;
+
   private int[] xvec, yvec;        /* Vectors being compared. */
   private int[] fdiag;                /* Vector, indexed by diagonal, containing
                                    the X coordinate of the point furthest
@@ -76,9 +85,21 @@ public class Diff
    */
   public Diff(Object[] a,Object[] b)
   {
-    Hashtable h = new Hashtable(a.length + b.length);
+    ObjectEquivalences h = new ObjectEquivalences(a.length + b.length);
     filevec[0] = new file_data(a,h);
     filevec[1] = new file_data(b,h);
+    equiv_max = h.getMax();
+  }
+
+  /** Prepare to find differences between the lines of two mapped files.
+      Lines are equal when their bytes are equal.
+   */
+  public Diff(MappedLines a,MappedLines b)
+  {
+    MappedEquivalences h = new MappedEquivalences(a.size() + b.size());
+    filevec[0] = new file_data(a,h);
+    filevec[1] = new file_data(b,h);
+    equiv_max = h.getMax();
   }
 
   /** Find the midpoint of the shortest edit script for a specified
@@ -331,6 +352,70 @@ public class Diff
       }
   }
 
+  /** Compare the undiscarded lines [0, XLIM) and [0, YLIM) in ranges
+     between anchors. Anchors are lines occurring exactly once in both files,
+     the longest sequence of them that has increasing line numbers in both files
+     is found by patience sorting. Anchors are not marked as changed.  */
+
+  private void compare_anchored (int xlim, int ylim) {
+    final int[] xcount = new int[equiv_max];
+    final int[] ycount = new int[equiv_max];
+    final int[] yline = new int[equiv_max];
+    for (int y = 0; y < ylim; y++) {
+      ++ycount[yvec[y]];
+      yline[yvec[y]] = y;
+    }
+    for (int x = 0; x < xlim; x++)
+      ++xcount[xvec[x]];
+
+    /* Unique common lines in order of file 0, with their line in file 1.  */
+    int n = 0;
+    for (int x = 0; x < xlim; x++)
+      if (xcount[xvec[x]] == 1 && ycount[xvec[x]] == 1)
+        n++;
+    final int[] candx = new int[n];
+    final int[] candy = new int[n];
+    n = 0;
+    for (int x = 0; x < xlim; x++)
+      if (xcount[xvec[x]] == 1 && ycount[xvec[x]] == 1) {
+        candx[n] = x;
+        candy[n++] = yline[xvec[x]];
+      }
+
+    /* Longest increasing subsequence of candy.  TAILS holds the candidate
+       ending the best sequence of each length, PREV links candidates.  */
+    final int[] tails = new int[n];
+    final int[] prev = new int[n];
+    int len = 0;
+    for (int i = 0; i < n; i++) {
+      int lo = 0, hi = len;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (candy[tails[mid]] < candy[i])
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+      prev[i] = lo > 0 ? tails[lo - 1] : -1;
+      tails[lo] = i;
+      if (lo == len)
+        len++;
+    }
+
+    final int[] anchors = new int[len];
+    for (int i = len - 1, k = len > 0 ? tails[len - 1] : -1; i >= 0; i--, k = prev[k])
+      anchors[i] = k;
+
+    int xoff = 0, yoff = 0;
+    for (int i = 0; i < len; i++) {
+      int x = candx[anchors[i]], y = candy[anchors[i]];
+      compareseq (xoff, x, yoff, y);
+      xoff = x + 1;
+      yoff = y + 1;
+    }
+    compareseq (xoff, xlim, yoff, ylim);
+  }
+
   /** Discard lines from one file that have no matches in the other file.
    */
 
@@ -446,8 +531,13 @@ public class Diff
     bdiag = new int[diags];
     bdiagoff = filevec[1].nondiscarded_lines + 1;
 
-    compareseq (0, filevec[0].nondiscarded_lines,
-                0, filevec[1].nondiscarded_lines);
+    if (filevec[0].nondiscarded_lines > anchor_lines
+        && filevec[1].nondiscarded_lines > anchor_lines)
+      compare_anchored (filevec[0].nondiscarded_lines,
+                        filevec[1].nondiscarded_lines);
+    else
+      compareseq (0, filevec[0].nondiscarded_lines,
+                  0, filevec[1].nondiscarded_lines);
     fdiag = null;
     bdiag = null;
 
@@ -734,20 +824,24 @@ public class Diff
       nondiscarded_lines = j;
     }
 
-    file_data(Object[] data,Hashtable h) {
-      buffered_lines = data.length;
+    private file_data(int lines) {
+      buffered_lines = lines;
 
       equivs = new int[buffered_lines]; 
       undiscarded = new int[buffered_lines];
       realindexes = new int[buffered_lines];
+    }
 
-      for (int i = 0; i < data.length; ++i) {
-        Integer ir = (Integer)h.get(data[i]);
-        if (ir == null)
-          h.put(data[i],Integer.valueOf(equivs[i] = equiv_max++));
-        else
-          equivs[i] = ir.intValue();
-      }
+    file_data(Object[] data,ObjectEquivalences h) {
+      this(data.length);
+      for (int i = 0; i < data.length; ++i)
+        equivs[i] = h.equivalence(data[i]);
+    }
+
+    file_data(MappedLines data,MappedEquivalences h) {
+      this(data.size());
+      for (int i = 0; i < buffered_lines; ++i)
+        equivs[i] = h.equivalence(data, i);
     }
 
     /** Adjust inserts/deletes of blank lines to join changes
@@ -860,4 +954,75 @@ public class Diff
     boolean[]            changed_flag;
 
   }	// end class file_data
+
+
+  /** Equivalence numbers of objects, by <code>hashCode</code> and <code>equals</code>.  */
+
+  private static class ObjectEquivalences extends EquivalenceTable {
+    private Object[] representatives;
+    private Object current;
+
+    ObjectEquivalences(int lines) {
+      super(lines);
+      representatives = new Object[Math.max(16, Math.min(lines + 1, 1 << 20))];
+    }
+
+    int equivalence(Object line) {
+      current = line;
+      return equivalence(line.hashCode());
+    }
+
+    protected boolean equalsRepresentative(int equiv) {
+      return representatives[equiv].equals(current);
+    }
+
+    protected void setRepresentative(int equiv) {
+      if (equiv >= representatives.length) {
+        Object[] a = new Object[representatives.length * 2];
+        System.arraycopy(representatives, 0, a, 0, representatives.length);
+        representatives = a;
+      }
+      representatives[equiv] = current;
+    }
+  }	// end class ObjectEquivalences
+
+
+  /** Equivalence numbers of mapped lines, by their bytes.  */
+
+  private static class MappedEquivalences extends EquivalenceTable {
+    private MappedLines[] representativeFiles;
+    private int[] representativeLines;
+    private MappedLines currentFile;
+    private int currentLine;
+
+    MappedEquivalences(int lines) {
+      super(lines);
+      int capacity = Math.max(16, Math.min(lines + 1, 1 << 20));
+      representativeFiles = new MappedLines[capacity];
+      representativeLines = new int[capacity];
+    }
+
+    int equivalence(MappedLines file, int line) {
+      currentFile = file;
+      currentLine = line;
+      return equivalence(file.hashLine(line));
+    }
+
+    protected boolean equalsRepresentative(int equiv) {
+      return representativeFiles[equiv].equalLines(representativeLines[equiv], currentFile, currentLine);
+    }
+
+    protected void setRepresentative(int equiv) {
+      if (equiv >= representativeLines.length) {
+        MappedLines[] f = new MappedLines[representativeFiles.length * 2];
+        System.arraycopy(representativeFiles, 0, f, 0, representativeFiles.length);
+        representativeFiles = f;
+        int[] l = new int[representativeLines.length * 2];
+        System.arraycopy(representativeLines, 0, l, 0, representativeLines.length);
+        representativeLines = l;
+      }
+      representativeFiles[equiv] = currentFile;
+      representativeLines[equiv] = currentLine;
+    }
+  }	// end class MappedEquivalences
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package fri.util.diff;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import fri.util.observer.CancelProgressObserver;
+
+/**
+	Measures throughput and allocation of Diff, BalancedLines and DiffFileTree
+	on generated inputs, to validate diff performance work and catch regressions.
+	<pre>
+		java fri.util.diff.DiffBenchmark [lines [breadth depth [seconds]]]
+	</pre>
+	Default is 20000 lines per text, directory trees with 4 folders and 4 files
+	per folder and 3 levels, and 2 seconds warmup plus 2 seconds measuring per case.
+	<p>
+	Texts are generated with few changes, many changes, moved blocks and changed spaces.
+	Every text is compared with the <i>heuristic</i> and <i>no_discards</i> flags on and off.
+	The trees are generated in the temporary directory and removed at end,
+	the ContentDigestCache is off unless "diffDigestCache" is set.
+	Allocated bytes are counted for the calling thread only, so they are too low
+	for DiffFileTree when it compares in parallel ("diffParallelism").
+*/
+
+class DiffBenchmark
+{
+	private static final String [] WORDS = {
+		"if", "else", "return", "int", "i", "j", "count", "size", "file", "name",
+		"null", "true", "false", "new", "Vector", "String", "get", "add", "=", "==",
+		"+", "-", "(", ")", "{", "}", ";", "for", "while", "this",
+	};
+	private static long millis = 2000L;
+
+
+	public static void main(String [] args)
+		throws Exception
+	{
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int breadth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+		millis = args.length > 3 ? Integer.parseInt(args[3]) * 1000L : millis;
+
+		Random random = new Random(4711L);
+		String [] base = createText(random, lines);
+		Object [][] corpora = new Object [][]	{
+			{ "few changes", base, change(random, base, lines / 1000 + 1) },
+			{ "many changes", base, change(random, base, lines / 10 + 1) },
+			{ "moved blocks", base, moveBlocks(random, base, 10, 50) },
+			{ "changed spaces", base, changeSpaces(random, base, 20) },
+			{ "changed spaces, ignored", ignoringSpaces(base), ignoringSpaces(changeSpaces(random, base, 20)) },
+		};
+
+		System.err.println("Texts of "+lines+" lines, "+(millis / 1000)+" seconds per case");
+		for (int i = 0; i < corpora.length; i++)	{
+			final String name = (String)corpora[i][0];
+			final Object [] a = (Object [])corpora[i][1];
+			final Object [] b = (Object [])corpora[i][2];
+
+			for (int flags = 0; flags < 4; flags++)	{
+				final boolean heuristic = (flags & 1) != 0;
+				final boolean noDiscards = (flags & 2) != 0;
+				measure("Diff "+name+(heuristic ? ", heuristic" : "")+(noDiscards ? ", no_discards" : ""), new Case()	{
+					void run()	{
+						Diff diff = new Diff(a, b);
+						diff.heuristic = heuristic;
+						diff.no_discards = noDiscards;
+						diff.diff_2(false);
+					}
+				});
+			}
+
+			measure("BalancedLines "+name, new Case()	{
+				void run()	{
+					BalancedLines.createBalancedLines(a, b);
+				}
+			});
+		}
+
+		File root = new File(System.getProperty("java.io.tmpdir"), "DiffBenchmark"+System.currentTimeMillis());
+		try	{
+			final File left = new File(root, "left");
+			final File right = new File(root, "right");
+			int files = createTree(random, left, right, breadth, depth, Math.max(1, lines / 100));
+			System.err.println("Trees of "+files+" files, breadth "+breadth+", depth "+depth+" in "+root);
+
+			for (int i = 0; i < 2; i++)	{
+				final boolean ignoreSpaces = i > 0;
+				measure("DiffFileTree"+(ignoreSpaces ? ", ignore spaces" : ""), new Case()	{
+					void run()
+						throws Exception
+					{
+						DiffFileTree tree1 = new DiffFileTree(left, ignoreSpaces, false, (String)null, true);
+						DiffFileTree tree2 = new DiffFileTree(right, ignoreSpaces, false, (String)null, true);
+						tree1.equalsCompound(tree2, new SilentObserver());
+					}
+				});
+			}
+		}
+		finally	{
+			deleteTree(root);
+		}
+	}
+
+
+	private static void measure(String name, Case c)
+		throws Exception
+	{
+		run(c, millis);	// warmup
+		System.gc();
+
+		long bytes = allocatedBytes();
+		long time = System.nanoTime();
+		int count = run(c, millis);
+		time = System.nanoTime() - time;
+		bytes = bytes < 0L ? -1L : (allocatedBytes() - bytes) / count;
+
+		double perSecond = count * 1000000000.0 / time;
+		double mbPerSecond = bytes < 0L ? -1.0 : bytes * perSecond / (1024 * 1024);
+		System.err.println(
+				pad(name, 56)+
+				pad(format(perSecond)+" ops/s", 16)+
+				pad((bytes < 0L ? "?" : ""+(bytes / 1024))+" KB/op", 16)+
+				(bytes < 0L ? "?" : format(mbPerSecond))+" MB/s");
+	}
+
+	private static int run(Case c, long millis)
+		throws Exception
+	{
+		long end = System.currentTimeMillis() + millis;
+		int count = 0;
+		do	{
+			c.run();
+			count++;
+		}
+		while (System.currentTimeMillis() < end);
+		return count;
+	}
+
+	// bytes allocated by current thread, -1 when not supported by VM
+	private static long allocatedBytes()	{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1L;
+	}
+
+	private static String format(double d)	{
+		return d >= 100.0 ? ""+Math.round(d) : ""+Math.round(d * 10.0) / 10.0;
+	}
+
+	private static String pad(String s, int length)	{
+		StringBuffer sb = new StringBuffer(s);
+		while (sb.length() < length)
+			sb.append(' ');
+		return sb.toString();
+	}
+
+
+
+	// text generation
+
+	private static String [] createText(Random random, int lines)	{
+		String [] text = new String[lines];
+		for (int i = 0; i < lines; i++)
+			text[i] = createLine(random);
+		return text;
+	}
+
+	private static String createLine(Random random)	{
+		int words = random.nextInt(8);
+		StringBuffer sb = new StringBuffer();
+		for (int i = random.nextInt(4); i > 0; i--)
+			sb.append('\t');
+		for (int i = 0; i < words; i++)	{
+			if (i > 0)
+				sb.append(' ');
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.toString();
+	}
+
+	// replace, insert or delete lines at random positions
+	private static String [] change(Random random, String [] text, int changes)	{
+		Vector v = new Vector(Arrays.asList(text));
+		for (int i = 0; i < changes; i++)	{
+			int pos = random.nextInt(v.size());
+			switch (random.nextInt(3))	{
+				case 0: v.set(pos, createLine(random)); break;
+				case 1: v.add(pos, createLine(random)); break;
+				default: v.remove(pos);
+			}
+		}
+		return (String [])v.toArray(new String[v.size()]);
+	}
+
+	private static String [] moveBlocks(Random random, String [] text, int blocks, int blockLines)	{
+		Vector v = new Vector(Arrays.asList(text));
+		for (int i = 0; i < blocks && v.size() > blockLines; i++)	{
+			int from = random.nextInt(v.size() - blockLines);
+			List block = new Vector(v.subList(from, from + blockLines));
+			v.subList(from, from + blockLines).clear();
+			v.addAll(random.nextInt(v.size() + 1), block);
+		}
+		return (String [])v.toArray(new String[v.size()]);
+	}
+
+	// every n-th line gets other spaces
+	private static String [] changeSpaces(Random random, String [] text, int n)	{
+		String [] changed = (String [])text.clone();
+		for (int i = random.nextInt(n); i < changed.length; i += n)
+			changed[i] = "  "+changed[i].replace(' ', '\t')+" ";
+		return changed;
+	}
+
+	private static Object [] ignoringSpaces(String [] text)	{
+		Object [] lines = new Object[text.length];
+		for (int i = 0; i < text.length; i++)
+			lines[i] = new SpaceIgnoringString(text[i], false);
+		return lines;
+	}
+
+
+
+	// tree generation
+
+	private static int createTree(Random random, File left, File right, int breadth, int depth, int lines)
+		throws IOException
+	{
+		if (left.mkdirs() == false || right.mkdirs() == false)
+			throw new IOException("Could not create "+left+" or "+right);
+
+		int count = 0;
+		for (int i = 0; i < breadth; i++)	{
+			String name = "file"+i+".txt";
+			String [] text = createText(random, lines);
+			write(new File(left, name), text);
+			switch (random.nextInt(4))	{	// equal, changed, changed spaces, missing
+				case 0: write(new File(right, name), text); break;
+				case 1: write(new File(right, name), change(random, text, 1)); break;
+				case 2: write(new File(right, name), changeSpaces(random, text, 20)); break;
+			}
+			count++;
+		}
+
+		if (depth > 1)
+			for (int i = 0; i < breadth; i++)
+				count += createTree(random, new File(left, "folder"+i), new File(right, "folder"+i), breadth, depth - 1, lines);
+
+		return count;
+	}
+
+	private static void write(File file, String [] text)
+		throws IOException
+	{
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		try	{
+			for (int i = 0; i < text.length; i++)
+				out.println(text[i]);
+		}
+		finally	{
+			out.close();
+		}
+	}
+
+	private static void deleteTree(File f)	{
+		File [] list = f.listFiles();
+		for (int i = 0; list != null && i < list.length; i++)
+			deleteTree(list[i]);
+		f.delete();
+	}
+
+
+
+	private static abstract class Case
+	{
+		abstract void run() throws Exception;
+	}
+
+
+	// keeps DiffFileTree from printing every compared file
+	private static class SilentObserver implements CancelProgressObserver
+	{
+		public boolean canceled()	{
+			return false;
+		}
+		public void progress(long portion)	{
+		}
+		public void setNote(String note)	{
+		}
+		public void endDialog()	{
+		}
+	}
+
+}
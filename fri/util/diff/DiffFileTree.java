@@ -1,11 +1,17 @@
 package fri.util.diff;
 
 import java.io.*;
+import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import gnu.regexp.*;
 import fri.util.regexp.*;
+import fri.util.io.MappedFileComparison;
 import fri.util.observer.CancelProgressObserver;
 import fri.util.os.OS;
+import fri.util.props.PropertyUtil;
 
 /**
 	Wrapper for File objects when comparing directories recursive.
@@ -27,10 +33,25 @@ import fri.util.os.OS;
 		// perform recursive comparison
 		boolean isEqual = tdw1.equalsCompound(tdw2);
 	</pre>
+	The children of two directories are joined by their names in a hashtable.
+	Matched subdirectories and files are compared in parallel by a ForkJoinPool,
+	its parallelism is the system property "diffParallelism" (default count of processors),
+	1 compares sequentially.
+	<p>
+	When the system property "diffDigestCache" is "true", digests of files found equal are
+	kept in the ContentDigestCache, and two files that both have a valid digest are compared
+	by their digests, so that unchanged files are not read again in following comparisons.
+	Files without digest are compared by content, which stops at the first difference.
+	<p>
+	When spaces are not ignored, files are compared byte by byte (see MappedFileComparison),
+	so binary files like archives and images are compared correctly, and the offset
+	of the first difference is available by <i>getFirstDifference()</i>.
 */
 
 public class DiffFileTree
 {
+	private static final int parallelism = PropertyUtil.getSystemInteger("diffParallelism", Runtime.getRuntime().availableProcessors());
+	private static final boolean useDigests = PropertyUtil.checkSystemProperty("diffDigestCache", false);
 	private File file;
 	private boolean insertedAndDeletedMustMatchPattern = true;	// if true: show only *.java, not a deleted XXX.gif file
 	private boolean ignoreSpaces, exceptLeading;
@@ -40,6 +61,7 @@ public class DiffFileTree
 	private String changeFlag = null;
 	private Vector children = null;
 	private CancelProgressObserver observer;
+	private long firstDifference = -1L;
 
 	
 	/** Root constructor, considers case sensitivity of platform. */
@@ -134,6 +156,11 @@ public class DiffFileTree
 	public void setChangeFlag(String changeFlag)	{
 		this.changeFlag = changeFlag;
 	}
+
+	/** Returns the offset of the first different byte of changed files of same size, or -1 when not known. */
+	public long getFirstDifference()	{
+		return firstDifference;
+	}
 	
 	
 	public void setChildren(Vector formattedChildren)	{
@@ -187,7 +214,23 @@ public class DiffFileTree
 		dft.observer = observer;
 		
 		boolean equal = equals(dft);	// simple comparison
-		boolean equalContent = equalsContent(dft);	// perform recursion
+		boolean equalContent;	// perform recursion
+		
+		if (parallelism > 1 && getFile().isDirectory() && dft.getFile().isDirectory())	{
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try	{
+				equalContent = ((Boolean)pool.invoke(new ContentComparison(this, dft))).booleanValue();
+			}
+			finally	{
+				pool.shutdown();
+			}
+		}
+		else	{
+			equalContent = equalsContent(dft, false);
+		}
+		
+		if (useDigests)
+			ContentDigestCache.save();
 		
 		if (observer != null)	{
 			observer.endDialog();
@@ -212,12 +255,13 @@ public class DiffFileTree
 	/**
 		Compare the file or directory contents.
 		Directory contents are all contained files.
+		When parallel is true, this runs in a ForkJoinPool and forks comparisons of contained files.
 	*/
-	private boolean equalsContent(DiffFileTree dft)	{
+	private boolean equalsContent(DiffFileTree dft, boolean parallel)	{
 		boolean equal = true;
 		
 		if (getFile().isDirectory() && dft.getFile().isDirectory())	{
-			equal = equalsDirContents(dft);
+			equal = equalsDirContents(dft, parallel);
 		}
 		else
 		if (getFile().isFile() && dft.getFile().isFile())	{
@@ -233,44 +277,101 @@ public class DiffFileTree
 	}
 	
 
-	private boolean equalsDirContents(DiffFileTree dft)	{
-		// compare every file of this object with equal file of passed object
-		// do CHANGED and INSERTED, seen from this object
-		boolean equal1 = equalsDirContents(this, dft);
-		// do DELETED, seen from peer object
-		boolean equal2 = equalsDirContents(dft, this);
-		return equal1 && equal2;
+	// compare the contents of two directories, do *NOT* break at first difference
+	private boolean equalsDirContents(DiffFileTree dft, boolean parallel)	{
+		// mark DELETED and INSERTED, collect pairs with same relative path
+		Vector pairs = new Vector();
+		boolean changed = joinChildren(dft, pairs) == false;
+		
+		// do CHANGED
+		if (parallel && pairs.size() > 1)	{
+			Vector tasks = new Vector(pairs.size());
+			for (int i = 0; i < pairs.size(); i++)	{
+				DiffFileTree [] pair = (DiffFileTree [])pairs.get(i);
+				tasks.add(new ContentComparison(pair[0], pair[1]));
+			}
+			
+			ForkJoinTask.invokeAll(tasks);
+			
+			for (int i = 0; i < tasks.size(); i++)	{
+				if (((Boolean)((ContentComparison)tasks.get(i)).join()).booleanValue() == false)
+					changed = true;
+			}
+		}
+		else	{
+			for (int i = 0; i < pairs.size(); i++)	{
+				if (observer != null && observer.canceled())
+					return false;
+				
+				DiffFileTree [] pair = (DiffFileTree [])pairs.get(i);
+				if (pair[0].equalsContent(pair[1], parallel) == false)
+					changed = true;
+			}
+		}
+
+		return !changed;
 	}
 
-	
-	// compare the contents of two directories, do *NOT* break at first difference
-	private boolean equalsDirContents(DiffFileTree tdw1, DiffFileTree tdw2)	{
-		boolean changed = false;
-		boolean isLeft = tdw1 == this;
+	/*
+		Join the children of this and passed directory by their names.
+		Children without peer get flag DELETED (this side) or INSERTED (peer side).
+		@return true if all children have a peer.
+	*/
+	private boolean joinChildren(DiffFileTree dft, Vector pairs)	{
+		Vector children1 = getChildren();
+		Vector children2 = dft.getChildren();
+		
+		Hashtable peerIndexes = new Hashtable(children2.size() * 2 + 1);	// name -> Integer
+		for (int j = children2.size() - 1; j >= 0; j--)	// first one wins like with indexOf()
+			peerIndexes.put(children2.get(j).toString(), Integer.valueOf(j));
+		
+		boolean [] matched = new boolean[children2.size()];
+		boolean allMatched = true;
 		
-		for (int i = 0; i < tdw1.getChildren().size(); i++)	{
+		for (int i = 0; i < children1.size(); i++)	{
 			if (observer != null && observer.canceled())
 				return false;
 
-			DiffFileTree thisOne = (DiffFileTree)tdw1.getChildren().get(i);
-			int j = tdw2.getChildren().indexOf(thisOne);	// search in other list via equals
+			DiffFileTree thisOne = (DiffFileTree)children1.get(i);
+			Integer j = (Integer)peerIndexes.get(thisOne.toString());
+			DiffFileTree thatOne = j != null ? (DiffFileTree)children2.get(j.intValue()) : null;
 			
-			if (j >= 0)	{	// element is in common set
-				if (isLeft)	{	// is first comparison
-					DiffFileTree thatOne = (DiffFileTree)tdw2.getChildren().get(j);
-	
-					if (thisOne.equalsContent(thatOne) == false)	{
-						changed = true;
-					}
-				}
+			if (thatOne != null && thisOne.equals(thatOne))	{	// element is in common set
+				matched[j.intValue()] = true;
+				pairs.add(new DiffFileTree [] { thisOne, thatOne });
 			}
 			else	{	// element is not in common set
-				thisOne.setChangeFlag(isLeft ? DiffChangeFlags.DELETED : DiffChangeFlags.INSERTED);
-				changed = true;
+				thisOne.setChangeFlag(DiffChangeFlags.DELETED);
+				allMatched = false;
+			}
+		}
+		
+		for (int j = 0; j < matched.length; j++)	{
+			if (matched[j] == false)	{
+				((DiffFileTree)children2.get(j)).setChangeFlag(DiffChangeFlags.INSERTED);
+				allMatched = false;
 			}
 		}
 
-		return !changed;
+		return allMatched;
+	}
+
+
+	// compares one pair of files or directories within a ForkJoinPool
+	private static class ContentComparison extends RecursiveTask
+	{
+		private final DiffFileTree left, right;
+		
+		ContentComparison(DiffFileTree left, DiffFileTree right)	{
+			this.left = left;
+			this.right = right;
+		}
+		
+		protected Object compute()	{
+			if (left.observer != null && left.observer.canceled())
+				return Boolean.FALSE;
+			return Boolean.valueOf(left.equalsContent(right, true));
+		}
 	}
 
 
@@ -288,8 +389,6 @@ public class DiffFileTree
 			return false;
 		}
 			
-		BufferedReader in1 = null, in2 = null;
-		
 		if (observer != null && observer.canceled() == false)	{
 			observer.setNote(file1.getName());
 		}
@@ -297,6 +396,45 @@ public class DiffFileTree
 			System.err.println("comparing	"+file1+"	"+file2);
 		}
 		
+		int kind = ignoreSpaces == false ? ContentDigestCache.BYTES :
+				exceptLeading ? ContentDigestCache.IGNORE_SPACES_EXCEPT_LEADING : ContentDigestCache.IGNORE_SPACES;
+		String digest1 = null, digest2 = null;
+		
+		if (useDigests)	{	// only when both are known, computing them would read files to end
+			digest1 = ContentDigestCache.getCachedDigest(file1, kind);
+			digest2 = ContentDigestCache.getCachedDigest(file2, kind);
+			
+			if (digest1 != null && digest2 != null)	{
+				if (digest1.equals(digest2))
+					return true;
+				
+				if (ignoreSpaces)	// normalized digests differ exactly when lines differ
+					return false;
+				
+				return equalsFileBytes(dft);	// different bytes, locate first difference
+			}
+		}
+		
+		boolean equal = ignoreSpaces ? equalsFileLines(file1, file2) : equalsFileBytes(dft);
+		
+		if (equal && useDigests && (observer == null || observer.canceled() == false))	{
+			// equal files have equal digests, compute one and remember it for both
+			try	{
+				String digest = digest1 != null ? digest1 : digest2 != null ? digest2 : ContentDigestCache.getDigest(file1, kind);
+				ContentDigestCache.putDigest(file1, kind, digest);
+				ContentDigestCache.putDigest(file2, kind, digest);
+			}
+			catch (IOException e)	{
+				e.printStackTrace();
+			}
+		}
+		return equal;
+	}
+
+	// compare lines of files, ignoring spaces and empty lines
+	private boolean equalsFileLines(File file1, File file2)	{
+		BufferedReader in1 = null, in2 = null;
+		
 		try	{
 			in1 = new BufferedReader(new FileReader(file1));
 			in2 = new BufferedReader(new FileReader(file2));
@@ -314,49 +452,43 @@ public class DiffFileTree
 				if (line1 == null && line2 == null)	// both have ended
 					return true;
 				
-				// not EOF of one of the files
-				if (ignoreSpaces == false)	{	// do not ignore spaces
-					if (line1 == null || line2 == null || line1.equals(line2) == false)
-						return false;
-				}
-				else	{	// ignore spaces
-					if (line1 == null || line2 == null)	{	// one has ended
-						if (line1 == null)	{	// EOF file 1
-							holded1 = true;	// do not read anymore
-							sis1 = new SpaceIgnoringString("", exceptLeading);
-							sis2 = new SpaceIgnoringString(line2, exceptLeading);
-						}
-						else
-						if (line2 == null)	{	// EOF file 2
-							holded2 = true;
-							sis2 = new SpaceIgnoringString("", exceptLeading);
-							sis1 = new SpaceIgnoringString(line1, exceptLeading);
-						}
+				// not EOF of one of the files, ignore spaces
+				if (line1 == null || line2 == null)	{	// one has ended
+					if (line1 == null)	{	// EOF file 1
+						holded1 = true;	// do not read anymore
+						sis1 = new SpaceIgnoringString("", exceptLeading);
+						sis2 = new SpaceIgnoringString(line2, exceptLeading);
 					}
-					else	{
+					else
+					if (line2 == null)	{	// EOF file 2
+						holded2 = true;
+						sis2 = new SpaceIgnoringString("", exceptLeading);
 						sis1 = new SpaceIgnoringString(line1, exceptLeading);
-						sis2 = new SpaceIgnoringString(line2, exceptLeading);
 					}
+				}
+				else	{
+					sis1 = new SpaceIgnoringString(line1, exceptLeading);
+					sis2 = new SpaceIgnoringString(line2, exceptLeading);
+				}
 
-					if (sis1.equals(sis2) == false)	{	// trimmed lines are different
-						// ignore amount of newlines
-						if (sis1.getTrimmed().equals("") && !holded1)	{	// line 1 is newline
-							holded2 = true;	// hold peer line 2 which is NOT newline
-						}
-						else
-						if (sis2.getTrimmed().equals("") && !holded2)	{	// line 2 is newline
-							holded1 = true;	// hold peer line 1 which is NOT newline
-						}
-						else	{
-							return false;
-						}
+				if (sis1.equals(sis2) == false)	{	// trimmed lines are different
+					// ignore amount of newlines
+					if (sis1.getTrimmed().equals("") && !holded1)	{	// line 1 is newline
+						holded2 = true;	// hold peer line 2 which is NOT newline
 					}
-					else	{	// release newline state
-						if (line1 != null)
-							holded1 = false;
-						if (line2 != null)
-							holded2 = false;
+					else
+					if (sis2.getTrimmed().equals("") && !holded2)	{	// line 2 is newline
+						holded1 = true;	// hold peer line 1 which is NOT newline
 					}
+					else	{
+						return false;
+					}
+				}
+				else	{	// release newline state
+					if (line1 != null)
+						holded1 = false;
+					if (line2 != null)
+						holded2 = false;
 				}
 				
 				if (observer != null && observer.canceled())
@@ -373,6 +505,23 @@ public class DiffFileTree
 		}
 	}
 
+	// compare bytes of files, both get the offset of first difference
+	private boolean equalsFileBytes(DiffFileTree dft)	{
+		try	{
+			long offset = MappedFileComparison.mismatch(getFile(), dft.getFile(), observer);
+			if (offset < 0L)
+				return true;
+			
+			if (observer == null || observer.canceled() == false)
+				firstDifference = dft.firstDifference = offset;
+			return false;
+		}
+		catch (IOException e)	{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
 
 
 	// test main
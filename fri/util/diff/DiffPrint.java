@@ -46,6 +46,8 @@ public class DiffPrint
     protected UnaryPredicate ignore = null;
     /** Set to the lines of the files being compared. */
     protected Object[] file0, file1;
+    /** Set instead of file0, file1 when printing changes of mapped files. */
+    protected MappedLines mapped0, mapped1;
 
 
     protected Base(Object[] a,Object[] b) {
@@ -54,6 +56,22 @@ public class DiffPrint
       file1 = b;
     }
 
+    protected Base(MappedLines a,MappedLines b) {
+      this((Object[])null,(Object[])null);
+      mapped0 = a;
+      mapped1 = b;
+    }
+
+    /** Return line I of file 0. */
+    protected Object line0(int i) {
+      return mapped0 != null ? mapped0.getLine(i) : file0[i];
+    }
+
+    /** Return line I of file 1. */
+    protected Object line1(int i) {
+      return mapped1 != null ? mapped1.getLine(i) : file1[i];
+    }
+
     /** Must be implemented by subcasses. */
     protected abstract void print_hunk(Diff.change hunk);
 
@@ -126,10 +144,10 @@ public class DiffPrint
         show_from += next.deleted;
         show_to += next.inserted;
         for (i = next.line0; i <= l0 && ! nontrivial; i++)
-          if (!ignore.execute(file0[i]))
+          if (!ignore.execute(line0(i)))
             nontrivial = true;
         for (i = next.line1; i <= l1 && ! nontrivial; i++)
-          if (!ignore.execute(file1[i]))
+          if (!ignore.execute(line1(i)))
             nontrivial = true;
       }
 
@@ -188,6 +206,10 @@ public class DiffPrint
       super(a,b);
     }
 
+    public NormalPrint(MappedLines a,MappedLines b) {
+      super(a,b);
+    }
+
     /** Print a hunk of a normal diff.
        This is a contiguous portion of a complete edit script,
        describing changes in consecutive lines.  */
@@ -206,7 +228,7 @@ public class DiffPrint
       /* Print the lines that the first file has.  */
       if (deletes != 0)
         for (int i = first0; i <= last0; i++)
-          print_1_line ("< ", file0[i]);
+          print_1_line ("< ", line0(i));
 
       if (inserts != 0 && deletes != 0)
         outfile.println("---");
@@ -214,7 +236,7 @@ public class DiffPrint
       /* Print the lines that the second file has.  */
       if (inserts != 0)
         for (int i = first1; i <= last1; i++)
-          print_1_line ("> ", file1[i]);
+          print_1_line ("> ", line1(i));
     }
   }
 
@@ -228,6 +250,10 @@ public class DiffPrint
       super(a,b);
     }
 
+    public EdPrint(MappedLines a,MappedLines b) {
+      super(a,b);
+    }
+
     /** Print a hunk of an ed diff */
     protected void print_hunk(Diff.change hunk) {
       /* Determine range of line numbers involved in each file.  */
@@ -255,7 +281,7 @@ public class DiffPrint
                so that we will output another ed-command later
                to change the double dot into a single dot.  */
 
-            if (".".equals(file1[i]))
+            if (".".equals(line1(i)))
               {
                 outfile.println("..");
                 outfile.println(".");
@@ -265,7 +291,7 @@ public class DiffPrint
               }
             else
               /* Line is not `.', so output it unmodified.  */
-              print_1_line ("", file1[i]);
+              print_1_line ("", line1(i));
         }
 
         /* End insert mode, if we are still in it.  */
@@ -295,10 +321,10 @@ public class DiffPrint
   }
 
 
-  /** Application Main */
+  /** Application Main, files are mapped, not read into memory. */
   public static void main(String[] argv) throws IOException {
-    String[] a = slurp(argv[argv.length - 2]);
-    String[] b = slurp(argv[argv.length - 1]);
+    MappedLines a = new MappedLines(new File(argv[argv.length - 2]));
+    MappedLines b = new MappedLines(new File(argv[argv.length - 1]));
 
     Diff d = new Diff(a,b);
     boolean edstyle = "-e".equals(argv[0]);
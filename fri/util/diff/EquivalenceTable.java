@@ -0,0 +1,85 @@
+package fri.util.diff;
+
+/**
+	Assigns equivalence numbers to lines, equal lines get the same number.
+	Numbers start at 1, 0 is never assigned.
+	<p>
+	This is an open addressing hashtable of primitive ints, holding the equivalence number
+	per slot and the hash per equivalence number. Subclasses compare the current line
+	with the first line that got an equivalence number (its representative).
+*/
+
+abstract class EquivalenceTable
+{
+	private int [] slots;	// equivalence number per slot, 0 is free
+	private int [] hashes;	// hash per equivalence number
+	private int max = 1;	// next equivalence number
+
+
+	EquivalenceTable(int expectedLines)	{
+		int capacity = 16;
+		while (capacity < expectedLines * 2 && capacity < (1 << 30))
+			capacity <<= 1;
+		slots = new int[capacity];
+		hashes = new int[Math.max(16, Math.min(expectedLines + 1, 1 << 20))];
+	}
+
+
+	/** Returns the equivalence number of the current line with passed hash, assigns a new one when not found. */
+	int equivalence(int hash)	{
+		int mask = slots.length - 1;
+		for (int i = spread(hash) & mask; ; i = (i + 1) & mask)	{
+			int equiv = slots[i];
+
+			if (equiv == 0)	{
+				equiv = max++;
+				if (equiv >= hashes.length)	{
+					int [] newHashes = new int[hashes.length * 2];
+					System.arraycopy(hashes, 0, newHashes, 0, hashes.length);
+					hashes = newHashes;
+				}
+				hashes[equiv] = hash;
+				slots[i] = equiv;
+				setRepresentative(equiv);
+
+				if (max * 2 > slots.length)
+					rehash();
+				return equiv;
+			}
+
+			if (hashes[equiv] == hash && equalsRepresentative(equiv))
+				return equiv;
+		}
+	}
+
+	/** Returns 1 more than the maximum assigned equivalence number. */
+	int getMax()	{
+		return max;
+	}
+
+
+	/** Returns true when the current line equals the representative of passed equivalence number. */
+	protected abstract boolean equalsRepresentative(int equiv);
+
+	/** The current line becomes the representative of passed new equivalence number. */
+	protected abstract void setRepresentative(int equiv);
+
+
+	private void rehash()	{
+		int [] newSlots = new int[slots.length * 2];
+		int mask = newSlots.length - 1;
+		for (int equiv = 1; equiv < max; equiv++)	{
+			int i = spread(hashes[equiv]) & mask;
+			while (newSlots[i] != 0)
+				i = (i + 1) & mask;
+			newSlots[i] = equiv;
+		}
+		slots = newSlots;
+	}
+
+	private static int spread(int hash)	{
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+}
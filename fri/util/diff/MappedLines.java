@@ -0,0 +1,144 @@
+package fri.util.diff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+	The lines of a memory mapped file, for comparing big files with Diff.
+	<UL>
+		<LI>Target: diff files that do not fit into heap as String arrays.
+		<LI>Behaviour: maps the whole file in windows and stores only the start offset
+			of every line. Lines are terminated by "\n", "\r\n" or "\r", like
+			BufferedReader.readLine() does. Lines are decoded with platform encoding
+			only when <i>getLine()</i> is called, e.g. for printing a change.
+		<LI>Errors: IOException when the file can not be mapped,
+			IllegalArgumentException when it has more lines than an array can hold.
+	</UL>
+	Usage:
+	<pre>
+		MappedLines lines1 = new MappedLines(file1);
+		MappedLines lines2 = new MappedLines(file2);
+		Diff.change script = new Diff(lines1, lines2).diff_2(false);
+	</pre>
+	The mapping is released by garbage collection.
+*/
+
+public class MappedLines
+{
+	private static final int WINDOW_SHIFT = 30;	// 1 GB windows
+	private static final int WINDOW_MASK = (1 << WINDOW_SHIFT) - 1;
+
+	private final MappedByteBuffer [] windows;
+	private final long size;
+	private final long [] starts;	// start offset of every line, file size at end
+
+
+	/** Map passed file and find its lines. */
+	public MappedLines(File file)
+		throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try	{
+			FileChannel channel = raf.getChannel();
+			size = channel.size();
+			windows = new MappedByteBuffer[(int)((size + WINDOW_MASK) >>> WINDOW_SHIFT)];
+			for (int i = 0; i < windows.length; i++)	{
+				long start = (long)i << WINDOW_SHIFT;
+				windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << WINDOW_SHIFT));
+			}
+		}
+		finally	{
+			raf.close();
+		}
+
+		long count = countLines();
+		if (count >= Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many lines in "+file+": "+count);
+
+		starts = new long[(int)count + 1];
+		int line = 0;
+		for (long pos = 0L; pos < size; )	{
+			starts[line++] = pos;
+			pos = nextLine(pos);
+		}
+		starts[line] = size;
+	}
+
+
+	/** Returns the number of lines. */
+	public int size()	{
+		return starts.length - 1;
+	}
+
+	/** Returns the line at passed index, without newline. */
+	public String getLine(int i)	{
+		long start = starts[i];
+		byte [] bytes = new byte[getLength(i)];
+		for (int j = 0; j < bytes.length; j++)
+			bytes[j] = byteAt(start + j);
+		return new String(bytes);
+	}
+
+	/** Returns the byte count of the line at passed index, without newline. */
+	public int getLength(int i)	{
+		long start = starts[i];
+		long end = starts[i + 1];
+		if (end > start && byteAt(end - 1) == '\n')
+			end--;
+		if (end > start && byteAt(end - 1) == '\r')
+			end--;
+		return (int)(end - start);
+	}
+
+	/** Returns the hash of the bytes of the line at passed index. */
+	public int hashLine(int i)	{
+		long start = starts[i];
+		int length = getLength(i);
+		int hash = length;
+		for (int j = 0; j < length; j++)
+			hash = 31 * hash + byteAt(start + j);
+		return hash;
+	}
+
+	/** Returns true if the line at passed index has the same bytes as the line of passed lines at other index. */
+	public boolean equalLines(int i, MappedLines other, int otherIndex)	{
+		int length = getLength(i);
+		if (length != other.getLength(otherIndex))
+			return false;
+
+		long start = starts[i];
+		long otherStart = other.starts[otherIndex];
+		for (int j = 0; j < length; j++)
+			if (byteAt(start + j) != other.byteAt(otherStart + j))
+				return false;
+		return true;
+	}
+
+
+	private byte byteAt(long pos)	{
+		return windows[(int)(pos >>> WINDOW_SHIFT)].get((int)(pos & WINDOW_MASK));
+	}
+
+	// returns the start of the line after the one containing pos, or size
+	private long nextLine(long pos)	{
+		while (pos < size)	{
+			byte b = byteAt(pos++);
+			if (b == '\n')
+				return pos;
+			if (b == '\r')
+				return pos < size && byteAt(pos) == '\n' ? pos + 1 : pos;
+		}
+		return pos;
+	}
+
+	private long countLines()	{
+		long count = 0L;
+		for (long pos = 0L; pos < size; pos = nextLine(pos))
+			count++;
+		return count;
+	}
+
+}
@@ -1,14 +1,19 @@
 package fri.util.file;
 
 import java.io.*;
+import java.util.concurrent.*;
 import fri.util.io.CopyStream;
 import fri.util.observer.CancelProgressObserver;
+import fri.util.props.PropertyUtil;
 
 /**
 	Copy the contents of a file (or directory) to another file (or directory).
 	<p>
 	MIND: you must call copy() to get this class running!
 	<p>
+	Files are copied by FileChannel.transferTo(), the target gets the
+	modification time of the source.
+	<p>
 	If files are passed to this class, it only calls <i>progress()</i> and
 	<i>canceled()</i> methods of the observer, not <i>setNote()</i> or <i>endDialog()</i>.
 	The <i>setNote()</i> method is called when passed arguments are directories.
@@ -18,7 +23,7 @@ import fri.util.observer.CancelProgressObserver;
 
 public class CopyFile extends CopyStream
 {
-	private File to;
+	private File from, to;
 
 	/**
 	 Copy a file to another one. Both files get closed at end.
@@ -37,7 +42,6 @@ public class CopyFile extends CopyStream
 		CancelProgressObserver dlg)
 		throws IOException
 	{
-		this.to = to;
 		this.dialog = dlg;
 		
 		if (from.isFile() == false)	{
@@ -51,9 +55,19 @@ public class CopyFile extends CopyStream
 				to = new File(to, from.getName());
 			}
 	
-			InputStream in  = new BufferedInputStream(new FileInputStream(from));
-			OutputStream out = new BufferedOutputStream(new FileOutputStream(to));
+			InputStream in  = new FileInputStream(from);	// no buffers, copied by channels
+			OutputStream out;
+			try	{
+				out = new FileOutputStream(to);
+			}
+			catch (IOException e)	{
+				try	{ in.close(); } catch (Exception ex)	{}
+				throw e;
+			}
 			
+			this.from = from;
+			this.to = to;
+			this.useChannels = true;
 			this.size = from.length();
 			this.out = out;
 			this.in = in;
@@ -62,6 +76,16 @@ public class CopyFile extends CopyStream
 		}
 	}
 
+	/** Copies the file and sets the modification time of the source to the target. */
+	public void copy()
+		throws IOException
+	{
+		super.copy();
+
+		if (from != null)	// else was a directory
+			to.setLastModified(from.lastModified());
+	}
+
 	/**
 		To be overridden by subclasses that must perform cleanup on error.
 		This gets called only when IOException was thrown.
@@ -91,12 +115,29 @@ public class CopyFile extends CopyStream
 
 
 
+/**
+	Copies a directory tree. Directories are created by the visiting thread,
+	contained files are copied concurrently by a bounded pool of worker threads.
+	The worker count is set by system property "copyThreads" (default 4),
+	1 copies sequentially. Only the calling thread talks to the observer:
+	workers sum up their progress, the caller passes it on and polls for cancel.
+	At first error or cancel all workers stop, partially copied files
+	are deleted by CopyFile.finalActionOnError().
+*/
 class CopyDirectory extends RecursiveFileVisitor
 {
+	private static final int threads = PropertyUtil.getSystemInteger("copyThreads", 4);
+	private static final long POLL_MILLIS = 100;
+	private static final File [] STOP = new File[0];	// end marker for workers
 	private String sourcePath;
 	private String targetPath;
 	private CancelProgressObserver dlg;
 	private IOException exception;
+	private BlockingQueue queue;	// File [] { source, target } pairs
+	private volatile boolean canceled;
+	private volatile String note;
+	private String shownNote;
+	private long progress;
 	
 	
 	CopyDirectory(File sourceDir, File targetDir, CancelProgressObserver dlg)
@@ -114,12 +155,30 @@ class CopyDirectory extends RecursiveFileVisitor
 	public void copy()
 		throws IOException
 	{
+		Thread [] workers = null;
+		if (threads > 1)	{
+			queue = new ArrayBlockingQueue(threads * 4);
+			workers = new Thread[threads];
+			for (int i = 0; i < workers.length; i++)	{
+				workers[i] = new Worker();
+				workers[i].start();
+			}
+		}
+
 		try	{
 			super.loop(new File(sourcePath), null, true);	// true: visit directories before contained files!
 		}
 		catch (RuntimeException e)	{
-			throw exception;
+			if (exception == null)	// not thrown by visit()
+				throw e;
 		}
+		finally	{
+			if (workers != null)
+				awaitWorkers(workers);
+		}
+
+		if (exception != null)
+			throw exception;
 	}
 	
 	protected void visit(File f)	{
@@ -128,22 +187,163 @@ class CopyDirectory extends RecursiveFileVisitor
 		File newFile = new File(target);
 		
 		if (f.isFile())	{
-			try	{
-				if (dlg != null)
-					dlg.setNote(f.getName());
-				new CopyFile(f, newFile, dlg).copy();
+			if (queue != null)	{
+				enqueue(new File [] { f, newFile });
 			}
-			catch (IOException e)	{
-				exception = e;
-				throw new RuntimeException("IOException occured: "+e.getMessage());
+			else	{
+				try	{
+					if (dlg != null)
+						dlg.setNote(f.getName());
+					new CopyFile(f, newFile, dlg).copy();
+				}
+				catch (IOException e)	{
+					exception = e;
+					throw new RuntimeException("IOException occured: "+e.getMessage());
+				}
 			}
 		}
 		else	{
 			if (newFile.exists() == false && newFile.mkdirs() == false)	{
-				exception = new IOException("Could not create subdirectory: "+newFile);
+				setException(new IOException("Could not create subdirectory: "+newFile));
 				throw new RuntimeException();
 			}
 		}
 	}
 
+
+	// wait until a worker takes the copy job, meanwhile report progress
+	private void enqueue(File [] job)	{
+		try	{
+			do	{
+				if (report())
+					throw new RuntimeException();
+			}
+			while (queue.offer(job, POLL_MILLIS, TimeUnit.MILLISECONDS) == false);
+		}
+		catch (InterruptedException e)	{
+			setException(new IOException("Interrupted while copying "+job[0]));
+			throw new RuntimeException();
+		}
+	}
+
+	// send end markers and wait for workers, reporting their progress
+	private void awaitWorkers(Thread [] workers)	{
+		for (int i = 0; i < workers.length; i++)	{
+			while (offer(STOP) == false)
+				report();
+		}
+		for (int i = 0; i < workers.length; i++)	{
+			while (workers[i].isAlive())	{
+				try	{ workers[i].join(POLL_MILLIS); }	catch (InterruptedException e)	{}
+				report();
+			}
+		}
+		report();
+	}
+
+	private boolean offer(Object o)	{
+		try	{
+			return queue.offer(o, POLL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)	{
+			return false;
+		}
+	}
+
+	// pass summed progress and latest note to observer, poll for cancel, return true if copy must stop
+	private boolean report()	{
+		long portion;
+		synchronized(this)	{
+			portion = progress;
+			progress = 0L;
+		}
+
+		if (dlg != null)	{
+			String n = note;
+			if (n != null && n != shownNote)
+				dlg.setNote(shownNote = n);
+
+			if (portion > 0L)
+				dlg.progress(portion);
+
+			if (dlg.canceled())
+				canceled = true;
+		}
+
+		if (canceled)
+			setException(new IOException("User Canceled!"));
+
+		return stopped();
+	}
+
+	private synchronized void setException(IOException e)	{
+		if (exception == null)
+			exception = e;
+	}
+
+	private synchronized boolean stopped()	{
+		return canceled || exception != null;
+	}
+
+
+
+	// observer for one worker copy, never calls the real observer
+	private class WorkerObserver implements CancelProgressObserver
+	{
+		public boolean canceled()	{
+			return stopped();
+		}
+		public void progress(long portion)	{
+			synchronized(CopyDirectory.this)	{
+				progress += portion;
+			}
+		}
+		public void setNote(String note)	{
+			CopyDirectory.this.note = note;
+		}
+		public void endDialog()	{
+		}
+	}
+
+
+	// copies files from queue until end marker arrives, skips all after first error or cancel
+	private class Worker extends Thread
+	{
+		Worker()	{
+			super("CopyWorker");
+			setDaemon(true);
+		}
+
+		public void run()	{
+			CancelProgressObserver observer = new WorkerObserver();
+			for (;;)	{
+				File [] job;
+				try	{
+					job = (File []) queue.take();
+				}
+				catch (InterruptedException e)	{
+					setException(new IOException("Copy worker was interrupted"));
+					continue;
+				}
+
+				if (job == STOP)
+					return;
+
+				if (stopped())
+					continue;
+
+				try	{
+					observer.setNote(job[0].getName());
+					new CopyFile(job[0], job[1], observer).copy();	// deletes partial target on error
+				}
+				catch (IOException e)	{
+					setException(e);
+				}
+				catch (RuntimeException e)	{
+					setException(new IOException(e.toString()));
+				}
+			}
+		}
+	}
+
 }
@@ -324,7 +324,6 @@ public class FileJoin
 			for (int i = 0; i < splitfiles.length; i++)	{
 				File from = splitfiles[i];
 				long length = from.length();
-				CopyStream.bufsize = (int)length;
 				
 				if (from != null)	{
 					InputStream in = new BufferedInputStream(new FileInputStream(from));
@@ -145,7 +145,6 @@ public class FileSplit
 		for (int i = 0; fileSize > 0L; fileSize -= splitSize, i++)	{
 			File to = new File(directory, basename+"."+i+EXTENSION);
 			long currentSize = (long)Math.min(splitSize, fileSize);
-			CopyStream.bufsize = (int)currentSize;
 			
 			if (askContinue(dlg, to, currentSize))	{
 				OutputStream out = new BufferedOutputStream(new FileOutputStream(to));
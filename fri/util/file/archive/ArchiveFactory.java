@@ -98,15 +98,15 @@ public abstract class ArchiveFactory
 		return isZip(name) || isTar(name);
 	}
 	
-	private static boolean isTar(String name)	{
+	static boolean isTar(String name)	{
 		return name.endsWith(TAR_EXTENSION) || isGZipTar(name) || isBZip2Tar(name);
 	}
 
-	private static boolean isGZipTar(String name)	{
+	static boolean isGZipTar(String name)	{
 		return name.endsWith(TARGZ_EXTENSION) || name.endsWith(TAR_GZ_EXTENSION);
 	}
 	
-	private static boolean isBZip2Tar(String name)	{
+	static boolean isBZip2Tar(String name)	{
 		return name.endsWith(TAR_BZ2_EXTENSION);
 	}
 	
@@ -0,0 +1,135 @@
+package fri.util.file.archive;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+import com.aftexsw.util.bzip.CBZip2InputStream;
+import com.ice.tar.TarInputStream;
+import fri.util.observer.CancelProgressObserver;
+
+/**
+	Reads all entries of an archive in one sequential pass, without temporary files.
+	<UL>
+		<LI>Target: search contents of many archives, where extracting entries to
+			disk costs more than reading them.
+		<LI>Behaviour: ZIP (JAR, ...) archives are read by ZipInputStream, TAR archives
+			by TarInputStream over a GZIP or BZIP2 decompressor. Entries that are archives
+			themselves are read recursively up to a maximum depth, their entries get the
+			path of the containing entry, separated by "!/", e.g. "lib/inner.jar!/a/B.class".
+			Directories and links are not visited.
+		<LI>Errors: IOException when an archive can not be read. A visitor can not
+			go back to an entry, the entry stream is valid only during the visit call.
+	</UL>
+*/
+
+public abstract class ArchiveStream
+{
+	/** Separator between path of a nested archive and the path of its entries. */
+	public static final String NESTED_SEPARATOR = "!/";
+
+
+	/** Receives every entry of the archive, in archive order. */
+	public interface EntryVisitor
+	{
+		/**
+			@param path the entry path, with NESTED_SEPARATOR for nested archives.
+			@param size the entry size, -1 when unknown.
+			@param time the modification time of the entry.
+			@param in the entry contents, valid only during this call, must not be closed.
+			@return false to stop reading.
+		*/
+		public boolean visitEntry(String path, long size, long time, InputStream in)
+			throws IOException;
+	}
+
+
+	private ArchiveStream()	{}
+
+
+	/**
+		Reads passed archive file and passes its entries to visitor.
+		@param maxDepth 1 when contained archives should be visited as entries, 2 to read
+			entries of contained archives, and so on.
+		@param observer optional, is asked for cancel, can be null.
+	*/
+	public static void walk(File archive, int maxDepth, EntryVisitor visitor, CancelProgressObserver observer)
+		throws IOException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(archive));
+		try	{
+			walk(in, archive.getName(), "", 1, maxDepth, visitor, observer);
+		}
+		finally	{
+			in.close();
+		}
+	}
+
+	/** Returns true when passed entry path names an archive that can be read by walk(). */
+	public static boolean isArchive(String path)	{
+		return ArchiveFactory.isArchive(path.toLowerCase());
+	}
+
+
+	// returns false when the visitor or observer stopped reading
+	private static boolean walk(InputStream in, String name, String prefix, int depth, int maxDepth, EntryVisitor visitor, CancelProgressObserver observer)
+		throws IOException
+	{
+		String lowerName = name.toLowerCase();
+
+		if (ArchiveFactory.isTar(lowerName))	{
+			if (ArchiveFactory.isBZip2Tar(lowerName))	{
+				if (in.read() != 'B' || in.read() != 'Z')	// CBZip2InputStream expects the magic to be read
+					throw new IOException("This is not a BZIP2 archive: "+name);
+				in = new CBZip2InputStream(in);
+			}
+			else
+			if (ArchiveFactory.isGZipTar(lowerName))	{
+				in = new GZIPInputStream(in);
+			}
+
+			TarInputStream tarIn = new TarInputStream(new UnclosableInputStream(in));
+			for (com.ice.tar.TarEntry entry; (entry = tarIn.getNextEntry()) != null; )	{
+				boolean link = entry.getHeader().linkName != null && entry.getHeader().linkName.length() > 0;
+				if (entry.isDirectory() == false && link == false)
+					if (visit(tarIn, entry.getName(), entry.getSize(), entry.getModTime().getTime(), prefix, depth, maxDepth, visitor, observer) == false)
+						return false;
+			}
+		}
+		else	{
+			ZipInputStream zipIn = new ZipInputStream(new UnclosableInputStream(in));
+			for (java.util.zip.ZipEntry entry; (entry = zipIn.getNextEntry()) != null; )	{
+				if (entry.isDirectory() == false)
+					if (visit(zipIn, entry.getName(), entry.getSize(), entry.getTime(), prefix, depth, maxDepth, visitor, observer) == false)
+						return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean visit(InputStream in, String name, long size, long time, String prefix, int depth, int maxDepth, EntryVisitor visitor, CancelProgressObserver observer)
+		throws IOException
+	{
+		if (observer != null && observer.canceled())
+			return false;
+
+		InputStream entryIn = new UnclosableInputStream(in);
+		if (depth < maxDepth && isArchive(name))
+			return walk(entryIn, name, prefix+name+NESTED_SEPARATOR, depth + 1, maxDepth, visitor, observer);
+
+		return visitor.visitEntry(prefix+name, size, time, entryIn);
+	}
+
+
+
+	// keeps the archive stream open when the entry or a nested archive is closed
+	private static class UnclosableInputStream extends FilterInputStream
+	{
+		UnclosableInputStream(InputStream in)	{
+			super(in);
+		}
+
+		public void close()	{
+		}
+	}
+
+}
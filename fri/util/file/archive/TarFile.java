@@ -1,6 +1,8 @@
 package fri.util.file.archive;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
 import com.aftexsw.util.bzip.CBZip2InputStream;
@@ -10,6 +12,14 @@ import fri.util.tar.*;
 /**
 	Implementing Archive.
 	Provide a buffered index of all the tar archive entries.
+	<p>
+	The index knows the offset of every entry's data, so <i>getInputStream()</i>
+	does not extract anything. Entries of uncompressed archives are read as bounded
+	slices of a FileChannel. Compressed archives can not be entered in the middle,
+	as the decompressor state can not be saved, so they are decompressed from start
+	and skipped up to the entry. The decompressor is kept open after the entry,
+	and a following entry continues from there, so reading all entries in archive
+	order decompresses the archive only once.
 */
 
 public class TarFile implements Archive
@@ -22,6 +32,9 @@ public class TarFile implements Archive
 	private File extractRootFolder = null;
 	private String error = null;
 	private boolean needAllEntries;
+	private InputStream sequential;	// decompressing stream kept open after last served entry
+	private long sequentialPosition;
+	private EntryInputStream sequentialEntry;	// last entry served from sequential stream
 	
 	
 	/**
@@ -47,7 +60,14 @@ public class TarFile implements Archive
 	private void openDelegate()	
 		throws Exception
 	{
-		InputStream is = new FileInputStream(file);
+		delegate = new ObserveableTarArchive(openArchiveStream());
+	}
+
+	// returns a stream of the uncompressed archive
+	private InputStream openArchiveStream()
+		throws IOException
+	{
+		InputStream is = new BufferedInputStream(new FileInputStream(file));
 		
 		if (isBZip2)	{
 			byte [] magic = new byte[2];	// must contain "BZ"
@@ -61,7 +81,7 @@ public class TarFile implements Archive
 			is = new GZIPInputStream(is);
 		}
 		
-		delegate = new ObserveableTarArchive(is);
+		return is;
 	}
 
 	private void closeDelegate()	{
@@ -85,6 +105,7 @@ public class TarFile implements Archive
 	*/
 	public void close()	{
 		closeDelegate();
+		closeSequential();
 		
 		// delete temporarily created files
 		if (files != null)	{
@@ -191,16 +212,26 @@ public class TarFile implements Archive
 
 
 	/**
-		Returns an InputStream for a passed entry name.
-		The whole archive gets extracted when option needAllEntries is active,
+		Returns an InputStream for a passed entry. When the entry comes from
+		<i>archiveEntries()</i>, the stream reads the archive from the entry's offset.
+		Else the whole archive gets extracted when option needAllEntries is active,
 		else only the passed entry.
-		<br>MIND: This method sets the filetime to that of the archive entry!
+		<br>MIND: Extracting sets the filetime to that of the archive entry!
 	*/
 	public InputStream getInputStream(ArchiveEntry entry, CancelProgressObserver observer)
 		throws IOException
 	{
 		if (entry.isDirectory())
 			return null;
+		
+		SelectiveTarEntry tarEntry = (SelectiveTarEntry)entry.getDelegate();
+		if (tarEntry.isLink())	// no links in Java
+			return new ByteArrayInputStream(new byte[0]);
+		
+		if (tarEntry.getDataOffset() >= 0L && (files == null || files.get(entry.getName()) == null))
+			return isGZip || isBZip2
+					? getDecompressedInputStream(tarEntry.getDataOffset(), tarEntry.getSize(), observer)
+					: getSliceInputStream(tarEntry.getDataOffset(), tarEntry.getSize());
 			
 		ensureFiles(entry, observer);
 		
@@ -211,6 +242,84 @@ public class TarFile implements Archive
 	}
 
 
+	private InputStream getSliceInputStream(long offset, long size)
+		throws IOException
+	{
+		FileChannel channel = new FileInputStream(file).getChannel();
+		try	{
+			channel.position(offset);
+		}
+		catch (IOException e)	{
+			channel.close();
+			throw e;
+		}
+		return new EntryInputStream(Channels.newInputStream(channel), size, false);
+	}
+
+	private InputStream getDecompressedInputStream(long offset, long size, CancelProgressObserver observer)
+		throws IOException
+	{
+		if (sequentialEntry != null && sequentialEntry.closed == false)	{	// still in use, need another stream
+			InputStream in = openArchiveStream();
+			try	{
+				skip(in, offset, observer);
+			}
+			catch (IOException e)	{
+				in.close();
+				throw e;
+			}
+			return new EntryInputStream(in, size, false);
+		}
+		
+		if (sequential == null || offset < sequentialPosition)	{	// can not go back
+			closeSequential();
+			sequential = openArchiveStream();
+			sequentialPosition = 0L;
+		}
+		
+		try	{
+			skip(sequential, offset - sequentialPosition, observer);
+		}
+		catch (IOException e)	{
+			closeSequential();
+			throw e;
+		}
+		sequentialPosition = offset;
+		
+		return sequentialEntry = new EntryInputStream(sequential, size, true);
+	}
+
+	private void skip(InputStream in, long count, CancelProgressObserver observer)
+		throws IOException
+	{
+		while (count > 0L)	{
+			if (observer != null && observer.canceled())
+				throw new IOException("Canceled skipping to tar entry");
+			
+			long skipped = in.skip(Math.min(count, 1024 * 1024));
+			if (skipped <= 0L)	{
+				if (in.read() < 0)
+					throw new EOFException("Tar archive ends before entry: "+file);
+				skipped = 1L;
+			}
+			count -= skipped;
+		}
+	}
+
+	private void closeSequential()	{
+		if (sequential != null)	{
+			try	{
+				sequential.close();
+			}
+			catch (IOException e)	{
+				e.printStackTrace();
+			}
+		}
+		sequential = null;
+		sequentialEntry = null;
+	}
+
+
 	private void ensureFiles(ArchiveEntry entry, CancelProgressObserver observer)
 		throws IOException
 	{
@@ -267,4 +376,65 @@ public class TarFile implements Archive
 		return extractRootFolder;
 	}
 
+
+
+	/** Reads the bytes of one entry, keeps the sequential stream open when shared. */
+	private class EntryInputStream extends InputStream
+	{
+		private InputStream in;
+		private long remaining;
+		private boolean shared;
+		boolean closed;
+		
+		EntryInputStream(InputStream in, long size, boolean shared)	{
+			this.in = in;
+			this.remaining = size;
+			this.shared = shared;
+		}
+		
+		public int read()
+			throws IOException
+		{
+			byte [] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+		}
+		
+		public int read(byte [] b, int off, int len)
+			throws IOException
+		{
+			if (closed)
+				throw new IOException("Tar entry stream is closed");
+			if (remaining <= 0L)
+				return -1;
+			if (len == 0)
+				return 0;
+			
+			int read = in.read(b, off, (int)Math.min(len, remaining));
+			if (read < 0)
+				throw new EOFException("Tar archive ends within entry: "+file);
+			
+			remaining -= read;
+			if (shared)
+				sequentialPosition += read;
+			return read;
+		}
+		
+		public int available()
+			throws IOException
+		{
+			return closed ? 0 : (int)Math.min(remaining, in.available());
+		}
+		
+		public void close()
+			throws IOException
+		{
+			if (closed)
+				return;
+			closed = true;
+			
+			if (shared == false)
+				in.close();
+		}
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package fri.util.ftp;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.StringTokenizer;
+import java.util.zip.CRC32;
+
+/**
+	Local calculation of the checksums FTP servers deliver by HASH, XMD5 and XCRC,
+	as lower case hex strings. Algorithm names are those of the HASH command:
+	"CRC32", "MD5", "SHA-1", "SHA-256", "SHA-512".
+*/
+
+abstract class FtpChecksum
+{
+	private FtpChecksum()	{}
+
+
+	/** Returns true when passed algorithm can be calculated locally. */
+	public static boolean isSupported(String algorithm)	{
+		if (algorithm.equals("CRC32"))
+			return true;
+		try	{
+			MessageDigest.getInstance(algorithm);
+			return true;
+		}
+		catch (NoSuchAlgorithmException e)	{
+			return false;
+		}
+	}
+
+	/** Returns the checksum of passed file as hex string. */
+	public static String calculate(File file, String algorithm)
+		throws IOException
+	{
+		CRC32 crc = null;
+		MessageDigest digest = null;
+		if (algorithm.equals("CRC32"))	{
+			crc = new CRC32();
+		}
+		else	{
+			try	{
+				digest = MessageDigest.getInstance(algorithm);
+			}
+			catch (NoSuchAlgorithmException e)	{
+				throw new IOException("Checksum algorithm not supported: "+algorithm);
+			}
+		}
+
+		byte [] buffer = new byte[65536];
+		InputStream in = new FileInputStream(file);
+		try	{
+			for (int cnt; (cnt = in.read(buffer)) != -1; )	{
+				if (crc != null)
+					crc.update(buffer, 0, cnt);
+				else
+					digest.update(buffer, 0, cnt);
+			}
+		}
+		finally	{
+			in.close();
+		}
+
+		if (crc != null)
+			return Long.toHexString(crc.getValue());
+
+		byte [] bytes = digest.digest();
+		StringBuffer sb = new StringBuffer(bytes.length * 2);
+		for (int i = 0; i < bytes.length; i++)	{
+			sb.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(bytes[i] & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	/** Compares two hex checksums, CRC values by number, as servers leave out leading zeros. */
+	public static boolean equals(String checksum1, String checksum2, String algorithm)	{
+		if (algorithm.equals("CRC32"))	{
+			try	{
+				return Long.parseLong(checksum1, 16) == Long.parseLong(checksum2, 16);
+			}
+			catch (NumberFormatException e)	{
+				return false;
+			}
+		}
+		return checksum1.equalsIgnoreCase(checksum2);
+	}
+
+	/**
+		Finds the checksum in a XMD5 or XCRC reply message, which may contain
+		the algorithm or the file name besides the hex string. Returns null if not found.
+	*/
+	public static String find(String reply, String algorithm)	{
+		int maxLength = algorithm.equals("CRC32") ? 8 : 32;
+		StringTokenizer stok = new StringTokenizer(reply);
+		while (stok.hasMoreTokens())	{
+			String token = stok.nextToken();
+			if (token.length() == maxLength || algorithm.equals("CRC32") && token.length() > 0 && token.length() < maxLength)
+				if (isHex(token))
+					return token;
+		}
+		return null;
+	}
+
+	private static boolean isHex(String s)	{
+		for (int i = 0; i < s.length(); i++)
+			if (Character.digit(s.charAt(i), 16) < 0)
+				return false;
+		return true;
+	}
+
+}
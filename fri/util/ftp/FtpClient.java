@@ -2,6 +2,8 @@ package fri.util.ftp;
 
 import java.io.*;
 import java.net.*;
+import java.util.*;
+import java.text.SimpleDateFormat;
 import fri.util.Equals;
 import fri.util.file.DeleteFile;
 
@@ -10,6 +12,17 @@ import fri.util.file.DeleteFile;
 	to upload and download files  and directories (optional recursive).
 	This class uses FtpConnection to launch commands. It contains no
 	FTP semantics like the sequence of two commands needed to rename a file.
+	<p>
+	Typed directory listings (MLSD, or parsed LIST) are kept for some directories,
+	isDirectory(), length() and lastModified() answer from the listing of the parent
+	directory. Kept listings are dropped by every command that changes the server,
+	and are listed again when older than some seconds, as other clients may change it.
+	Modification times are taken from MLSD listings only, else asked by MDTM.
+	<p>
+	With resume, binary transfers continue partially transferred files by REST,
+	the offset is the size of the partial target file, and directory transfers keep
+	a FtpTransferJournal of completed files. With verify, transferred files are compared
+	with the server by HASH, XMD5 or XCRC checksums, as far as the server supports them.
 	
 	Test sites:<br>
 		WINDOWS downloads.viaarena.com <br>
@@ -33,6 +46,9 @@ public class FtpClient implements
 	/** The default socket timeout (10 seconds) */
 	public static final int DEFAULT_TIMEOUT = 10;
 	
+	private static final int MAX_LISTINGS = 32;	// kept directory listings
+	private static final long MAX_LISTING_AGE = 15000L;	// milliseconds a kept listing is trusted
+	
 	private String user;
 	private byte [] password;
 	private String host;
@@ -41,12 +57,17 @@ public class FtpClient implements
 	private String transferType = FtpCommand.BINARY_TYPE;
 	private boolean activeFtp;	// defaults to false
 	private int timeoutSeconds = DEFAULT_TIMEOUT;
+	private boolean resume;
+	private boolean verify;
 
 	protected transient PrintStream log;
 	protected transient FtpConnection connection;
 	
 	private String system;
 	private Object lastReply;
+	private transient Map listings;	// absolute directory path -> Listing
+	private transient String workingDirectory;	// buffered PWD, reset by CWD
+	private transient FtpTransferJournal journal;	// of the running directory transfer
 
 
 	/**
@@ -117,9 +138,19 @@ public class FtpClient implements
 	}
 
 
-	/** Returns an unconnected clone of this client. */
+	/** Returns an unconnected clone of this client, with same transfer type, mode, timeout, resume and verify settings. */
 	public Object clone()	{
-		return new FtpClient(host, port, user, password, log);
+		return copySettings(new FtpClient(host, port, user, password, log));
+	}
+	
+	/** Copies transfer type, active mode, timeout, resume and verify settings to passed clone, for clone() implementations. */
+	protected FtpClient copySettings(FtpClient clone)	{
+		clone.transferType = transferType;
+		clone.activeFtp = activeFtp;
+		clone.timeoutSeconds = timeoutSeconds;
+		clone.resume = resume;
+		clone.verify = verify;
+		return clone;
 	}
 	
 	
@@ -148,6 +179,33 @@ public class FtpClient implements
 			connection.setActiveFtp(activeFtp);
 	}
 
+	/**
+		Sets if partially transferred files are continued, default false. A target file that is
+		smaller than the source is taken as partial, one of same size as complete. Needs binary
+		transfer type and a server that announces REST.
+	*/
+	public void setResume(boolean resume)	{
+		this.resume = resume;
+	}
+
+	/** Returns true if partially transferred files are continued. */
+	public boolean isResume()	{
+		return resume;
+	}
+
+	/**
+		Sets if transferred files are compared with the server by checksum, default false.
+		Files are not verified when the server supports none of HASH, XMD5, XCRC.
+	*/
+	public void setVerify(boolean verify)	{
+		this.verify = verify;
+	}
+
+	/** Returns true if transferred files are compared with the server by checksum. */
+	public boolean isVerify()	{
+		return verify;
+	}
+
 	
 	/** Returns the log stream of this client. */
 	public PrintStream getLog()	{
@@ -211,6 +269,8 @@ public class FtpClient implements
 				connection.close();
 				connection = null;
 				system = null;
+				listings = null;
+				workingDirectory = null;
 			}
 		}
 	}
@@ -221,6 +281,14 @@ public class FtpClient implements
 	public Object execute(FtpCommand command, Object arg)
 		throws FtpResponseException, IOException
 	{
+		String word = command.toString().toLowerCase();
+		if (word.equals("cwd") || word.equals("cdup"))
+			workingDirectory = null;
+		else
+		if (word.equals("dele") || word.equals("rmd") || word.equals("mkd") || word.equals("rnto") ||
+				word.equals("stor") || word.equals("appe") || word.equals("stou"))
+			invalidateListings();
+
 		try	{
 			Object o = ensureConnection().execute(command, arg);
 			if (o != null)
@@ -232,6 +300,8 @@ public class FtpClient implements
 			
 			if (e instanceof SocketException && e.getMessage().equals("Broken pipe"))	{
 				connection = null;
+				listings = null;
+				workingDirectory = null;	// a new connection starts in login directory
 
 				if (log != null)
 					log.println("Server seems to have disconnected ...");
@@ -294,6 +364,7 @@ public class FtpClient implements
 	public void renameTo(String oldRemoteName, String newRemoteName)
 		throws IOException, FtpResponseException
 	{
+		invalidateListings();
 		ensureConnection().renameTo(oldRemoteName, newRemoteName);
 	}
 
@@ -326,6 +397,96 @@ public class FtpClient implements
 		return ensureConnection().listNames(ftpDirectory);
 	}
 	
+	/**
+		Returns typed entries (name, type, size, time) of passed FTP directory, or current directory when null.
+		This is one data transfer, by MLSD when the server supports it, else by LIST.
+		Returns null when the server listing could not be understood.
+		The listing is kept for isDirectory(), length() and lastModified().
+	*/
+	public FtpListEntry [] listEntries(String ftpDirectory)
+		throws IOException, FtpResponseException
+	{
+		String path = getAbsolutePath(ftpDirectory);
+		FtpListEntry [] entries = ensureConnection().listEntries(path);
+		
+		Hashtable h = null;
+		if (entries != null)	{
+			h = new Hashtable(Math.max(11, entries.length * 2));
+			for (int i = 0; i < entries.length; i++)
+				h.put(entries[i].getName(), entries[i]);
+		}
+		getListings().put(path, new Listing(h));
+		
+		return entries;
+	}
+	
+	// returns the listed entry of passed path, lists the parent directory if not yet done, null when not known or a link
+	private FtpListEntry getListEntry(String remote)
+		throws IOException, FtpResponseException
+	{
+		String path = getAbsolutePath(remote);
+		int i = path.lastIndexOf('/');
+		if (i < 0 || i >= path.length() - 1)
+			return null;
+		
+		String parent = (i == 0) ? "/" : path.substring(0, i);
+		Map listings = getListings();
+		Listing listing = (Listing)listings.get(parent);
+		if (listing == null || System.currentTimeMillis() - listing.listed > MAX_LISTING_AGE)	{
+			try	{
+				listEntries(parent);
+			}
+			catch (FtpResponseException e)	{
+				listings.put(parent, new Listing(null));	// do not try again soon
+			}
+			listing = (Listing)listings.get(parent);
+		}
+		
+		Hashtable h = listing.entries;
+		FtpListEntry entry = (h != null) ? (FtpListEntry)h.get(path.substring(i + 1)) : null;
+		return (entry != null && entry.isLink() == false) ? entry : null;
+	}
+	
+	// a kept directory listing
+	private static class Listing
+	{
+		final Hashtable entries;	// name -> FtpListEntry, null when not parseable
+		final long listed = System.currentTimeMillis();
+		
+		Listing(Hashtable entries)	{
+			this.entries = entries;
+		}
+	}
+	
+	private Map getListings()	{
+		if (listings == null)	{
+			listings = new LinkedHashMap(MAX_LISTINGS, 0.75f, true)	{
+				protected boolean removeEldestEntry(Map.Entry eldest)	{
+					return size() > MAX_LISTINGS;
+				}
+			};
+		}
+		return listings;
+	}
+	
+	/** Drops all kept directory listings. Called when the server gets changed by this client. */
+	protected void invalidateListings()	{
+		listings = null;
+	}
+	
+	/** Returns passed remote path made absolute by the current directory, without trailing slash. */
+	String getAbsolutePath(String remote)
+		throws IOException, FtpResponseException
+	{
+		if (remote == null || remote.length() <= 0)
+			return pwd();
+		
+		String path = remote.startsWith("/") ? remote : pwd()+(pwd().endsWith("/") ? "" : "/")+remote;
+		while (path.length() > 1 && path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+		return path;
+	}
+	
 	/**
 		Returns a newline separated long (server OS specific) listing of filenames in current FTP directory.
 	*/
@@ -357,8 +518,10 @@ public class FtpClient implements
 	public String pwd()
 		throws IOException, FtpResponseException
 	{
+		if (workingDirectory != null)
+			return workingDirectory;
 		Object o = execute(FtpCommand.WORKINGDIR, null);
-		return o.toString();
+		return workingDirectory = o.toString();
 	}
 
 	/**
@@ -374,11 +537,20 @@ public class FtpClient implements
 	}
 
 	/**
-	 * Returns the last modification time of the specified file on the FTP server.
+	 * Returns the last modification time of the specified file on the FTP server,
+	 * formatted "yyyyMMddHHmmss" in GMT like the MDTM reply.
+	 * It is taken from a MLSD listing, else asked by MDTM.
 	 */
 	public String lastModified(String remoteFile)
 		throws IOException, FtpResponseException
 	{
+		FtpListEntry entry = getListEntry(remoteFile);
+		if (entry != null && entry.isExactTime())	{
+			SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format.format(new Date(entry.getTime()));
+		}
+		
 		Object o = execute(FtpCommand.FILE_TIME, remoteFile);
 		return o.toString();
 	}
@@ -389,6 +561,10 @@ public class FtpClient implements
 	public long length(String remoteFile)
 		throws IOException, FtpResponseException
 	{
+		FtpListEntry entry = getListEntry(remoteFile);
+		if (entry != null && entry.isDirectory() == false && entry.getSize() >= 0L)
+			return entry.getSize();
+		
 	  try  {
     		Object o = execute(FtpCommand.FILE_SIZE, remoteFile);
     		return toLong(o);
@@ -431,12 +607,17 @@ public class FtpClient implements
 
 	/**
 	 * Returns true if the passed name is a remote <b>directory</b>.
-	 * This test is done by <i>chdir(remote)</i>, if it fails,
-	 * it is identified as directory. This is time consuming!
+	 * This is answered from the listing of the parent directory. When that
+	 * can not be understood, or for links, the test is done by <i>chdir(remote)</i>,
+	 * if it fails, it is identified as file. This is time consuming!
 	 */
 	public boolean isDirectory(String remote)
 		throws IOException, FtpResponseException
 	{
+		FtpListEntry entry = getListEntry(remote);
+		if (entry != null)
+			return entry.isDirectory();
+		
 		String old = pwd();
 		try {
 			chdir(remote);	// will fail if file
@@ -482,6 +663,17 @@ public class FtpClient implements
 	private void cleanDir()
 		throws IOException, FtpResponseException
 	{
+		FtpListEntry [] entries = listEntries(null);
+		if (entries != null)	{
+			for (int i = 0; i < entries.length; i++)	{
+				if (entries[i].isDirectory())
+					deleteDirectory(entries[i].getName());
+				else	// links are deleted, not their target
+					deleteFile(entries[i].getName());
+			}
+			return;
+		}
+		
 		String [] names = listNames();
 		
 		for (int i = 0; i < names.length; i++) {
@@ -525,15 +717,45 @@ public class FtpClient implements
 	protected void downloadFile(String remoteFile, String localFile, Object dummy)
 		throws IOException, FtpResponseException
 	{
-		log.println("Downloading remote file "+remoteFile+" to local file "+localFile);
+		File file = new File(localFile);
+		if (journal != null && journal.isDone(localFile) && file.isFile())	{
+			log.println("Skipping remote file "+remoteFile+", was downloaded to "+localFile+" before");
+			transferSkipped(file.length());
+			return;
+		}
 		
-		try	{
-			ensureConnection().download(remoteFile, new FileOutputStream(localFile));
+		long offset = (resume && file.isFile()) ? getResumeOffset(file.length(), remoteLength(remoteFile)) : 0L;
+		
+		if (offset < 0L)	{
+			log.println("Skipping remote file "+remoteFile+", local file "+localFile+" has same size");
+			transferSkipped(file.length());
 		}
-		catch (IOException e)	{
-			new File(localFile).delete();	// was a directory, or not downloaded correctly
-			throw e;
+		else	{
+			if (offset > 0L)	{
+				log.println("Resuming download of remote file "+remoteFile+" to local file "+localFile+" at "+offset);
+				transferSkipped(offset);
+			}
+			else	{
+				log.println("Downloading remote file "+remoteFile+" to local file "+localFile);
+			}
+			
+			try	{
+				ensureConnection().download(remoteFile, new FileOutputStream(localFile, offset > 0L), offset);
+			}
+			catch (IOException e)	{
+				if (resume == false)
+					file.delete();	// was a directory, or not downloaded correctly
+				throw e;
+			}
 		}
+		
+		if (verify && checksumEquals(localFile, remoteFile) == false)	{
+			file.delete();
+			throw new IOException("Checksum of downloaded file "+localFile+" differs from remote file "+remoteFile);
+		}
+		
+		if (journal != null)
+			journal.done(localFile);
 	}
 
 
@@ -550,17 +772,24 @@ public class FtpClient implements
 		chdir(remoteDir);
 
 		File toCreate = new File(localDir);
-		boolean didNotExist = toCreate.exists();
+		boolean didNotExist = (toCreate.exists() == false);
+		
+		if (resume)
+			journal = new FtpTransferJournal(this, false, pwd(), localDir);
 		
 		try	{
 			downloadDirectory(localDir, recursive);
+			
+			if (journal != null)
+				journal.delete();	// completed
 		}
 		catch (IOException e)	{
-			if (didNotExist && toCreate.exists())
+			if (didNotExist && toCreate.exists() && resume == false)	// keep partial tree for resume
 				new DeleteFile(toCreate);
 			throw e;
 		}
 		finally	{
+			closeJournal();
 			try	{ chdir(old); }	catch (Exception e)	{}
 		}
 	}
@@ -576,33 +805,62 @@ public class FtpClient implements
 			throw new IOException("Could not create directory >"+localDir+"<");
 		}
 		
-		String[] names = listNames();
 		String old = pwd();
+		FtpListEntry [] entries = listEntries(null);
 		
-		for (int i = 0; i < names.length; i++) {
-			if (FtpStringUtil.isValidFileName(names[i])) {
-				String subPath = localDir + File.separator + names[i];
+		if (entries != null)	{	// types are known
+			for (int i = 0; i < entries.length; i++) {
+				String name = entries[i].getName();
+				String subPath = localDir + File.separator + name;
 				
-				try {
-					chdir(names[i]);	// will fail if file
-					
+				if (entries[i].isDirectory()) {
 					if (recursive) {
+						chdir(name);
 						downloadDirectory(subPath, recursive);
+						chdir(old);
 					}
-					
-					chdir(old);
 				}
-				catch (FtpResponseException e) {
-					if (e.response.isActionNotTaken()) {
-						downloadFile(names[i], subPath, null);
-					}
-					else {
-						throw e;
-					}
+				else
+				if (entries[i].isLink()) {	// could point to a directory
+					downloadName(name, subPath, recursive, old);
+				}
+				else {
+					downloadFile(name, subPath, null);
+				}
+			}
+		}
+		else	{
+			String[] names = listNames();
+			for (int i = 0; i < names.length; i++) {
+				if (FtpStringUtil.isValidFileName(names[i])) {
+					downloadName(names[i], localDir + File.separator + names[i], recursive, old);
 				}
 			}
 		}
 	}
+	
+	// download a name of unknown type, finding out by CWD if it is a directory
+	private void downloadName(String name, String subPath, boolean recursive, String old)
+		throws IOException, FtpResponseException
+	{
+		try {
+			chdir(name);	// will fail if file
+			
+			if (recursive) {
+				downloadDirectory(subPath, recursive);
+			}
+			
+			chdir(old);
+		}
+		catch (FtpResponseException e) {
+			if (e.response.isActionNotTaken()) {
+				downloadFile(name, subPath, null);
+			}
+			else {
+				throw e;
+			}
+		}
+	}
 
 
 
@@ -629,8 +887,52 @@ public class FtpClient implements
 	protected void uploadFile(String localFile, String remoteFile, Object dummy)
 		throws IOException, FtpResponseException
 	{
-		log.println("Uploading local file "+localFile+" to remote file "+remoteFile);
-		ensureConnection().upload(remoteFile, new FileInputStream(localFile));	// FileInputStream throws exception if not existing
+		File file = new File(localFile);
+		if (journal != null && journal.isDone(localFile))	{
+			log.println("Skipping local file "+localFile+", was uploaded to "+remoteFile+" before");
+			transferSkipped(file.length());
+			return;
+		}
+		
+		invalidateListings();
+		long offset = resume ? getResumeOffset(remoteLength(remoteFile), file.length()) : 0L;
+		
+		if (offset < 0L)	{
+			log.println("Skipping local file "+localFile+", remote file "+remoteFile+" has same size");
+			transferSkipped(file.length());
+		}
+		else	{
+			InputStream in = new FileInputStream(localFile);	// throws exception if not existing
+			if (offset > 0L)	{
+				log.println("Resuming upload of local file "+localFile+" to remote file "+remoteFile+" at "+offset);
+				try	{
+					for (long skipped = 0L; skipped < offset; )	{
+						long n = in.skip(offset - skipped);
+						if (n <= 0L)
+							throw new IOException("Could not skip to "+offset+" in "+localFile);
+						skipped += n;
+					}
+				}
+				catch (IOException e)	{
+					in.close();
+					throw e;
+				}
+				transferSkipped(offset);
+			}
+			else	{
+				log.println("Uploading local file "+localFile+" to remote file "+remoteFile);
+			}
+			
+			ensureConnection().upload(remoteFile, in, offset);
+		}
+		
+		if (verify && checksumEquals(localFile, remoteFile) == false)	{
+			deleteFile(remoteFile);
+			throw new IOException("Checksum of uploaded file "+remoteFile+" differs from local file "+localFile);
+		}
+		
+		if (journal != null)
+			journal.done(localFile);
 	}
 
 
@@ -660,6 +962,24 @@ public class FtpClient implements
 	 */
 	public void uploadDirectory(String localDir, String remoteDir, boolean recursive, FilenameFilter filenameFilter)
 		throws IOException, FtpResponseException
+	{
+		if (resume == false || journal != null)	{
+			uploadDirectoryContents(localDir, remoteDir, recursive, filenameFilter);
+			return;
+		}
+		
+		journal = new FtpTransferJournal(this, true, getAbsolutePath(remoteDir), localDir);
+		try	{
+			uploadDirectoryContents(localDir, remoteDir, recursive, filenameFilter);
+			journal.delete();	// completed
+		}
+		finally	{
+			closeJournal();
+		}
+	}
+	
+	private void uploadDirectoryContents(String localDir, String remoteDir, boolean recursive, FilenameFilter filenameFilter)
+		throws IOException, FtpResponseException
 	{
 		String old = pwd();
 
@@ -685,7 +1005,7 @@ public class FtpClient implements
 			String remote = subFiles[i].getName();
 			
 			if (subFiles[i].isDirectory() && recursive) {
-				uploadDirectory(local, remote, recursive, filenameFilter);
+				uploadDirectoryContents(local, remote, recursive, filenameFilter);
 			}
 			else
 			if (subFiles[i].isFile()) {
@@ -698,6 +1018,142 @@ public class FtpClient implements
 
 
 
+	private void closeJournal()	{
+		if (journal != null)
+			journal.close();
+		journal = null;
+	}
+	
+	/**
+		Called with the count of bytes that are not transferred, as they were transferred before.
+		Does nothing, to be overridden for progress reporting.
+	*/
+	protected void transferSkipped(long bytes)	{
+	}
+	
+	// returns the offset to resume from, 0 when the whole file must be transferred, -1 when target is complete
+	private long getResumeOffset(long targetSize, long sourceSize)
+		throws IOException, FtpResponseException
+	{
+		if (transferType.equals(FtpCommand.BINARY_TYPE) == false)
+			return 0L;	// sizes of ASCII transfers are not comparable
+		
+		if (targetSize <= 0L || sourceSize < 0L || targetSize > sourceSize)
+			return 0L;
+		
+		if (targetSize == sourceSize)
+			return -1L;
+		
+		if (ensureConnection().hasFeature("REST") == false)
+			return 0L;
+		
+		return targetSize;
+	}
+	
+	// returns the size of remote file by SIZE command, -1 when not existing
+	private long remoteLength(String remoteFile)
+		throws IOException, FtpResponseException
+	{
+		try	{
+			return toLong(execute(FtpCommand.FILE_SIZE, remoteFile));
+		}
+		catch (FtpResponseException e)	{
+			return -1L;
+		}
+	}
+	
+	
+	/**
+		Compares passed local file with passed remote file by a checksum calculated by the server.
+		Uses HASH (algorithm as selected on server), XMD5 or XCRC, the first the server announces.
+		@return false if checksums differ, true if they are equal or the server can not calculate checksums.
+	*/
+	public boolean checksumEquals(String localFile, String remoteFile)
+		throws IOException, FtpResponseException
+	{
+		String [] remote = remoteChecksum(remoteFile);
+		if (remote == null)	{
+			log.println("Server can not calculate checksums, not verifying "+remoteFile);
+			return true;
+		}
+		
+		String local = FtpChecksum.calculate(new File(localFile), remote[0]);
+		boolean equal = FtpChecksum.equals(local, remote[1], remote[0]);
+		log.println(remote[0]+" checksum of "+remoteFile+" is "+remote[1]+", local "+local+(equal ? "" : ", DIFFERENT!"));
+		return equal;
+	}
+	
+	// returns algorithm and checksum calculated by server, or null if not supported
+	private String [] remoteChecksum(String remoteFile)
+		throws IOException, FtpResponseException
+	{
+		FtpConnection connection = ensureConnection();
+		
+		String hash = connection.getFeatureParameters("HASH");
+		String algorithm = (hash != null) ? selectHashAlgorithm(hash) : null;
+		if (algorithm != null)	{
+			try	{	// "SHA-256 0-49 169cd22282da7f147cb491e559e9dd filename"
+				StringTokenizer stok = new StringTokenizer(execute(FtpCommand.HASH, remoteFile).toString());
+				stok.nextToken();
+				stok.nextToken();
+				return new String [] { algorithm, stok.nextToken() };
+			}
+			catch (FtpResponseException e)	{
+				log.println("HASH failed: "+e.getMessage());
+			}
+			catch (NoSuchElementException e)	{
+				log.println("HASH reply not understood");
+			}
+		}
+		
+		String [] algorithms = new String [] { "MD5", "CRC32" };
+		FtpCommand [] commands = new FtpCommand [] { FtpCommand.CHECKSUM_MD5, FtpCommand.CHECKSUM_CRC };
+		for (int i = 0; i < commands.length; i++)	{
+			if (connection.hasFeature(commands[i].toString()))	{
+				try	{
+					String checksum = FtpChecksum.find(execute(commands[i], remoteFile).toString(), algorithms[i]);
+					if (checksum != null)
+						return new String [] { algorithms[i], checksum };
+				}
+				catch (FtpResponseException e)	{
+					log.println(commands[i]+" failed: "+e.getMessage());
+				}
+			}
+		}
+		return null;
+	}
+	
+	// "SHA-256*;MD5": take the selected algorithm (marked by '*') when supported, else select a supported one
+	private String selectHashAlgorithm(String parameters)
+		throws IOException
+	{
+		List candidates = new ArrayList();
+		StringTokenizer stok = new StringTokenizer(parameters, ";");
+		while (stok.hasMoreTokens())	{
+			String algorithm = stok.nextToken().trim().toUpperCase();
+			boolean selected = algorithm.endsWith("*");
+			if (selected)
+				algorithm = algorithm.substring(0, algorithm.length() - 1);
+			
+			if (FtpChecksum.isSupported(algorithm))
+				if (selected)
+					return algorithm;
+				else
+					candidates.add(algorithm);
+		}
+		
+		for (int i = 0; i < candidates.size(); i++)	{
+			try	{
+				execute(FtpCommand.OPTIONS, "HASH "+candidates.get(i));
+				return (String)candidates.get(i);
+			}
+			catch (FtpResponseException e)	{
+			}
+		}
+		return null;
+	}
+	
+	
 	/** Returns the input stream from passed remote file. */
 	public InputStream getInputStream(String filePath)
 		throws IOException
@@ -709,6 +1165,7 @@ public class FtpClient implements
 	public OutputStream getOutputStream(String filePath)
 		throws IOException
 	{
+		invalidateListings();
 		return connection.getOutputStream(filePath);
 	}
 
@@ -1,9 +1,24 @@
 package fri.util.ftp;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import fri.util.io.BufferPool;
+import fri.util.observer.CancelProgressObserver;
+import fri.util.props.PropertyUtil;
 
 /**
 	Copy and move from a FTP server to another FTP server.
+	<p>
+	When both servers allow it, files are sent directly from server to server (FXP):
+	the target server listens by PASV, the source server connects to it by PORT,
+	and no data pass this client. When a server refuses that, or
+	<i>setServerToServer(false)</i> was called, the data are relayed: a thread downloads
+	the files one after another into a bounded ring of buffers, while the calling thread
+	uploads them from there, so that download and upload of a file, and of consecutive files,
+	overlap. The ring holds system property "ftpRelayBuffers" (default 4) buffers of the BufferPool.
+	<p>
 	Usage:
 	<pre>
 		FtpClient c1 = new FtpClient("downloads.viaarena.com");
@@ -24,7 +39,10 @@ import java.io.*;
 
 public class FtpClientToClient
 {
+	private static final int RELAY_BUFFERS = Math.max(2, PropertyUtil.getSystemInteger("ftpRelayBuffers", 4));
 	private FtpClient sourceClient, targetClient;
+	private boolean serverToServer = true;
+	private boolean serverToServerRefused;
 
 
 	/**
@@ -38,6 +56,17 @@ public class FtpClientToClient
 	}
 	
 	
+	/** Sets if files should be sent directly from server to server when both servers allow it, default true. */
+	public void setServerToServer(boolean serverToServer)	{
+		this.serverToServer = serverToServer;
+	}
+
+	/** Returns true if files are sent directly from server to server when possible. */
+	public boolean isServerToServer()	{
+		return serverToServer;
+	}
+
+
 	/**
 		Copy a file from one FTP server to another, keeping the same file name.
 		The source file must be a file (not a directory).
@@ -62,27 +91,14 @@ public class FtpClientToClient
 				targetClient.mkdir(dir);
 			}
 			catch (FtpResponseException e)	{
-				if (e.response.isDirectoryExistsError() == false)
+				if (e.response.isDirectoryExistsError() == false && e.response.isActionNotTaken() == false)
 					throw e;
 			}
 		}
 		
-		// copy file from sourceClient to targetClient
-		InputStream inStream = null;
-		OutputStream outStream = null;
-		try	{
-			inStream = sourceClient.getInputStream(sourceFile);
-			outStream = targetClient.getOutputStream(targetFile);
-			sourceClient.getConnection().copy(inStream, outStream);
-		}
-		finally	{
-			try	{
-				inStream.close();
-			}
-			finally	{
-				outStream.close();
-			}
-		}		
+		Vector jobs = new Vector(1);
+		jobs.add(new Job(sourceFile, targetFile, -1L));
+		transfer(jobs);
 	}
 	
 	
@@ -114,23 +130,28 @@ public class FtpClientToClient
 	// directory methods
 
 	/**
-	 * Downloads the specified directory from the FTP server to the specified local path.
+	 * Copies the specified directory from the source FTP server to the specified path on the target server.
+	 * The target directories are created first, then the files are transferred.
 	 */
 	public void copyDirectory(String sourceDir, String targetDir, boolean recursive)
 		throws IOException, FtpResponseException
 	{
+		Vector jobs = new Vector();
 		String old = sourceClient.pwd();
-		sourceClient.chdir(sourceDir);
-		copyDirectory(targetDir, recursive);
-		sourceClient.chdir(old);
+		try	{
+			collect(sourceDir, targetDir, recursive, jobs);
+		}
+		finally	{
+			try	{ sourceClient.chdir(old); }	catch (Exception e)	{}
+		}
+		transfer(jobs);
 	}
 
-	/**
-	 * Downloads the current working directory from the FTP server to the specified local path.
-	 */
-	private void copyDirectory(String targetDir, boolean recursive)
+	private void collect(String sourceDir, String targetDir, boolean recursive, Vector jobs)
 		throws IOException, FtpResponseException
 	{
+		checkCanceled();
+
 		try {	// create remote path, ignore error if exists
 			targetClient.mkdir(targetDir);
 		}
@@ -140,33 +161,294 @@ public class FtpClientToClient
 			}
 		}
 		
-		String[] names = sourceClient.listNames();
-		String old = sourceClient.pwd();
+		String prefix = sourceDir.endsWith("/") ? sourceDir : sourceDir+"/";
+		FtpListEntry [] entries = sourceClient.listEntries(sourceDir);
+
+		if (entries != null)	{
+			for (int i = 0; i < entries.length; i++)	{
+				String name = entries[i].getName();
+				if (entries[i].isDirectory() || entries[i].isLink() && sourceClient.isDirectory(prefix+name))	{
+					if (recursive)
+						collect(prefix+name, targetDir+"/"+name, recursive, jobs);
+				}
+				else	{
+					jobs.add(new Job(prefix+name, targetDir+"/"+name, entries[i].getSize()));
+				}
+			}
+		}
+		else	{	// listing not understood, find out types by CWD
+			sourceClient.chdir(sourceDir);
+			String [] names = sourceClient.listNames();
+			for (int i = 0; i < names.length; i++)	{
+				if (FtpStringUtil.isValidFileName(names[i]) == false)
+					continue;
+
+				if (sourceClient.isDirectory(prefix+names[i]))	{
+					if (recursive)
+						collect(prefix+names[i], targetDir+"/"+names[i], recursive, jobs);
+				}
+				else	{
+					jobs.add(new Job(prefix+names[i], targetDir+"/"+names[i], -1L));
+				}
+			}
+		}
+	}
+
+
+
+	// transfer methods
+
+	private void transfer(Vector jobs)
+		throws IOException, FtpResponseException
+	{
+		int i = 0;
+		if (serverToServer && serverToServerRefused == false)	{
+			for (; i < jobs.size(); i++)	{
+				checkCanceled();
+
+				if (copyServerToServer((Job) jobs.get(i)) == false)	{
+					serverToServerRefused = true;
+					sourceClient.getLog().println("Server-to-server transfer refused, relaying data through this client");
+					break;
+				}
+			}
+		}
 		
-		for (int i = 0; i < names.length; i++) {
-			if (FtpStringUtil.isValidFileName(names[i])) {
-				String subPath = targetDir + "/" + names[i];
+		if (i < jobs.size())
+			relay(jobs.subList(i, jobs.size()));
+	}
+
+
+	/*
+		Sends one file directly from source to target server. The target server listens
+		by PASV, the source server is told by PORT to connect to it. RETR is sent before STOR,
+		as some servers accept the data connection before they reply to STOR.
+		Returns false when one of the servers refuses this.
+	*/
+	private boolean copyServerToServer(Job job)
+		throws IOException, FtpResponseException
+	{
+		Object [] address = (Object []) targetClient.execute(FtpCommand.PASSIVE, null);
+		String hostAndPort = FtpStringUtil.buildCommaSeparatedIPAddressAndPort((String) address[0], ((Integer) address[1]).intValue());
+		try	{
+			sourceClient.execute(FtpCommand.PORT, hostAndPort);
+		}
+		catch (FtpResponseException e)	{	// PORT to a foreign address is refused
+			return false;
+		}
+		
+		try	{
+			sourceClient.execute(FtpCommand.RETRIEVE, job.source);
+		}
+		catch (FtpResponseException e)	{
+			if (e.response != null && (e.response.code == 425 || e.response.code == 426))	// could not connect to target
+				return false;
+			throw e;
+		}
+		
+		FtpConnection source = sourceClient.getConnection();
+		try	{
+			targetClient.execute(FtpCommand.STORE, job.target);
+		}
+		catch (IOException e)	{
+			try	{ source.checkSuccess("(when sending data to another server)"); }	catch (Exception e2)	{}
+			throw e;
+		}
+		
+		IOException error = null;
+		try	{
+			source.checkSuccess("(when sending data to another server)");
+		}
+		catch (IOException e)	{
+			error = e;
+		}
+		targetClient.getConnection().checkSuccess("(when receiving data from another server)");
+		if (error != null)
+			throw error;
+		
+		CancelProgressObserver observer = getObserver();
+		if (observer != null)	{
+			long size = job.size;
+			if (size < 0L)	{
+				try	{ size = sourceClient.length(job.source); }	catch (Exception e)	{}
+			}
+			if (size > 0L)
+				observer.progress(size);
+		}
+		return true;
+	}
+
+
+	/*
+		Downloads the files in a background thread into a ring of buffers,
+		and uploads them from there in this thread.
+	*/
+	private void relay(List jobs)
+		throws IOException, FtpResponseException
+	{
+		BlockingQueue free = new ArrayBlockingQueue(RELAY_BUFFERS);
+		BlockingQueue filled = new ArrayBlockingQueue(RELAY_BUFFERS * 2);	// also takes end-of-file marks
+		for (int i = 0; i < RELAY_BUFFERS; i++)
+			free.add(BufferPool.get(BufferPool.SIZE));
+
+		Downloader downloader = new Downloader(jobs, free, filled);
+		Thread thread = new Thread(downloader, "FTP relay from "+sourceClient.getHost());
+		thread.setDaemon(true);
+		thread.start();
+
+		CancelProgressObserver observer = getObserver();
+		OutputStream out = null;
+		try	{
+			for (int done = 0; done < jobs.size(); )	{
+				Chunk chunk;
+				try	{
+					chunk = (Chunk) filled.take();
+				}
+				catch (InterruptedException e)	{
+					throw new InterruptedIOException("FTP relay interrupted");
+				}
 				
-				try {
-					sourceClient.chdir(names[i]);	// will fail if file
-					
-					if (recursive) {
-						copyDirectory(subPath, recursive);
-					}
+				if (chunk.error != null)	{
+					if (chunk.error instanceof IOException)
+						throw (IOException) chunk.error;
+					throw new IOException("FTP relay download failed: "+chunk.error);
+				}
+				
+				if (out == null)
+					out = targetClient.getOutputStream(((Job) jobs.get(done)).target);
+				
+				if (chunk.buffer != null)	{
+					out.write(chunk.buffer, 0, chunk.length);
+					free.add(chunk.buffer);
 					
-					sourceClient.chdir(old);
+					if (observer != null)
+						observer.progress(chunk.length);
+				}
+				else	{	// end of file
+					OutputStream o = out;
+					out = null;
+					o.close();
+					done++;
 				}
-				catch (FtpResponseException e) {
-					if (e.response.isActionNotTaken()) {
-						copyFile(names[i], subPath);
+				checkCanceled();
+			}
+		}
+		finally	{
+			downloader.aborted = true;
+			thread.interrupt();
+			
+			if (out != null)	{
+				try	{ out.close(); }	catch (Exception e)	{}
+			}
+			
+			try	{ thread.join(); }	catch (InterruptedException e)	{}
+
+			for (Iterator it = free.iterator(); it.hasNext(); )
+				BufferPool.release((byte []) it.next());
+			for (Iterator it = filled.iterator(); it.hasNext(); )
+				BufferPool.release(((Chunk) it.next()).buffer);
+		}
+	}
+
+
+	private CancelProgressObserver getObserver()	{
+		return (sourceClient instanceof ObservableFtpClient) ? ((ObservableFtpClient) sourceClient).getObserver() : null;
+	}
+
+	private void checkCanceled()
+		throws IOException
+	{
+		CancelProgressObserver observer = getObserver();
+		if (observer != null && observer.canceled())
+			throw new IOException("User canceled FTP copy action");
+	}
+
+
+
+	/** Downloads files into buffers taken from the free queue, puts them into the filled queue. */
+	private class Downloader implements Runnable
+	{
+		private final List jobs;
+		private final BlockingQueue free, filled;
+		volatile boolean aborted;
+
+		Downloader(List jobs, BlockingQueue free, BlockingQueue filled)	{
+			this.jobs = jobs;
+			this.free = free;
+			this.filled = filled;
+		}
+
+		public void run()	{
+			try	{
+				for (Iterator it = jobs.iterator(); it.hasNext() && aborted == false; )	{
+					InputStream in = sourceClient.getInputStream(((Job) it.next()).source);
+					boolean complete = false;
+					try	{
+						int cnt;
+						do	{
+							byte [] buffer = (byte []) free.take();
+							cnt = fill(in, buffer);
+							if (cnt > 0)
+								filled.put(new Chunk(buffer, cnt, null));
+							else
+								free.put(buffer);
+						}
+						while (cnt == BufferPool.SIZE && aborted == false);
+						
+						complete = (aborted == false);
 					}
-					else {
-						throw e;
+					finally	{
+						if (complete)
+							in.close();
+						else
+							try	{ in.close(); }	catch (Exception e)	{}
 					}
+					filled.put(new Chunk(null, 0, null));	// end of file
 				}
 			}
+			catch (InterruptedException e)	{	// aborted by uploader
+			}
+			catch (Throwable e)	{
+				if (aborted == false)
+					try	{ filled.put(new Chunk(null, 0, e)); }	catch (InterruptedException e2)	{}
+			}
+		}
+
+		private int fill(InputStream in, byte [] buffer)
+			throws IOException
+		{
+			int len = 0;
+			for (int cnt; len < buffer.length && (cnt = in.read(buffer, len, buffer.length - len)) != -1; )
+				len += cnt;
+			return len;
+		}
+	}
+
+
+	private static class Chunk
+	{
+		final byte [] buffer;	// null marks the end of a file
+		final int length;
+		final Throwable error;
+
+		Chunk(byte [] buffer, int length, Throwable error)	{
+			this.buffer = buffer;
+			this.length = length;
+			this.error = error;
 		}
 	}
 
 
+	private static class Job
+	{
+		final String source, target;
+		final long size;	// -1 when not known
+
+		Job(String source, String target, long size)	{
+			this.source = source;
+			this.target = target;
+			this.size = size;
+		}
+	}
+
 }
@@ -37,15 +37,21 @@ public class FtpCommand
 
 	//public static final FtpCommand ABORT = new FtpCommand("abor");
 	public static final FtpCommand CHDIR = new FtpCommand("cwd");
+	public static final FtpCommand CHECKSUM_CRC = new FtpCommand("xcrc");
+	public static final FtpCommand CHECKSUM_MD5 = new FtpCommand("xmd5");
 	public static final FtpCommand DELETE_DIR = new FtpCommand("rmd");
 	public static final FtpCommand DELETE_FILE = new FtpCommand("dele");
+	public static final FtpCommand FEATURES = new FtpCommand("feat");
 	public static final FtpCommand FILE_SIZE = new FtpCommand("size");
 	public static final FtpCommand FILE_TIME = new FtpCommand("mdtm");
+	public static final FtpCommand HASH = new FtpCommand("hash");
 	public static final FtpCommand LIST_FILES = new FtpCommand("list");
 	public static final FtpCommand LIST_NAMES = new FtpCommand("nlst");
+	public static final FtpCommand MACHINE_LIST = new FtpCommand("mlsd");
 	public static final FtpCommand MODE = new FtpCommand("mode");
 	public static final FtpCommand MKDIR = new FtpCommand("mkd");
 	public static final FtpCommand NOOP = new FtpCommand("noop");
+	public static final FtpCommand OPTIONS = new FtpCommand("opts");
 	public static final FtpCommand PASSIVE = new FtpCommand("pasv");
 	public static final FtpCommand PASSWORD = new FtpCommand("pass");
 	public static final FtpCommand PORT = new FtpCommand("port");
@@ -56,6 +62,7 @@ public class FtpCommand
 	public static final FtpCommand RETRIEVE = new FtpCommand("retr");
 	public static final FtpCommand RENAME_FROM = new FtpCommand("rnfr");
 	public static final FtpCommand RENAME_TO = new FtpCommand("rnto");
+	public static final FtpCommand RESTART = new FtpCommand("rest");
 	public static final FtpCommand STORE = new FtpCommand("stor");
 	public static final FtpCommand TRANSFER_TYPE = new FtpCommand("type");
 	public static final FtpCommand CHDIR_UP = new FtpCommand("cdup");
@@ -72,14 +79,14 @@ public class FtpCommand
 	}
 
 
-	/** Preliminary commands are commands that precede a down- or upload: STORE, RETRIEVE, LIST_FILES, LIST_NAMES. */
+	/** Preliminary commands are commands that precede a down- or upload: STORE, RETRIEVE, LIST_FILES, LIST_NAMES, MACHINE_LIST. */
 	protected boolean isPreliminaryCommand()	{
-		return STORE.equals(cmd) || RETRIEVE.equals(cmd) || LIST_FILES.equals(cmd) || LIST_NAMES.equals(cmd);
+		return STORE.equals(cmd) || RETRIEVE.equals(cmd) || LIST_FILES.equals(cmd) || LIST_NAMES.equals(cmd) || MACHINE_LIST.equals(cmd);
 	}
 
-	/** Intermediate commands are commands that require a follower: USERNAME, RENAME_FROM. */
+	/** Intermediate commands are commands that require a follower: USERNAME, RENAME_FROM, RESTART. */
 	protected boolean isIntermediateCommand()	{
-		return USERNAME.equals(cmd) || RENAME_FROM.equals(cmd);
+		return USERNAME.equals(cmd) || RENAME_FROM.equals(cmd) || RESTART.equals(cmd);
 	}
 	
 	
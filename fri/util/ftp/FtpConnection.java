@@ -29,6 +29,8 @@ public class FtpConnection
 	protected int timeout;	// in milliseconds
 	private String transferType;
 	private boolean active;	// will be initially false
+	private Hashtable features;	// upper case feature word -> parameters from FEAT, null when not yet asked
+	private boolean machineListFailed;
 	
 
 	/**
@@ -206,6 +208,80 @@ public class FtpConnection
     }
 	}
 	
+	/**
+		Returns typed entries of passed remote directory, or current directory when null,
+		by one data transfer. Uses MLSD when the server supports it, else parses LIST lines.
+		Returns null when a LIST line could not be understood, then types must be found out by CWD.
+	*/
+	public FtpListEntry [] listEntries(String remoteDirOrNull)
+		throws FtpResponseException, IOException, UnknownHostException
+	{
+		if (machineListFailed == false && hasFeature("MLST"))	{	// MLSD is announced by MLST
+			try	{
+				String [] lines = list(FtpCommand.MACHINE_LIST, remoteDirOrNull);
+				List entries = new ArrayList(lines.length);
+				for (int i = 0; i < lines.length; i++)	{
+					FtpListEntry entry = FtpListEntry.parseMachineListing(lines[i]);
+					if (entry != null)
+						entries.add(entry);
+				}
+				return (FtpListEntry []) entries.toArray(new FtpListEntry[entries.size()]);
+			}
+			catch (FtpResponseException e)	{
+				if (e.response == null || e.response.code < 500 || e.response.code > 504)
+					throw e;
+				machineListFailed = true;	// announced but not implemented
+			}
+		}
+
+		String [] lines = listFiles(remoteDirOrNull);
+		List entries = new ArrayList(lines.length);
+		for (int i = 0; i < lines.length; i++)	{
+			FtpListEntry entry = FtpListEntry.parseListing(lines[i]);
+			if (entry != null)
+				entries.add(entry);
+			else
+			if (i > 0 || lines[i].toLowerCase().startsWith("total") == false)
+				return null;
+		}
+		return (FtpListEntry []) entries.toArray(new FtpListEntry[entries.size()]);
+	}
+
+	/** Returns true when the server announced passed feature word (like "MLST", "REST", "SIZE") in its FEAT reply. */
+	public boolean hasFeature(String feature)
+		throws FtpResponseException, IOException
+	{
+		return getFeatureParameters(feature) != null;
+	}
+
+	/**
+		Returns the parameters the server announced with passed feature word in its FEAT reply,
+		e.g. "SHA-256*;MD5" for "HASH". Returns "" for a feature without parameters, null when not announced.
+	*/
+	public String getFeatureParameters(String feature)
+		throws FtpResponseException, IOException
+	{
+		if (features == null)	{
+			features = new Hashtable();
+			try	{
+				String reply = execute(FtpCommand.FEATURES, null).toString();
+				StringTokenizer stok = new StringTokenizer(reply, "\r\n");
+				while (stok.hasMoreTokens())	{
+					String line = stok.nextToken();
+					if (line.startsWith(" "))	{	// feature lines are indented
+						line = line.trim();
+						int i = line.indexOf(' ');
+						String word = (i > 0 ? line.substring(0, i) : line).toUpperCase();
+						features.put(word, i > 0 ? line.substring(i + 1).trim() : "");
+					}
+				}
+			}
+			catch (FtpResponseException e)	{	// FEAT not supported
+			}
+		}
+		return (String)features.get(feature.toUpperCase());
+	}
+
 	/** Returns a full (remote platform dependent) directory listing of the current remote directory. */
 	public String [] listFiles(String remoteDirOrNull)
 		throws FtpResponseException, IOException, UnknownHostException
@@ -242,14 +318,31 @@ public class FtpConnection
 	public void download(String remoteFile, OutputStream out)
 		throws FtpResponseException, IOException
 	{
-		transfer(FtpCommand.RETRIEVE, remoteFile, out);
+		download(remoteFile, out, 0L);
+	}
+	
+	/** Retrieves the passed file from passed offset on (by REST command when greater zero) to the passed output stream. */
+	public void download(String remoteFile, OutputStream out, long offset)
+		throws FtpResponseException, IOException
+	{
+		transfer(FtpCommand.RETRIEVE, remoteFile, out, offset);
 	}
 	
 	/** Uploads passed input stream to the passed remote file on FTP server. Does not create directories! */
 	public void upload(String remoteFile, InputStream in)
 		throws FtpResponseException, IOException
 	{
-		transfer(FtpCommand.STORE, remoteFile, in);
+		upload(remoteFile, in, 0L);
+	}
+	
+	/**
+		Uploads passed input stream to the passed remote file, writing from passed offset on
+		(by REST command when greater zero). The input stream must be positioned at offset.
+	*/
+	public void upload(String remoteFile, InputStream in, long offset)
+		throws FtpResponseException, IOException
+	{
+		transfer(FtpCommand.STORE, remoteFile, in, offset);
 	}
 
 
@@ -261,6 +354,12 @@ public class FtpConnection
 	*/
 	private void transfer(FtpCommand command, String fileName, Object stream)
 		throws FtpResponseException, IOException, UnknownHostException
+	{
+		transfer(command, fileName, stream, 0L);
+	}
+	
+	private void transfer(FtpCommand command, String fileName, Object stream, long offset)
+		throws FtpResponseException, IOException, UnknownHostException
 	{
 		if (stream == null)
 			throw new IllegalArgumentException("Null stream not allowed: "+stream);
@@ -270,11 +369,11 @@ public class FtpConnection
 		try	{
 			if (stream instanceof OutputStream)	{	// is download
 				outStream = (OutputStream) stream;
-				inStream = new TransferInputStream(command, fileName);
+				inStream = new TransferInputStream(command, fileName, offset);
 			}
 			else	{	// InputStream, is upload
 				inStream = (InputStream) stream;
-				outStream = new TransferOutputStream(command, fileName);
+				outStream = new TransferOutputStream(command, fileName, offset);
 			}
 			copy(inStream, outStream);	// work on streams
 		}
@@ -337,7 +436,8 @@ public class FtpConnection
 		return new DataSocket(dataServer);
 	}
 
-	private void checkSuccess(String msgTag)
+	/** Reads the reply that completes a transfer. Package-private for server-to-server transfers. */
+	void checkSuccess(String msgTag)
 		throws FtpResponseException, IOException
 	{
 		FtpServerResponse sr = FtpServerResponse.getServerResponse(in, log);
@@ -347,8 +447,7 @@ public class FtpConnection
 
 	/**
 		Copy an InputStream to an OutputStream.
-		This method is protected to be overridden by observable connection,
-		and for usage in FtpClientToClient.
+		This method is protected to be overridden by observable connection.
 	*/
 	protected void copy(InputStream in, OutputStream out)
 		throws IOException
@@ -366,14 +465,14 @@ public class FtpConnection
 	public InputStream getInputStream(String filePath)
 		throws IOException
 	{
-		return new TransferInputStream(FtpCommand.RETRIEVE, filePath);
+		return new TransferInputStream(FtpCommand.RETRIEVE, filePath, 0L);
 	}
 
 	/** Returns the output stream on passed remote file. */
 	public OutputStream getOutputStream(String filePath)
 		throws IOException
 	{
-		return new TransferOutputStream(FtpCommand.STORE, filePath);
+		return new TransferOutputStream(FtpCommand.STORE, filePath, 0L);
 	}
 
 
@@ -382,11 +481,19 @@ public class FtpConnection
 	{
 		private DataSocket dataSocket;
 
-		TransferInputStream(FtpCommand ftpCmd, String ftpArg)
+		TransferInputStream(FtpCommand ftpCmd, String ftpArg, long offset)
 			throws IOException
 		{
 			this.dataSocket = createDataSocket();
-			execute(ftpCmd, ftpArg);
+			try	{
+				if (offset > 0L)	// REST must immediately precede the transfer command
+					execute(FtpCommand.RESTART, Long.valueOf(offset));
+				execute(ftpCmd, ftpArg);
+			}
+			catch (IOException e)	{	// command was refused, do not leave the data socket open
+				dataSocket.close();
+				throw e;
+			}
 		}
 		
 		public void close() throws IOException, FtpResponseException	{
@@ -424,11 +531,19 @@ public class FtpConnection
 	{
 		private DataSocket dataSocket;
 
-		TransferOutputStream(FtpCommand ftpCmd, String ftpArg)
+		TransferOutputStream(FtpCommand ftpCmd, String ftpArg, long offset)
 			throws IOException
 		{
 			this.dataSocket = createDataSocket();
-			execute(ftpCmd, ftpArg);
+			try	{
+				if (offset > 0L)	// REST must immediately precede the transfer command
+					execute(FtpCommand.RESTART, Long.valueOf(offset));
+				execute(ftpCmd, ftpArg);
+			}
+			catch (IOException e)	{	// command was refused, do not leave the data socket open
+				dataSocket.close();
+				throw e;
+			}
 		}
 		
 		public void close() throws IOException, FtpResponseException	{
@@ -501,7 +616,8 @@ public class FtpConnection
 			}
 			finally	{
 				try	{
-					socket.close();
+					if (socket != null)	// active server socket did not accept yet
+						socket.close();
 				}
 				finally	{
 					if (serverSocket != null)
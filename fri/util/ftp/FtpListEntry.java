@@ -0,0 +1,331 @@
+package fri.util.ftp;
+
+import java.util.*;
+
+/**
+	A typed line of a FTP directory listing: name, type, size and modification time.
+	Parses MLSD lines (RFC 3659) and the common LIST formats of UNIX ("ls -l")
+	and Windows (IIS "dir") servers. Parse methods return null for lines they
+	do not understand, the caller then has to find out types the hard way.
+*/
+
+public class FtpListEntry
+{
+	private static final String [] MONTHS = {
+		"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec",
+	};
+
+	private final String name;
+	private final boolean directory;
+	private final boolean link;
+	private final long size;
+	private final long time;
+	private final boolean exactTime;
+
+
+	/**
+		@param size the size in bytes, -1 when unknown.
+		@param time the modification time in milliseconds, 0 when unknown.
+	*/
+	public FtpListEntry(String name, boolean directory, boolean link, long size, long time)	{
+		this(name, directory, link, size, time, false);
+	}
+
+	/**
+		@param exactTime true when time is exact to the second in UTC, like a MLSD "modify" fact.
+	*/
+	public FtpListEntry(String name, boolean directory, boolean link, long size, long time, boolean exactTime)	{
+		this.name = name;
+		this.directory = directory;
+		this.link = link;
+		this.size = size;
+		this.time = time;
+		this.exactTime = exactTime;
+	}
+
+
+	/** Returns the name without path. */
+	public String getName()	{
+		return name;
+	}
+
+	/** Returns true for a directory. Links are never directories, as the type of their target is not known. */
+	public boolean isDirectory()	{
+		return directory;
+	}
+
+	/** Returns true for a symbolic link. */
+	public boolean isLink()	{
+		return link;
+	}
+
+	/** Returns the size in bytes, -1 when unknown. */
+	public long getSize()	{
+		return size;
+	}
+
+	/** Returns the modification time in milliseconds, 0 when unknown. */
+	public long getTime()	{
+		return time;
+	}
+
+	/**
+		Returns true when the time came from a MLSD listing. LIST times are in
+		server local time and often exact only to the minute or day.
+	*/
+	public boolean isExactTime()	{
+		return exactTime;
+	}
+
+	public String toString()	{
+		return name+(directory ? "/" : link ? "@" : "")+" "+size+" "+new Date(time);
+	}
+
+
+
+	/**
+		Parses a MLSD line like "type=file;size=1024;modify=20031231235959; name".
+		Returns null for the current and parent directory entries ("cdir", "pdir") and for lines without facts.
+	*/
+	public static FtpListEntry parseMachineListing(String line)	{
+		int i = line.indexOf(' ');
+		if (i <= 0 || i >= line.length() - 1)
+			return null;
+
+		String name = line.substring(i + 1);
+		String type = null;
+		long size = -1L;
+		long time = 0L;
+
+		StringTokenizer stok = new StringTokenizer(line.substring(0, i), ";");
+		while (stok.hasMoreTokens())	{
+			String fact = stok.nextToken();
+			int eq = fact.indexOf('=');
+			if (eq <= 0)
+				continue;
+
+			String key = fact.substring(0, eq).toLowerCase();
+			String value = fact.substring(eq + 1);
+
+			if (key.equals("type"))
+				type = value.toLowerCase();
+			else
+			if (key.equals("size") || key.equals("sizd"))
+				size = parseLong(value);
+			else
+			if (key.equals("modify"))
+				time = parseMachineTime(value);
+		}
+
+		if (type == null || type.equals("cdir") || type.equals("pdir") || FtpStringUtil.isValidFileName(name) == false)
+			return null;
+
+		boolean directory = type.equals("dir");
+		boolean link = type.indexOf("link") >= 0;	// "OS.unix=slink:target" or "OS.unix=symlink"
+		return new FtpListEntry(name, directory, link, directory ? -1L : size, time, time != 0L);
+	}
+
+	/**
+		Parses a LIST line of UNIX or Windows format. Returns null for the "total" line,
+		for "." and "..", and for unknown formats.
+	*/
+	public static FtpListEntry parseListing(String line)	{
+		if (line.length() <= 0)
+			return null;
+
+		char first = line.charAt(0);
+		if (Character.isDigit(first))
+			return parseWindowsListing(line);
+
+		if ("-dlbcps".indexOf(first) >= 0)
+			return parseUnixListing(line);
+
+		return null;
+	}
+
+
+	// "drwxr-xr-x   2 user  group     4096 Jan  1 12:00 name", group and link count are optional
+	private static FtpListEntry parseUnixListing(String line)	{
+		Vector tokens = new Vector();
+		Vector ends = new Vector();	// end index of every token
+		tokenize(line, tokens, ends);
+
+		// find the month, followed by day and time or year, preceded by the size
+		for (int m = 2; m < tokens.size() - 3; m++)	{
+			int month = parseMonth((String)tokens.get(m));
+			if (month < 0)
+				continue;
+
+			long size = parseLong((String)tokens.get(m - 1));
+			int day = (int)parseLong((String)tokens.get(m + 1));
+			long time = parseUnixTime(month, day, (String)tokens.get(m + 2));
+			if (size < 0L || day <= 0 || time == 0L)
+				continue;
+
+			String name = skipSpaces(line, ((Integer)ends.get(m + 2)).intValue());
+			if (name.length() <= 0)
+				return null;
+
+			char type = line.charAt(0);
+			boolean link = (type == 'l');
+			if (link)	{
+				int arrow = name.indexOf(" -> ");
+				if (arrow > 0)
+					name = name.substring(0, arrow);
+			}
+
+			if (FtpStringUtil.isValidFileName(name) == false)
+				return null;
+
+			boolean directory = (type == 'd');
+			return new FtpListEntry(name, directory, link, directory ? -1L : size, time);
+		}
+		return null;
+	}
+
+	// "12-31-03  11:59PM       <DIR>          name", or with size instead of <DIR>
+	private static FtpListEntry parseWindowsListing(String line)	{
+		Vector tokens = new Vector();
+		Vector ends = new Vector();
+		tokenize(line, tokens, ends);
+		if (tokens.size() < 4)
+			return null;
+
+		long time = parseWindowsTime((String)tokens.get(0), (String)tokens.get(1));
+		if (time == 0L)
+			return null;
+
+		String sizeOrDir = (String)tokens.get(2);
+		boolean directory = sizeOrDir.equalsIgnoreCase("<DIR>");
+		long size = directory ? -1L : parseLong(sizeOrDir);
+		if (directory == false && size < 0L)
+			return null;
+
+		String name = skipSpaces(line, ((Integer)ends.get(2)).intValue());
+		if (name.length() <= 0 || FtpStringUtil.isValidFileName(name) == false)
+			return null;
+
+		return new FtpListEntry(name, directory, false, size, time);
+	}
+
+
+
+	private static void tokenize(String line, Vector tokens, Vector ends)	{
+		int len = line.length();
+		for (int i = 0; i < len; )	{
+			while (i < len && Character.isWhitespace(line.charAt(i)))
+				i++;
+			int start = i;
+			while (i < len && Character.isWhitespace(line.charAt(i)) == false)
+				i++;
+			if (i > start)	{
+				tokens.add(line.substring(start, i));
+				ends.add(Integer.valueOf(i));
+			}
+		}
+	}
+
+	// the name can contain spaces, so it is the rest of the line after one separator run
+	private static String skipSpaces(String line, int i)	{
+		while (i < line.length() && line.charAt(i) == ' ')
+			i++;
+		return line.substring(i);
+	}
+
+	private static long parseLong(String s)	{
+		try	{
+			return Long.parseLong(s);
+		}
+		catch (NumberFormatException e)	{
+			return -1L;
+		}
+	}
+
+	private static int parseMonth(String s)	{
+		if (s.length() != 3)
+			return -1;
+		s = s.toLowerCase();
+		for (int i = 0; i < MONTHS.length; i++)
+			if (MONTHS[i].equals(s))
+				return i;
+		return -1;
+	}
+
+	// "YYYYMMDDHHMMSS[.sss]" in UTC
+	private static long parseMachineTime(String s)	{
+		if (s.length() < 14)
+			return 0L;
+		try	{
+			Calendar c = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+			c.clear();
+			c.set(
+					Integer.parseInt(s.substring(0, 4)),
+					Integer.parseInt(s.substring(4, 6)) - 1,
+					Integer.parseInt(s.substring(6, 8)),
+					Integer.parseInt(s.substring(8, 10)),
+					Integer.parseInt(s.substring(10, 12)),
+					Integer.parseInt(s.substring(12, 14)));
+			return c.getTime().getTime();
+		}
+		catch (NumberFormatException e)	{
+			return 0L;
+		}
+	}
+
+	// "12:00" within the last year, or "2003", in server local time, taken as client local time
+	private static long parseUnixTime(int month, int day, String timeOrYear)	{
+		Calendar c = Calendar.getInstance();
+		int year = c.get(Calendar.YEAR);
+		c.clear();
+		int colon = timeOrYear.indexOf(':');
+		try	{
+			if (colon > 0)	{
+				c.set(year, month, day, Integer.parseInt(timeOrYear.substring(0, colon)), Integer.parseInt(timeOrYear.substring(colon + 1)));
+				if (c.getTime().getTime() > System.currentTimeMillis() + 24L * 3600L * 1000L)
+					c.set(Calendar.YEAR, year - 1);	// was last year
+			}
+			else	{
+				c.set(Integer.parseInt(timeOrYear), month, day);
+			}
+			return c.getTime().getTime();
+		}
+		catch (NumberFormatException e)	{
+			return 0L;
+		}
+	}
+
+	// "12-31-03" or "12-31-2003", and "11:59PM" or "23:59"
+	private static long parseWindowsTime(String date, String time)	{
+		StringTokenizer d = new StringTokenizer(date, "-/.");
+		int colon = time.indexOf(':');
+		if (d.countTokens() != 3 || colon <= 0)
+			return 0L;
+		try	{
+			int month = Integer.parseInt(d.nextToken()) - 1;
+			int day = Integer.parseInt(d.nextToken());
+			int year = Integer.parseInt(d.nextToken());
+			if (year < 100)
+				year += (year < 70) ? 2000 : 1900;
+
+			String upper = time.toUpperCase();
+			boolean pm = upper.endsWith("PM");
+			boolean am = upper.endsWith("AM");
+			int hour = Integer.parseInt(time.substring(0, colon));
+			int minute = Integer.parseInt(time.substring(colon + 1, (pm || am) ? time.length() - 2 : time.length()));
+			if (pm && hour < 12)
+				hour += 12;
+			else
+			if (am && hour == 12)
+				hour = 0;
+
+			Calendar c = Calendar.getInstance();
+			c.clear();
+			c.set(year, month, day, hour, minute);
+			return c.getTime().getTime();
+		}
+		catch (NumberFormatException e)	{
+			return 0L;
+		}
+	}
+
+}
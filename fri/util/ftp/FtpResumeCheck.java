@@ -0,0 +1,298 @@
+package fri.util.ftp;
+
+import java.io.*;
+import java.util.Random;
+import fri.util.props.ConfigDir;
+
+/**
+	Checks resumed transfers, the transfer journal and checksum verification of FtpClient
+	against a FtpStandInServer on the local machine. Transfers are cut by
+	<i>setFailAfterBytes()</i>, then started again, the results are compared by bytes.
+	<pre>
+		java fri.util.ftp.FtpResumeCheck [parentDirectory]
+	</pre>
+	Default is the temporary directory, the files are removed at end.
+	Exits with 1 when a check failed.
+*/
+
+class FtpResumeCheck
+{
+	private static final int SIZE = 3000000;
+	private static int failures;
+	private static File serverDir;
+
+
+	public static void main(String [] args)
+		throws Exception
+	{
+		File parent = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+		File root = new File(parent, "FtpResumeCheck"+System.currentTimeMillis());
+		serverDir = new File(root, "server");
+		File localDir = new File(root, "local");
+		serverDir.mkdirs();
+		localDir.mkdirs();
+
+		Random random = new Random(4711L);
+		write(new File(serverDir, "big.bin"), random, SIZE);
+		write(new File(localDir, "up.bin"), random, SIZE);
+		File tree = new File(serverDir, "tree");
+		for (int i = 0; i < 6; i++)
+			write(new File(tree, (i % 2 == 0 ? "" : "sub/")+"f"+i+".bin"), random, 200000 * (i + 1));
+
+		FtpStandInServer server = new FtpStandInServer(serverDir, 0);
+		server.start();
+		try	{
+			checkDownload(server, localDir);
+			checkUpload(server, localDir);
+			checkCorruptedPart(server, localDir);
+			checkRemoteChanged(server, localDir);
+			checkAsciiNotSkipped(server, localDir);
+			checkDirectory(server, localDir);
+		}
+		finally	{
+			server.close();
+			delete(root);
+		}
+
+		System.err.println(failures == 0 ? "All checks passed" : failures+" checks FAILED");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+
+	private static void checkDownload(FtpStandInServer server, File localDir)
+		throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		FtpClient client = client(server, log);
+		File local = new File(localDir, "big.bin");
+		try	{
+			server.setFailAfterBytes(SIZE / 3);
+			expectFailure("cut download", client, "/big.bin", local.getPath(), false);
+			server.setFailAfterBytes(-1L);
+
+			client.disconnect();	// the cut left the connection in unknown state
+			client.downloadFile("/big.bin", local.getPath());
+		}
+		finally	{
+			server.setFailAfterBytes(-1L);
+			client.disconnect();
+		}
+		check("download resumed", contains(log, "Resuming download"));
+		check("download checksum verified", contains(log, "checksum of /big.bin"));
+		check("download equal", equals(new File(serverDir, "big.bin"), local));
+	}
+
+	private static void checkUpload(FtpStandInServer server, File localDir)
+		throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		FtpClient client = client(server, log);
+		File local = new File(localDir, "up.bin");
+		try	{
+			server.setFailAfterBytes(SIZE / 4);
+			expectFailure("cut upload", client, local.getPath(), "/up.bin", true);
+			server.setFailAfterBytes(-1L);
+
+			client.disconnect();
+			client.uploadFile(local.getPath(), "/up.bin");
+		}
+		finally	{
+			server.setFailAfterBytes(-1L);
+			client.disconnect();
+		}
+		check("upload resumed", contains(log, "Resuming upload"));
+		check("upload equal", equals(local, new File(serverDir, "up.bin")));
+	}
+
+	private static void checkCorruptedPart(FtpStandInServer server, File localDir)
+		throws IOException
+	{
+		File local = new File(localDir, "big.bin");
+		RandomAccessFile raf = new RandomAccessFile(local, "rw");
+		try	{
+			raf.setLength(SIZE / 2);
+			raf.seek(10L);
+			raf.write(new byte [] { 1, 2, 3, 4, 5 });
+		}
+		finally	{
+			raf.close();
+		}
+
+		FtpClient client = client(server, new ByteArrayOutputStream());
+		try	{
+			expectFailure("corrupted part detected", client, "/big.bin", local.getPath(), false);
+			check("corrupted part deleted", local.exists() == false);
+
+			client.downloadFile("/big.bin", local.getPath());
+		}
+		finally	{
+			client.disconnect();
+		}
+		check("corrupted part downloaded again", equals(new File(serverDir, "big.bin"), local));
+	}
+
+	private static void checkRemoteChanged(FtpStandInServer server, File localDir)
+		throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		FtpClient client = client(server, log);
+		client.setVerify(false);	// the decision to resume is checked, not its verification
+		File remote = new File(serverDir, "big.bin");
+		File local = new File(localDir, "big.bin");
+		try	{
+			client.listEntries("/");	// keeps the listing with the old size
+			check("listed size", client.length("/big.bin") == SIZE);
+
+			OutputStream out = new FileOutputStream(remote, true);
+			try	{
+				out.write(new byte [] { 1, 2, 3, 4, 5, 6, 7 });
+			}
+			finally	{
+				out.close();
+			}
+			client.downloadFile("/big.bin", local.getPath());
+		}
+		finally	{
+			client.disconnect();
+		}
+		check("changed remote file not skipped by listed size", contains(log, "Resuming download"));
+		check("changed remote file equal", equals(remote, local));
+	}
+
+	private static void checkAsciiNotSkipped(FtpStandInServer server, File localDir)
+		throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		FtpClient client = client(server, log);
+		client.setVerify(false);
+		client.setTransferType(FtpCommand.ASCII_TYPE);
+		try	{
+			client.downloadFile("/big.bin", new File(localDir, "big.bin").getPath());	// same size
+		}
+		finally	{
+			client.disconnect();
+		}
+		check("ASCII download of same size not skipped", contains(log, "Downloading remote file"));
+	}
+
+	private static void checkDirectory(FtpStandInServer server, File localDir)
+		throws IOException
+	{
+		File local = new File(localDir, "tree");
+		FtpClient client = client(server, new ByteArrayOutputStream());
+		try	{
+			server.setFailAfterBytes(500000);	// larger files fail, smaller are recorded in journal
+			try	{
+				client.downloadDirectory("/tree", local.getPath(), true);
+				check("cut directory download", false);
+			}
+			catch (IOException e)	{
+				check("cut directory download", true);
+			}
+		}
+		finally	{
+			server.setFailAfterBytes(-1L);
+			client.disconnect();
+		}
+
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		client = client(server, log);
+		try	{
+			client.downloadDirectory("/tree", local.getPath(), true);
+		}
+		finally	{
+			client.disconnect();
+		}
+		check("journal skipped files", contains(log, "before"));
+		check("directory resumed", contains(log, "Resuming download"));
+		check("directory equal", equals(new File(serverDir, "tree"), local));
+
+		String [] journals = new File(ConfigDir.dir()+"ftp"+File.separator+"journals").list();
+		check("journal deleted", journals == null || journals.length == 0);
+	}
+
+
+
+	private static FtpClient client(FtpStandInServer server, ByteArrayOutputStream log)	{
+		FtpClient client = new FtpClient("127.0.0.1", server.getPort(), "check", "check".getBytes(), new PrintStream(log, true));
+		client.setResume(true);
+		client.setVerify(true);
+		return client;
+	}
+
+	private static void expectFailure(String name, FtpClient client, String source, String target, boolean upload)	{
+		try	{
+			if (upload)
+				client.uploadFile(source, target);
+			else
+				client.downloadFile(source, target);
+			check(name, false);
+		}
+		catch (IOException e)	{
+			check(name, true);
+		}
+	}
+
+	private static void check(String name, boolean ok)	{
+		System.err.println((ok ? "OK      " : "FAILED  ")+name);
+		if (ok == false)
+			failures++;
+	}
+
+	private static boolean contains(ByteArrayOutputStream log, String text)	{
+		return log.toString().indexOf(text) >= 0;
+	}
+
+	private static boolean equals(File f1, File f2)
+		throws IOException
+	{
+		if (f1.isDirectory())	{
+			String [] names = f1.list();
+			if (f2.isDirectory() == false || names.length != f2.list().length)
+				return false;
+			for (int i = 0; i < names.length; i++)
+				if (equals(new File(f1, names[i]), new File(f2, names[i])) == false)
+					return false;
+			return true;
+		}
+
+		if (f2.isFile() == false || f1.length() != f2.length())
+			return false;
+
+		InputStream in1 = new BufferedInputStream(new FileInputStream(f1));
+		InputStream in2 = new BufferedInputStream(new FileInputStream(f2));
+		try	{
+			for (int b; (b = in1.read()) != -1; )
+				if (b != in2.read())
+					return false;
+			return true;
+		}
+		finally	{
+			in1.close();
+			in2.close();
+		}
+	}
+
+	private static void write(File file, Random random, int size)
+		throws IOException
+	{
+		file.getParentFile().mkdirs();
+		byte [] bytes = new byte[size];
+		random.nextBytes(bytes);
+		OutputStream out = new FileOutputStream(file);
+		try	{
+			out.write(bytes);
+		}
+		finally	{
+			out.close();
+		}
+	}
+
+	private static void delete(File file)	{
+		File [] files = file.listFiles();
+		for (int i = 0; files != null && i < files.length; i++)
+			delete(files[i]);
+		file.delete();
+	}
+
+}
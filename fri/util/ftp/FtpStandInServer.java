@@ -0,0 +1,521 @@
+package fri.util.ftp;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.text.SimpleDateFormat;
+
+/**
+	Minimal FTP server serving a local directory, standing in for a real server
+	when testing FtpClient transfers on the local machine.
+	<UL>
+		<LI>Target: try out resume, checksum verification, parallel sessions and
+			listings without a network and an installed FTP server.
+		<LI>Behaviour: every user and password is accepted, the passed directory is
+			the root "/". Binary transfers only, passive and active data connections.
+			Supports listings by LIST, NLST and MLSD, REST for RETR and STOR, and
+			checksums by HASH (SHA-256, SHA-1, MD5, CRC32), XMD5 and XCRC.
+			A broken link can be simulated by failAfterBytes: every data transfer is
+			then cut after that count of bytes with reply 426.
+		<LI>Errors: a refused command is answered by a 5xx reply, the session goes on.
+	</UL>
+	Start it from commandline by "java fri.util.ftp.FtpStandInServer directory [port]".
+	FtpResumeCheck runs resumed and verified transfers against it.
+*/
+
+public class FtpStandInServer implements Runnable
+{
+	private final File root;
+	private final ServerSocket serverSocket;
+	private long failAfterBytes = -1L;
+	private boolean closed;
+
+
+	/**
+		Creates a server on passed port, serving passed directory. Call start() to accept connections.
+		@param port the port to listen on, 0 for any free port, see getPort().
+	*/
+	public FtpStandInServer(File root, int port)
+		throws IOException
+	{
+		this.root = root.getCanonicalFile();
+		if (this.root.isDirectory() == false)
+			throw new IOException("Not a directory: "+root);
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+	}
+
+
+	/** Returns the port the server is listening on. */
+	public int getPort()	{
+		return serverSocket.getLocalPort();
+	}
+
+	/** Sets the count of bytes after which every data transfer is cut, -1 (default) for never. */
+	public synchronized void setFailAfterBytes(long failAfterBytes)	{
+		this.failAfterBytes = failAfterBytes;
+	}
+
+	private synchronized long getFailAfterBytes()	{
+		return failAfterBytes;
+	}
+
+	/** Starts accepting connections in a background thread. */
+	public void start()	{
+		Thread thread = new Thread(this, "FtpStandInServer "+getPort());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops accepting connections. Running sessions end when their client quits. */
+	public void close()	{
+		closed = true;
+		try	{ serverSocket.close(); }	catch (IOException e)	{}
+	}
+
+	/** Implements Runnable: accepts connections and serves each in its own thread. */
+	public void run()	{
+		while (closed == false)	{
+			try	{
+				final Socket socket = serverSocket.accept();
+				Thread thread = new Thread("FtpStandInSession")	{
+					public void run()	{
+						new Session(socket).serve();
+					}
+				};
+				thread.setDaemon(true);
+				thread.start();
+			}
+			catch (IOException e)	{
+				if (closed == false)
+					System.err.println("WARNING: FtpStandInServer accept failed: "+e);
+			}
+		}
+	}
+
+
+
+	private class Session
+	{
+		private final Socket socket;
+		private BufferedReader in;
+		private Writer out;
+		private String cwd = "/";
+		private ServerSocket passive;
+		private InetSocketAddress active;
+		private long restart;
+		private File renameFrom;
+		private String hashAlgorithm = "SHA-256";
+
+		Session(Socket socket)	{
+			this.socket = socket;
+		}
+
+		void serve()	{
+			try	{
+				in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+				out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+				reply("220 FtpStandInServer ready");
+
+				for (String line; (line = in.readLine()) != null; )	{
+					int i = line.indexOf(' ');
+					String command = (i > 0 ? line.substring(0, i) : line).toUpperCase();
+					String arg = (i > 0 ? line.substring(i + 1) : "");
+					try	{
+						if (execute(command, arg) == false)
+							break;
+					}
+					catch (FileNotFoundException e)	{
+						reply("550 "+e.getMessage());
+					}
+					catch (IOException e)	{
+						reply("451 "+e.getMessage());
+					}
+				}
+			}
+			catch (IOException e)	{	// client went away
+			}
+			finally	{
+				closePassive();
+				try	{ socket.close(); }	catch (IOException e)	{}
+			}
+		}
+
+		// returns false on QUIT
+		private boolean execute(String command, String arg)
+			throws IOException
+		{
+			if (command.equals("REST") == false && command.equals("RETR") == false && command.equals("STOR") == false)
+				restart = 0L;
+
+			if (command.equals("USER"))	reply("331 Any password will do");
+			else if (command.equals("PASS"))	reply("230 Logged in");
+			else if (command.equals("SYST"))	reply("215 UNIX Type: L8");
+			else if (command.equals("NOOP") || command.equals("TYPE") || command.equals("MODE"))	reply("200 OK");
+			else if (command.equals("QUIT"))	{ reply("221 Bye"); return false; }
+			else if (command.equals("FEAT"))	reply("211-Features:\r\n MDTM\r\n SIZE\r\n REST STREAM\r\n MLST type*;size*;modify*;\r\n HASH "+hashFeature()+"\r\n XCRC\r\n XMD5\r\n211 End");
+			else if (command.equals("OPTS"))	options(arg);
+			else if (command.equals("PWD"))	reply("257 \""+cwd+"\" is current directory");
+			else if (command.equals("CWD"))	changeDirectory(arg);
+			else if (command.equals("CDUP"))	changeDirectory("..");
+			else if (command.equals("PASV"))	passive();
+			else if (command.equals("PORT"))	port(arg);
+			else if (command.equals("LIST") || command.equals("NLST") || command.equals("MLSD"))	list(command, arg);
+			else if (command.equals("SIZE"))	reply("213 "+existingFile(arg).length());
+			else if (command.equals("MDTM"))	reply("213 "+machineTime(existing(arg).lastModified()));
+			else if (command.equals("REST"))	{ restart = Long.parseLong(arg.trim()); reply("350 Restarting at "+restart); }
+			else if (command.equals("RETR"))	retrieve(existingFile(arg));
+			else if (command.equals("STOR") || command.equals("APPE"))	store(file(arg), command.equals("APPE"));
+			else if (command.equals("DELE"))	delete(existingFile(arg));
+			else if (command.equals("RMD"))	delete(existing(arg));
+			else if (command.equals("MKD"))	makeDirectory(arg);
+			else if (command.equals("RNFR"))	{ renameFrom = existing(arg); reply("350 Ready for RNTO"); }
+			else if (command.equals("RNTO"))	rename(arg);
+			else if (command.equals("HASH"))	hash(existingFile(arg));
+			else if (command.equals("XMD5"))	reply("250 "+FtpChecksum.calculate(existingFile(arg), "MD5").toUpperCase());
+			else if (command.equals("XCRC"))	reply("250 "+FtpChecksum.calculate(existingFile(arg), "CRC32").toUpperCase());
+			else	reply("502 Command not implemented: "+command);
+
+			return true;
+		}
+
+
+		private void reply(String s)
+			throws IOException
+		{
+			out.write(s+"\r\n");
+			out.flush();
+		}
+
+		// maps a client path to a file below root, never above
+		private File file(String path)	{
+			if (path.length() <= 0 || path.startsWith("-"))	// "LIST -a"
+				path = cwd;
+			else
+			if (path.startsWith("/") == false)
+				path = cwd+(cwd.endsWith("/") ? "" : "/")+path;
+
+			Vector parts = new Vector();
+			StringTokenizer stok = new StringTokenizer(path, "/");
+			while (stok.hasMoreTokens())	{
+				String part = stok.nextToken();
+				if (part.equals(".."))	{
+					if (parts.size() > 0)
+						parts.remove(parts.size() - 1);
+				}
+				else
+				if (part.equals(".") == false)	{
+					parts.add(part);
+				}
+			}
+
+			File f = root;
+			for (int i = 0; i < parts.size(); i++)
+				f = new File(f, (String)parts.get(i));
+			return f;
+		}
+
+		private String virtualPath(File f)	{
+			String path = f.getPath().substring(root.getPath().length()).replace(File.separatorChar, '/');
+			return path.length() <= 0 ? "/" : path;
+		}
+
+		private File existing(String path)
+			throws FileNotFoundException
+		{
+			File f = file(path);
+			if (f.exists() == false)
+				throw new FileNotFoundException("No such file or directory: "+path);
+			return f;
+		}
+
+		private File existingFile(String path)
+			throws FileNotFoundException
+		{
+			File f = existing(path);
+			if (f.isFile() == false)
+				throw new FileNotFoundException("Not a file: "+path);
+			return f;
+		}
+
+
+		private void changeDirectory(String path)
+			throws IOException
+		{
+			File f = existing(path);
+			if (f.isDirectory() == false)
+				throw new FileNotFoundException("Not a directory: "+path);
+			cwd = virtualPath(f);
+			reply("250 Directory changed to "+cwd);
+		}
+
+		private void makeDirectory(String path)
+			throws IOException
+		{
+			File f = file(path);
+			if (f.exists())
+				throw new FileNotFoundException("Directory exists: "+path);
+			if (f.mkdir() == false)
+				throw new FileNotFoundException("Could not create directory: "+path);
+			reply("257 \""+virtualPath(f)+"\" created");
+		}
+
+		private void delete(File f)
+			throws IOException
+		{
+			if (f.equals(root) || f.delete() == false)
+				throw new FileNotFoundException("Could not delete: "+virtualPath(f));
+			reply("250 Deleted");
+		}
+
+		private void rename(String path)
+			throws IOException
+		{
+			File from = renameFrom;
+			renameFrom = null;
+			if (from == null)	{
+				reply("503 RNFR first");
+				return;
+			}
+			if (from.renameTo(file(path)) == false)
+				throw new FileNotFoundException("Could not rename "+virtualPath(from)+" to "+path);
+			reply("250 Renamed");
+		}
+
+		private void options(String arg)
+			throws IOException
+		{
+			StringTokenizer stok = new StringTokenizer(arg);
+			if (stok.countTokens() == 2 && stok.nextToken().equalsIgnoreCase("HASH"))	{
+				String algorithm = stok.nextToken().toUpperCase();
+				if (isHashAlgorithm(algorithm))	{
+					hashAlgorithm = algorithm;
+					reply("200 "+algorithm);
+					return;
+				}
+			}
+			reply("501 Option not understood");
+		}
+
+		private boolean isHashAlgorithm(String algorithm)	{
+			return algorithm.equals("SHA-256") || algorithm.equals("SHA-1") || algorithm.equals("MD5") || algorithm.equals("CRC32");
+		}
+
+		private String hashFeature()	{
+			String [] algorithms = new String [] { "SHA-256", "SHA-1", "MD5", "CRC32" };
+			StringBuffer sb = new StringBuffer();
+			for (int i = 0; i < algorithms.length; i++)
+				sb.append((i > 0 ? ";" : "")+algorithms[i]+(algorithms[i].equals(hashAlgorithm) ? "*" : ""));
+			return sb.toString();
+		}
+
+		private void hash(File f)
+			throws IOException
+		{
+			reply("213 "+hashAlgorithm+" 0-"+f.length()+" "+FtpChecksum.calculate(f, hashAlgorithm)+" "+f.getName());
+		}
+
+
+		private void passive()
+			throws IOException
+		{
+			closePassive();
+			passive = new ServerSocket(0, 1, socket.getLocalAddress());
+			passive.setSoTimeout(30000);
+			byte [] a = socket.getLocalAddress().getAddress();
+			int p = passive.getLocalPort();
+			reply("227 Entering Passive Mode ("+(a[0] & 0xFF)+","+(a[1] & 0xFF)+","+(a[2] & 0xFF)+","+(a[3] & 0xFF)+","+(p >> 8)+","+(p & 0xFF)+")");
+		}
+
+		private void port(String arg)
+			throws IOException
+		{
+			StringTokenizer stok = new StringTokenizer(arg, ",");
+			if (stok.countTokens() != 6)	{
+				reply("501 Bad PORT argument");
+				return;
+			}
+			String host = stok.nextToken()+"."+stok.nextToken()+"."+stok.nextToken()+"."+stok.nextToken();
+			int p = Integer.parseInt(stok.nextToken().trim()) * 256 + Integer.parseInt(stok.nextToken().trim());
+			closePassive();
+			active = new InetSocketAddress(host, p);
+			reply("200 PORT command successful");
+		}
+
+		private Socket openData()
+			throws IOException
+		{
+			if (active != null)	{
+				Socket s = new Socket();
+				s.connect(active, 30000);
+				active = null;
+				return s;
+			}
+			if (passive == null)
+				throw new IOException("Use PASV or PORT first");
+			try	{
+				return passive.accept();
+			}
+			finally	{
+				closePassive();
+			}
+		}
+
+		private void closePassive()	{
+			if (passive != null)
+				try	{ passive.close(); }	catch (IOException e)	{}
+			passive = null;
+		}
+
+
+		private void list(String command, String arg)
+			throws IOException
+		{
+			File dir = existing(arg);
+			File [] files = dir.isDirectory() ? dir.listFiles() : new File [] { dir };
+			Arrays.sort(files);
+
+			StringBuffer sb = new StringBuffer();
+			for (int i = 0; i < files.length; i++)	{
+				if (command.equals("NLST"))
+					sb.append(files[i].getName());
+				else
+				if (command.equals("MLSD"))
+					sb.append("type="+(files[i].isDirectory() ? "dir" : "file")+";size="+files[i].length()+";modify="+machineTime(files[i].lastModified())+"; "+files[i].getName());
+				else
+					sb.append(listLine(files[i]));
+				sb.append("\r\n");
+			}
+
+			reply("150 Opening data connection for "+command);
+			Socket data = openData();
+			try	{
+				OutputStream dataOut = data.getOutputStream();
+				dataOut.write(sb.toString().getBytes("UTF-8"));
+				dataOut.flush();
+			}
+			finally	{
+				data.close();
+			}
+			reply("226 Transfer complete");
+		}
+
+		private String listLine(File f)	{
+			boolean recent = System.currentTimeMillis() - f.lastModified() < 180L * 24L * 3600L * 1000L;
+			SimpleDateFormat format = new SimpleDateFormat(recent ? "MMM dd HH:mm" : "MMM dd  yyyy", Locale.US);
+			String size = ""+f.length();
+			while (size.length() < 10)
+				size = " "+size;
+			return (f.isDirectory() ? "d" : "-")+"rw-r--r--   1 ftp      ftp    "+size+" "+format.format(new Date(f.lastModified()))+" "+f.getName();
+		}
+
+		private String machineTime(long millis)	{
+			SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return format.format(new Date(millis));
+		}
+
+
+		private void retrieve(File f)
+			throws IOException
+		{
+			long offset = restart;
+			restart = 0L;
+
+			reply("150 Opening BINARY data connection for "+f.getName()+" ("+f.length()+" bytes)");
+			Socket data = openData();
+			boolean cut;
+			try	{
+				InputStream fileIn = new FileInputStream(f);
+				try	{
+					for (long skipped = 0L; skipped < offset; )	{
+						long n = fileIn.skip(offset - skipped);
+						if (n <= 0L)
+							break;
+						skipped += n;
+					}
+					cut = copy(fileIn, data.getOutputStream());
+				}
+				finally	{
+					fileIn.close();
+				}
+			}
+			finally	{
+				data.close();
+			}
+			reply(cut ? "426 Connection closed, transfer aborted" : "226 Transfer complete");
+		}
+
+		private void store(File f, boolean append)
+			throws IOException
+		{
+			long offset = append ? f.length() : restart;
+			restart = 0L;
+
+			if (f.isDirectory())
+				throw new FileNotFoundException("Is a directory: "+virtualPath(f));
+
+			reply("150 Opening BINARY data connection for "+f.getName());
+			Socket data = openData();
+			boolean cut;
+			try	{
+				RandomAccessFile raf = new RandomAccessFile(f, "rw");
+				try	{
+					raf.setLength(Math.min(offset, raf.length()));
+					raf.seek(raf.length());
+					final RandomAccessFile target = raf;
+					cut = copy(data.getInputStream(), new OutputStream()	{
+						public void write(int b) throws IOException	{
+							target.write(b);
+						}
+						public void write(byte [] b, int off, int len) throws IOException	{
+							target.write(b, off, len);
+						}
+					});
+				}
+				finally	{
+					raf.close();
+				}
+			}
+			finally	{
+				data.close();
+			}
+			reply(cut ? "426 Connection closed, transfer aborted" : "226 Transfer complete");
+		}
+
+		// returns true when transfer was cut by failAfterBytes
+		private boolean copy(InputStream from, OutputStream to)
+			throws IOException
+		{
+			long limit = getFailAfterBytes();
+			byte [] buffer = new byte[65536];
+			long count = 0L;
+			for (int cnt; (cnt = from.read(buffer)) != -1; )	{
+				if (limit >= 0L && count + cnt > limit)	{
+					to.write(buffer, 0, (int)(limit - count));
+					to.flush();
+					return true;
+				}
+				to.write(buffer, 0, cnt);
+				count += cnt;
+			}
+			to.flush();
+			return false;
+		}
+	}
+
+
+
+	/** Serves passed directory on passed port (default 2121) until killed. */
+	public static void main(String [] args)
+		throws Exception
+	{
+		if (args.length <= 0)	{
+			System.err.println("SYNTAX: java "+FtpStandInServer.class.getName()+" directory [port]");
+			System.exit(1);
+		}
+		FtpStandInServer server = new FtpStandInServer(new File(args[0]), args.length > 1 ? Integer.parseInt(args[1]) : 2121);
+		System.err.println("Serving "+server.root+" on port "+server.getPort());
+		server.run();
+	}
+
+}
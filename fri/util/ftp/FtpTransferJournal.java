@@ -0,0 +1,114 @@
+package fri.util.ftp;
+
+import java.io.*;
+import java.util.*;
+import fri.util.props.ConfigDir;
+
+/**
+	Journal of a directory transfer, recording every file that was transferred completely,
+	so that an interrupted transfer can skip them when it is started again.
+	<p>
+	The journal is a text file in the "ftp/journals" configuration directory. Its first
+	line identifies the transfer (user, host, port, direction, remote and local directory),
+	every following line is the absolute local path of a completed file. A journal
+	left by an interrupted transfer is read when the same transfer is started again.
+	It is deleted when the transfer completes.
+*/
+
+public class FtpTransferJournal
+{
+	private final File file;
+	private final String header;
+	private final Hashtable done = new Hashtable();
+	private PrintWriter out;
+
+
+	/**
+		Opens the journal of a directory transfer, reading the completed files of a previous interrupted run.
+		@param upload true when local files are uploaded, false for download.
+		@param remoteDir the absolute remote directory.
+		@param localDir the local directory.
+	*/
+	public FtpTransferJournal(FtpClient client, boolean upload, String remoteDir, String localDir)	{
+		this.header = client.getUser()+"@"+client.getHost()+":"+client.getPort()+" "+
+				(upload ? "upload" : "download")+" "+remoteDir+" "+new File(localDir).getAbsolutePath();
+		this.file = new File(ConfigDir.dir()+"ftp"+File.separator+"journals",
+				Integer.toHexString(header.hashCode())+".journal");
+		load();
+	}
+
+
+	/** Returns the count of files that were completed by a previous run. */
+	public synchronized int getDoneCount()	{
+		return done.size();
+	}
+
+	/** Returns true if passed local file was transferred completely. */
+	public synchronized boolean isDone(String localFile)	{
+		return done.get(new File(localFile).getAbsolutePath()) != null;
+	}
+
+	/** Records that passed local file was transferred completely. */
+	public synchronized void done(String localFile)
+		throws IOException
+	{
+		String path = new File(localFile).getAbsolutePath();
+		done.put(path, path);
+
+		if (out == null)	{
+			file.getParentFile().mkdirs();
+			boolean append = file.exists();
+			out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"));
+			if (append == false)
+				out.println(header);
+		}
+		out.println(path);
+		out.flush();	// must survive a crash
+
+		if (out.checkError())
+			throw new IOException("Could not write transfer journal "+file);
+	}
+
+	/** Closes the journal file, it is kept for a following run. */
+	public synchronized void close()	{
+		if (out != null)
+			out.close();
+		out = null;
+	}
+
+	/** Closes and deletes the journal, as the transfer completed. */
+	public synchronized void delete()	{
+		close();
+		file.delete();
+		done.clear();
+	}
+
+
+	private void load()	{
+		if (file.exists() == false)
+			return;
+
+		try	{
+			BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			try	{
+				if (header.equals(in.readLine()) == false)	{	// another transfer with same hashcode
+					System.err.println("WARNING: overwriting transfer journal of another transfer: "+file);
+					in.close();
+					file.delete();
+					return;
+				}
+
+				for (String line; (line = in.readLine()) != null; )
+					if (line.length() > 0)
+						done.put(line, line);
+			}
+			finally	{
+				in.close();
+			}
+		}
+		catch (IOException e)	{
+			System.err.println("WARNING: could not read transfer journal "+file+", "+e.getMessage());
+		}
+	}
+
+}
@@ -16,6 +16,8 @@ public class ObservableFtpClient extends FtpClient implements
 	CancelProgressObservable
 {
 	private CancelProgressObserver lsnr;
+	private int transferSessions = 1;
+	private transient ParallelFtpTransfer parallelTransfer;
 
 	/**
 		FTP client on specified host and port with user and password.
@@ -42,6 +44,74 @@ public class ObservableFtpClient extends FtpClient implements
 			((ObservableFtpConnection)connection).setObserver(lsnr);
 	}
 
+	/** Returns the current CancelProgressObserver, can be null. */
+	public CancelProgressObserver getObserver()	{
+		return lsnr;
+	}
+
+
+	/**
+		Sets the number of connections that transfer the files of directories in parallel, default 1.
+		Clones of this client get 1.
+	*/
+	public void setTransferSessions(int transferSessions)	{
+		transferSessions = Math.max(1, transferSessions);
+		if (transferSessions != this.transferSessions)
+			closeParallelTransfer();
+		this.transferSessions = transferSessions;
+	}
+
+	/** Returns the number of connections that transfer the files of directories. */
+	public int getTransferSessions()	{
+		return transferSessions;
+	}
+
+	/** Overridden to transfer files by parallel connections when transfer sessions are more than 1. */
+	public void downloadDirectory(String remoteDir, String localDir, boolean recursive)
+		throws IOException, FtpResponseException
+	{
+		if (transferSessions <= 1)	{
+			super.downloadDirectory(remoteDir, localDir, recursive);
+		}
+		else	{
+			log.println("Downloading remote directory "+remoteDir+" to local directory "+localDir+" by "+transferSessions+" connections");
+			getParallelTransfer().downloadDirectory(remoteDir, localDir, recursive);
+		}
+	}
+
+	/** Overridden to transfer files by parallel connections when transfer sessions are more than 1. */
+	public void uploadDirectory(String localDir, String remoteDir, boolean recursive, FilenameFilter filenameFilter)
+		throws IOException, FtpResponseException
+	{
+		if (transferSessions <= 1)	{
+			super.uploadDirectory(localDir, remoteDir, recursive, filenameFilter);
+		}
+		else	{
+			log.println("Uploading local directory "+localDir+" to remote directory "+remoteDir+" by "+transferSessions+" connections");
+			getParallelTransfer().uploadDirectory(localDir, remoteDir, recursive, filenameFilter);
+		}
+	}
+
+	private ParallelFtpTransfer getParallelTransfer()	{
+		if (parallelTransfer == null)
+			parallelTransfer = new ParallelFtpTransfer(this, transferSessions);
+		return parallelTransfer;
+	}
+
+	private void closeParallelTransfer()	{
+		if (parallelTransfer != null)
+			parallelTransfer.close();
+		parallelTransfer = null;
+	}
+
+	/** Overridden to disconnect the connections of parallel transfers. */
+	public void disconnect()
+		throws IOException, FtpResponseException
+	{
+		closeParallelTransfer();
+		super.disconnect();
+	}
+
 
 	/**
 		Retrieve the size of a directory (optional recursive) that is about to be downloaded.
@@ -88,6 +158,32 @@ public class ObservableFtpClient extends FtpClient implements
 		throws IOException, FtpResponseException
 	{
 		long sum = 0L;
+		FtpListEntry [] entries = listEntries(null);
+		
+		if (entries != null)	{	// types and sizes are known
+			String old = pwd();
+			for (int i = 0; i < entries.length; i++) {
+				if (lsnr != null && lsnr.canceled())
+					throw new IOException("Directory size counting canceled!");
+				
+				if (entries[i].isDirectory()) {
+					if (recursive) {
+						chdir(entries[i].getName());
+						sum += getDownloadDirectorySize(recursive);
+						chdir(old);
+					}
+				}
+				else
+				if (entries[i].isLink() || entries[i].getSize() < 0L) {
+					sum += getDownloadSize(entries[i].getName(), recursive);
+				}
+				else {
+					sum += entries[i].getSize();
+				}
+			}
+			return sum;
+		}
+		
 		String[] names = listNames();
 		
 		for (int i = 0; i < names.length; i++) {
@@ -105,7 +201,7 @@ public class ObservableFtpClient extends FtpClient implements
 
 	/** Returns an unconnected clone of this client. */
 	public Object clone()	{
-		return new ObservableFtpClient(lsnr, getHost(), getPort(), getUser(), getPassword(), getLog());
+		return copySettings(new ObservableFtpClient(lsnr, getHost(), getPort(), getUser(), getPassword(), getLog()));
 	}
 
 
@@ -164,6 +260,12 @@ public class ObservableFtpClient extends FtpClient implements
 		super.uploadFile(localFile, remoteFile, dummy);
 	}
 
+	/** Overridden to report bytes of resumed or skipped files as progress, as the caller counted them. */
+	protected void transferSkipped(long bytes)	{
+		if (lsnr != null && bytes > 0L)
+			lsnr.progress(bytes);
+	}
+
 	private String makeFileProgressNote(String filename)	{
 		if (filename == null)
 			return filename;
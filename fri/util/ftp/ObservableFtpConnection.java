@@ -129,8 +129,7 @@ public class ObservableFtpConnection extends FtpConnection implements
 
 	/**
 		Copy an InputStream to an OutputStream.
-		This method is protected to be overridden by observable connection,
-		and for usage in FtpClientToClient.
+		This method is protected to be overridden by observable connection.
 	*/
 	protected void copy(InputStream in, OutputStream out)
 		throws IOException
@@ -138,8 +137,9 @@ public class ObservableFtpConnection extends FtpConnection implements
 		if (showProgress && lsnr != null && lsnr.canceled())
 			throw new IOException("User canceled FTP copy action");
 			
-		CopyStream.bufsize = 1024;	// to see some progress, as this is very slow
-		new CopyStream(in, -1L, out, (showProgress ? lsnr : null), false, false).copy();	// close will be done in superclass
+		CopyStream copyStream = new CopyStream(in, -1L, out, (showProgress ? lsnr : null), false, false);	// close will be done in superclass
+		copyStream.setBufferSize(1024);	// to see some progress, as this is very slow
+		copyStream.copy();
 	}
 
 
@@ -165,6 +165,20 @@ public class ObservableFtpConnection extends FtpConnection implements
 	}
 	
 
+	/** Overridden to NOT report progress when directory listing is transferred (as the size is not known). */
+	public FtpListEntry [] listEntries(String remoteDirOrNull)
+		throws FtpResponseException, IOException, UnknownHostException
+	{
+		setShowProgress(false);
+		try	{
+			return super.listEntries(remoteDirOrNull);
+		}
+		finally	{
+			setShowProgress(true);
+		}
+	}
+	
+
 	/** Sets if this connection should report progress or not. */
 	protected void setShowProgress(boolean showProgress)	{
 		this.showProgress = showProgress;
@@ -0,0 +1,419 @@
+package fri.util.ftp;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingDeque;
+import fri.util.observer.CancelProgressObserver;
+
+/**
+	Transfers the files of a directory tree over several FTP connections at once.
+	<UL>
+		<LI>Target: directory up- and downloads on high-latency links, where one connection
+			transferring one file after another uses only a fraction of the bandwidth.
+		<LI>Behaviour: the passed client lists the tree and creates its directories first.
+			Then the files are dealt to the sessions, largest first. Every session is a clone
+			of the client with its own connection, working off its own queue, and taking files
+			from the end of other queues when its own is empty. A failed file is tried again
+			on a new connection. A session that can not connect, e.g. because the server limits
+			connections per user, gives back its file and ends, the other sessions transfer it.
+			Progress of all sessions goes to the observer of an ObservableFtpClient, synchronized.
+		<LI>Errors: when all files were tried, an IOException tells the count of failed files
+			and the first error. A file fails only when no session could connect to transfer it.
+			Files transferred successfully are kept. When the client
+			resumes transfers, completed files are recorded in a FtpTransferJournal, and
+			skipped when the interrupted transfer is started again.
+	</UL>
+	Sessions stay connected for following transfers until close() is called.
+*/
+
+public class ParallelFtpTransfer
+{
+	private final FtpClient client;
+	private final FtpClient [] sessions;
+	private int retries = 2;
+	private CancelProgressObserver observer;
+	private Vector failures;
+	private Vector givenBack;
+	private IOException connectError;
+	private FtpTransferJournal journal;
+
+
+	/**
+		@param client the client that lists and creates directories, its clones transfer the files.
+		@param sessions the number of connections transferring files.
+	*/
+	public ParallelFtpTransfer(FtpClient client, int sessions)	{
+		this.client = client;
+		this.sessions = new FtpClient[Math.max(1, sessions)];
+	}
+
+
+	/** Sets how often a failed file is tried again, default 2. */
+	public void setRetries(int retries)	{
+		this.retries = Math.max(0, retries);
+	}
+
+
+	/** Downloads the specified remote directory to the specified local path. */
+	public void downloadDirectory(String remoteDir, String localDir, boolean recursive)
+		throws IOException, FtpResponseException
+	{
+		Vector jobs = new Vector();
+		String old = client.pwd();
+		try	{
+			collectDownloads(remoteDir, new File(localDir), recursive, jobs);
+		}
+		finally	{
+			try	{ client.chdir(old); }	catch (Exception e)	{}
+		}
+		transfer(jobs, client.isResume() ? new FtpTransferJournal(client, false, client.getAbsolutePath(remoteDir), localDir) : null);
+	}
+
+	/** Uploads files of the specified local directory, matching the optional filter, to the specified remote path. */
+	public void uploadDirectory(String localDir, String remoteDir, boolean recursive, FilenameFilter filenameFilter)
+		throws IOException, FtpResponseException
+	{
+		Vector jobs = new Vector();
+		collectUploads(new File(localDir), remoteDir, recursive, filenameFilter, jobs);
+		transfer(jobs, client.isResume() ? new FtpTransferJournal(client, true, client.getAbsolutePath(remoteDir), localDir) : null);
+	}
+
+
+	/** Disconnects all sessions. */
+	public void close()	{
+		for (int i = 0; i < sessions.length; i++)	{
+			if (sessions[i] != null)	{
+				try	{ sessions[i].disconnect(); }	catch (Exception e)	{}
+				sessions[i] = null;
+			}
+		}
+	}
+
+
+
+	private void collectDownloads(String remoteDir, File localDir, boolean recursive, Vector jobs)
+		throws IOException, FtpResponseException
+	{
+		checkCanceled();
+
+		if (localDir.isFile() || localDir.exists() == false && localDir.mkdirs() == false)
+			throw new IOException("Could not create directory >"+localDir+"<");
+
+		String prefix = remoteDir.endsWith("/") ? remoteDir : remoteDir+"/";
+		FtpListEntry [] entries = client.listEntries(remoteDir);
+
+		if (entries != null)	{
+			for (int i = 0; i < entries.length; i++)	{
+				String name = entries[i].getName();
+				if (entries[i].isDirectory() || entries[i].isLink() && client.isDirectory(prefix+name))	{
+					if (recursive)
+						collectDownloads(prefix+name, new File(localDir, name), recursive, jobs);
+				}
+				else	{
+					jobs.add(new Job(prefix+name, new File(localDir, name), entries[i].getSize(), false));
+				}
+			}
+		}
+		else	{	// listing not understood, find out types by CWD
+			client.chdir(remoteDir);
+			String [] names = client.listNames();
+			for (int i = 0; i < names.length; i++)	{
+				if (FtpStringUtil.isValidFileName(names[i]) == false)
+					continue;
+
+				if (client.isDirectory(prefix+names[i]))	{
+					if (recursive)
+						collectDownloads(prefix+names[i], new File(localDir, names[i]), recursive, jobs);
+				}
+				else	{
+					jobs.add(new Job(prefix+names[i], new File(localDir, names[i]), -1L, false));
+				}
+			}
+		}
+	}
+
+	private void collectUploads(File localDir, String remoteDir, boolean recursive, FilenameFilter filenameFilter, Vector jobs)
+		throws IOException, FtpResponseException
+	{
+		checkCanceled();
+
+		if (localDir.exists() == false || localDir.isDirectory() == false)
+			throw new IOException("Directory does not exist or is not a directory: "+localDir);
+
+		try	{	// create remote path, ignore error if exists
+			client.mkdir(remoteDir);
+		}
+		catch (FtpResponseException e)	{
+			if (e.response.isDirectoryExistsError() == false && e.response.isActionNotTaken() == false)
+				throw e;
+		}
+
+		String prefix = remoteDir.endsWith("/") ? remoteDir : remoteDir+"/";
+		File [] subFiles = localDir.listFiles(filenameFilter);
+		for (int i = 0; subFiles != null && i < subFiles.length; i++)	{
+			String remote = prefix+subFiles[i].getName();
+			if (subFiles[i].isDirectory() && recursive)
+				collectUploads(subFiles[i], remote, recursive, filenameFilter, jobs);
+			else
+			if (subFiles[i].isFile())
+				jobs.add(new Job(remote, subFiles[i], subFiles[i].length(), true));
+		}
+	}
+
+
+
+	private void transfer(Vector jobs, FtpTransferJournal journal)
+		throws IOException
+	{
+		this.journal = journal;
+		try	{
+			transfer(jobs);
+			if (journal != null)
+				journal.delete();	// completed
+		}
+		finally	{
+			if (journal != null)
+				journal.close();
+			this.journal = null;
+		}
+	}
+
+	private void transfer(Vector jobs)
+		throws IOException
+	{
+		observer = (client instanceof ObservableFtpClient) ? ((ObservableFtpClient)client).getObserver() : null;
+		if (observer != null)
+			observer = new SynchronizedObserver(observer);
+		
+		if (journal != null && journal.getDoneCount() > 0)	{	// skip files completed by an interrupted run
+			for (Iterator it = jobs.iterator(); it.hasNext(); )	{
+				Job job = (Job)it.next();
+				if (journal.isDone(job.local.getPath()) && (job.upload || job.local.isFile()))	{
+					if (observer != null)
+						observer.progress(job.upload ? job.local.length() : Math.max(0L, job.size));
+					it.remove();
+				}
+			}
+			client.getLog().println("Skipping "+journal.getDoneCount()+" files transferred before");
+		}
+		
+		if (jobs.size() <= 0)
+			return;
+
+		// largest first, so that small files fill up the end
+		Collections.sort(jobs, new Comparator()	{
+			public int compare(Object o1, Object o2)	{
+				long s1 = ((Job)o1).size, s2 = ((Job)o2).size;
+				return s1 > s2 ? -1 : s1 < s2 ? 1 : 0;
+			}
+		});
+
+		failures = new Vector();
+		int total = jobs.size();
+		
+		while (jobs.size() > 0)	{	// repeat with files given back by sessions that could not connect
+			Vector left = transferBySessions(jobs);
+			checkCanceled();
+			
+			if (left.size() == jobs.size())	{	// no session could connect
+				for (int i = 0; i < left.size(); i++)
+					failures.add(((Job)left.get(i)).remote+": "+(connectError != null ? connectError.getMessage() : "no connection"));
+				break;
+			}
+			jobs = left;
+		}
+
+		if (failures.size() > 0)
+			throw new IOException(failures.size()+" of "+total+" files failed, first was "+failures.get(0));
+	}
+
+	// transfers passed jobs by parallel sessions, returns the jobs that were left by sessions that could not connect
+	private Vector transferBySessions(Vector jobs)
+		throws IOException
+	{
+		int count = Math.min(sessions.length, jobs.size());
+		final LinkedBlockingDeque [] queues = new LinkedBlockingDeque[count];
+		for (int i = 0; i < count; i++)
+			queues[i] = new LinkedBlockingDeque();
+		for (int i = 0; i < jobs.size(); i++)
+			queues[i % count].addLast(jobs.get(i));
+
+		givenBack = new Vector();
+
+		Thread [] threads = new Thread[count];
+		for (int i = 0; i < count; i++)	{
+			final int index = i;
+			threads[i] = new Thread("FtpTransfer"+i)	{
+				public void run()	{
+					work(index, queues);
+				}
+			};
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+
+		for (int i = 0; i < count; i++)	{
+			try	{
+				threads[i].join();
+			}
+			catch (InterruptedException e)	{
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("FTP transfer was interrupted");
+			}
+		}
+
+		Vector left = givenBack;
+		for (int i = 0; i < count; i++)	// sessions that could not connect could have ended after the others
+			for (Object job; (job = queues[i].pollFirst()) != null; )
+				left.add(job);
+		return left;
+	}
+
+	// runs in a transfer thread, works off own queue, then takes from the end of others
+	private void work(int index, LinkedBlockingDeque [] queues)	{
+		if (connect(index) == false)
+			return;	// the other sessions take the files of this queue
+		
+		for (Job job; (job = nextJob(index, queues)) != null; )	{
+			if (observer != null && observer.canceled())
+				return;
+
+			for (int attempt = 0; ; attempt++)	{
+				if (connect(index) == false)	{
+					givenBack.add(job);
+					return;
+				}
+				
+				try	{
+					FtpClient session = sessions[index];
+					if (job.upload)
+						session.uploadFile(job.local.getPath(), job.remote);
+					else
+						session.downloadFile(job.remote, job.local.getPath());
+					
+					if (journal != null)
+						journal.done(job.local.getPath());
+					break;
+				}
+				catch (IOException e)	{
+					if (attempt >= retries || observer != null && observer.canceled())	{
+						failures.add(job.remote+": "+e.getMessage());
+						break;
+					}
+					client.getLog().println("Transfer of "+job.remote+" failed, trying again on a new connection: "+e.getMessage());
+					dropSession(index);
+				}
+			}
+		}
+	}
+
+	private Job nextJob(int index, LinkedBlockingDeque [] queues)	{
+		Job job = (Job)queues[index].pollFirst();
+		for (int i = 1; job == null && i < queues.length; i++)
+			job = (Job)queues[(index + i) % queues.length].pollLast();
+		return job;
+	}
+
+	// connects the session when not connected, returns false when the server refuses another connection
+	private boolean connect(int index)	{
+		try	{
+			getSession(index);
+			return true;
+		}
+		catch (IOException e)	{
+			connectError = e;
+			client.getLog().println("Connection "+(index + 1)+" could not be opened, transferring by fewer connections: "+e.getMessage());
+			dropSession(index);
+			return false;
+		}
+	}
+
+	private FtpClient getSession(int index)
+		throws IOException, FtpResponseException
+	{
+		synchronized(sessions)	{	// every session is used by one thread only
+			if (sessions[index] == null)
+				sessions[index] = (FtpClient)client.clone();
+		}
+
+		FtpClient session = sessions[index];
+		if (session.isConnected() == false)	{
+			if (session instanceof ObservableFtpClient)	{	// would end the progress dialog when connecting with observer
+				((ObservableFtpClient)session).setObserver(null);
+				session.connect();
+			}
+			else	{
+				session.connect();
+			}
+		}
+		if (session instanceof ObservableFtpClient)
+			((ObservableFtpClient)session).setObserver(observer);
+		session.setResume(client.isResume());	// could have been changed since session was created
+		session.setVerify(client.isVerify());
+
+		return session;
+	}
+
+	private void dropSession(int index)	{
+		FtpClient session = sessions[index];
+		if (session != null)	{
+			try	{ session.disconnect(); }	catch (Exception e)	{}
+		}
+	}
+
+	private void checkCanceled()
+		throws IOException
+	{
+		CancelProgressObserver o = (client instanceof ObservableFtpClient) ? ((ObservableFtpClient)client).getObserver() : null;
+		if (o != null && o.canceled())
+			throw new IOException("User canceled FTP transfer");
+	}
+
+
+
+	private static class Job
+	{
+		final String remote;
+		final File local;
+		final long size;
+		final boolean upload;
+
+		Job(String remote, File local, long size, boolean upload)	{
+			this.remote = remote;
+			this.local = local;
+			this.size = size;
+			this.upload = upload;
+		}
+	}
+
+
+	// the observer dialog is not made for being called by several threads
+	private static class SynchronizedObserver implements CancelProgressObserver
+	{
+		private final CancelProgressObserver delegate;
+
+		SynchronizedObserver(CancelProgressObserver delegate)	{
+			this.delegate = delegate;
+		}
+
+		public boolean canceled()	{
+			synchronized(delegate)	{
+				return delegate.canceled();
+			}
+		}
+		public void progress(long portion)	{
+			synchronized(delegate)	{
+				delegate.progress(portion);
+			}
+		}
+		public void setNote(String note)	{
+			synchronized(delegate)	{
+				delegate.setNote(note);
+			}
+		}
+		/** Does nothing, the dialog is ended by the caller of the transfer. */
+		public void endDialog()	{
+		}
+	}
+
+}
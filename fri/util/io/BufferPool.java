@@ -0,0 +1,96 @@
+package fri.util.io;
+
+import java.util.Vector;
+import fri.util.props.PropertyUtil;
+
+/**
+	Bounded pool of copy buffers, shared by all threads.
+	<UL>
+		<LI>Target: copy loops must not allocate a big buffer for every file,
+			and must not share one static buffer when running concurrently.
+		<LI>Behaviour: <i>get()</i> returns a free buffer of standard size,
+			or allocates one when none is free. Requests bigger than standard size
+			are allocated newly and not pooled. <i>release()</i> puts a buffer back
+			when the pool holds less than maximum buffers, else it is left to the GC.
+		<LI>Metrics: hits (free buffer reused), misses (buffer allocated) and
+			allocated bytes are counted since start or last <i>clear()</i>.
+	</UL>
+	The standard size is the system property "copyBufferSize" (default 1 MB),
+	the maximum count of pooled buffers is the system property "copyBufferPoolSize" (default 8):
+	<pre>
+		java -DcopyBufferSize=65536 -DcopyBufferPoolSize=16 ...
+	</pre>
+	A buffer must not be used any more after it was released.
+
+	@author Fritz Ritzberger
+*/
+public abstract class BufferPool
+{
+	public static final int SIZE = Math.max(1, PropertyUtil.getSystemInteger("copyBufferSize", CopyStream.ONE_MB));
+	private static final int MAX_POOLED = PropertyUtil.getSystemInteger("copyBufferPoolSize", 8);
+	private static Vector free = new Vector();
+	private static long hits, misses, allocatedBytes;
+
+
+	private BufferPool()	{}
+
+
+	/** @return a buffer of at least passed size, to be passed back by <i>release()</i> when no more used. */
+	public static byte [] get(int minimumSize)	{
+		if (minimumSize <= SIZE)	{
+			synchronized(BufferPool.class)	{
+				int last = free.size() - 1;
+				if (last >= 0)	{
+					hits++;
+					return (byte []) free.remove(last);
+				}
+			}
+		}
+
+		int size = Math.max(minimumSize, SIZE);
+		synchronized(BufferPool.class)	{
+			misses++;
+			allocatedBytes += size;
+		}
+		return new byte[size];
+	}
+
+	/** Passes a buffer obtained by <i>get()</i> back to pool. Null is ignored. */
+	public static synchronized void release(byte [] buffer)	{
+		if (buffer != null && buffer.length == SIZE && free.size() < MAX_POOLED && free.contains(buffer) == false)
+			free.addElement(buffer);
+	}
+
+	/** Drops all pooled buffers and resets metrics. */
+	public static synchronized void clear()	{
+		free.removeAllElements();
+		hits = misses = allocatedBytes = 0L;
+	}
+
+
+	/** @return count of requests that got a pooled buffer. */
+	public static synchronized long getHits()	{
+		return hits;
+	}
+
+	/** @return count of requests that needed a new buffer. */
+	public static synchronized long getMisses()	{
+		return misses;
+	}
+
+	/** @return sum of bytes of all newly allocated buffers. */
+	public static synchronized long getAllocatedBytes()	{
+		return allocatedBytes;
+	}
+
+	/** @return count of free buffers in pool. */
+	public static synchronized int getPooledCount()	{
+		return free.size();
+	}
+
+	/** @return metrics as text, for logging. */
+	public static synchronized String getStatistics()	{
+		return "BufferPool: hits="+hits+", misses="+misses+", allocated bytes="+allocatedBytes+", pooled="+free.size()+" of "+MAX_POOLED+" x "+SIZE;
+	}
+
+}
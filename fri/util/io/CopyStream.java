@@ -1,8 +1,11 @@
 package fri.util.io;
 
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import fri.util.observer.CancelProgressObserver;
 import fri.util.props.PropertyUtil;
 
@@ -20,7 +23,13 @@ import fri.util.props.PropertyUtil;
 	</UL>
 	MIND: you must call copy() to get this class running!
 	<p>
-	The copy buffer size can be set by using <i>CopyStream.bufsize = ...</i>,
+	When <i>setUseChannels(true)</i> was called and both streams are file streams,
+	the bytes are copied by FileChannel.transferTo(), else through a heap buffer.
+	<p>
+	Heap buffers are taken from the BufferPool and given back after copy.
+	<p>
+	The copy buffer size can be set for one copy by <i>setBufferSize()</i>,
+	for all copies by using <i>CopyStream.bufsize = ...</i>,
 	it is initialized with the value of the system property "copyBufferSize":
 	<pre>
 		java -DcopyBufferSize=1048576 ... // 1 MB bufsize
@@ -32,7 +41,6 @@ public class CopyStream
 {
 	public static final int ONE_MB = 1048576;
 	public static int bufsize = PropertyUtil.getSystemInteger("copyBufferSize", ONE_MB);	// 1 MB copy block size
-	private static byte [] buffer;
 
 	public String error;
 	protected CancelProgressObserver dialog;
@@ -40,6 +48,8 @@ public class CopyStream
 	protected InputStream in;
 	protected OutputStream out;
 	protected boolean doCloseIn, doCloseOut;
+	protected boolean useChannels;
+	private int portionSize;	// 0 means use bufsize
 
 
 	/**
@@ -106,23 +116,77 @@ public class CopyStream
 	}
 
 
+	/**
+		Copy by FileChannel.transferTo() when both streams are file streams,
+		so that the operating system can copy without user-space buffer.
+		Progress and cancel are still reported per portion of buffer size.
+		Default is false, CopyFile sets it true.
+	*/
+	public void setUseChannels(boolean useChannels)	{
+		this.useChannels = useChannels;
+	}
+
+
+	/**
+		Set the size of portions read, written and reported to observer by this copy,
+		overriding the static <i>bufsize</i>. Small sizes show progress of slow streams.
+	*/
+	public void setBufferSize(int portionSize)	{
+		this.portionSize = portionSize;
+	}
+
+	private int getBufferSize()	{
+		return Math.max(portionSize > 0 ? portionSize : CopyStream.bufsize, 1);
+	}
+
+
 	public void copy()
 		throws IOException
 	{
-		canceled();
-		
-		int portion = CopyStream.bufsize;	// want to read as much as possible
+		boolean doDelete = false;	// finally do not delete created file
+
+		try	{
+			canceled();	// target could have been created already
+
+			if (useChannels && in instanceof FileInputStream && out instanceof FileOutputStream)
+				transfer(((FileInputStream)in).getChannel(), ((FileOutputStream)out).getChannel());
+			else
+				pump();
+		}
+		catch (IOException e)	{
+			doDelete = true;	// finally do delete created file on error
+			throw e;
+		}
+		finally	{
+			//System.err.println("---- finally closing out "+doCloseOut+", closing in "+doCloseIn);
+			if (doCloseIn)	{
+				try	{ in.close(); } catch (Exception ex)	{}
+			}
+
+			if (doCloseOut)	{
+				try	{ out.close(); } catch (Exception ex)	{}
+			}
+
+			if (doDelete)
+				finalActionOnError();
+		}
+	}
+
+	private void pump()
+		throws IOException
+	{
+		int portion = getBufferSize();	// want to read as much as possible
 		long todo = size;	// size to copy, can be -1 which means undefined
 		int actual = -2;
-		boolean doDelete = false;	// finally do not delete created file
+		byte [] buffer = null;
 
 		try	{
 			while (actual != -1 && todo != 0L)	{	// while not EOF and todo is not zero
 				if (todo > 0L && todo < portion)	// if todo is smaller than current read portion
 					portion = (int)todo;	// set last read portion to smaller size
 
-				if (actual == -2 && (buffer == null || buffer.length < portion))	// at start ensure buffer
-					buffer = new byte[portion];
+				if (actual == -2)	// at start ensure buffer
+					buffer = BufferPool.get(portion);
 				
 				actual = in.read(buffer, 0, portion);	// read current portion
 				
@@ -144,23 +208,33 @@ public class CopyStream
 				}
 			}
 		}
-		catch (IOException e)	{
-			doDelete = true;	// finally do delete created file on error
-			throw e;
-		}
 		finally	{
-			//System.err.println("---- finally closing out "+doCloseOut+", closing in "+doCloseIn);
-			if (doCloseIn)	{
-				try	{ in.close(); } catch (Exception ex)	{}
-			}
+			BufferPool.release(buffer);
+		}
+	}
 
-			if (doCloseOut)	{
-				try	{ out.close(); } catch (Exception ex)	{}
+	private void transfer(FileChannel source, FileChannel target)
+		throws IOException
+	{
+		long position = source.position();	// input stream could have been read already
+		long todo = size >= 0L ? size : source.size() - position;
+		int portion = getBufferSize();
+
+		while (todo > 0L)	{
+			long actual = source.transferTo(position, Math.min((long)portion, todo), target);
+			
+			if (actual <= 0L && position >= source.size())	{	// file was truncated meanwhile
+				error = "Got EOF but still got to do "+todo+" bytes of given size "+size;
+				throw new IOException(error);
 			}
+			
+			position += actual;
+			todo -= actual;
 
-			if (doDelete)
-				finalActionOnError();
+			canceled();	// check for cancel, throws Exception
+			progress((int)actual);	// tell the dialog about done portion
 		}
+		source.position(position);
 	}
 
 
@@ -185,9 +259,9 @@ public class CopyStream
 	}
 
 
-	/** Release the global copy buffer. It will be allocated newly if necessary. */
+	/** Release all pooled copy buffers. They will be allocated newly if necessary. */
 	public static void releaseBuffer()	{
-		buffer = null;
+		BufferPool.clear();
 	}
 
 }
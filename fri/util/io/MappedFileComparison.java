@@ -0,0 +1,119 @@
+package fri.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import fri.util.observer.CancelProgressObserver;
+import fri.util.os.OS;
+
+/**
+	Compare the bytes of two files in memory mapped windows.
+	<UL>
+		<LI>Target: equality test of text and binary files without decoding them to lines.
+		<LI>Behaviour: maps both files window by window and compares eight bytes at once,
+			the last bytes of a window one by one. Stops at first difference.
+			Files below MAP_THRESHOLD, and all files on WINDOWS, are read into
+			two buffers instead, as WINDOWS can not delete or overwrite a
+			mapped file until the mapping was garbage collected.
+		<LI>Errors: IOException when a file can not be read or mapped.
+	</UL>
+	Files of different size are compared up to the end of the shorter one.
+
+	@author Fritz Ritzberger
+*/
+public abstract class MappedFileComparison
+{
+	/** Files smaller than this are read, not mapped, as mapping costs more than reading them. */
+	public static final long MAP_THRESHOLD = 4 * 1024 * 1024;
+	private static final int WINDOW = 64 * 1024 * 1024;	// bytes mapped at once
+	private static final int BUFFER = 64 * 1024;	// bytes read at once when not mapping
+
+
+	private MappedFileComparison()	{}
+
+
+	/**
+		Compare the bytes of passed files.
+		@param file1 the first file to compare.
+		@param file2 the second file to compare.
+		@param observer optional, is asked for cancel after every window, can be null.
+		@return -1 if files are equal, else the offset of first different byte,
+			which is the size of the shorter file when it is the start of the longer one.
+			When canceled, the start of the window that was not compared.
+	*/
+	public static long mismatch(File file1, File file2, CancelProgressObserver observer)
+		throws IOException
+	{
+		RandomAccessFile raf1 = new RandomAccessFile(file1, "r");
+		try	{
+			RandomAccessFile raf2 = new RandomAccessFile(file2, "r");
+			try	{
+				return mismatch(raf1.getChannel(), raf2.getChannel(), observer);
+			}
+			finally	{
+				raf2.close();
+			}
+		}
+		finally	{
+			raf1.close();
+		}
+	}
+
+	private static long mismatch(FileChannel channel1, FileChannel channel2, CancelProgressObserver observer)
+		throws IOException
+	{
+		long size1 = channel1.size();
+		long size2 = channel2.size();
+		long size = Math.min(size1, size2);
+		boolean map = isMappable(size);
+		int step = map ? WINDOW : BUFFER;
+		ByteBuffer buffer1 = map ? null : ByteBuffer.allocate((int)Math.min(BUFFER, size));
+		ByteBuffer buffer2 = map ? null : ByteBuffer.allocate(buffer1.capacity());
+
+		for (long start = 0L; start < size; start += step)	{
+			if (observer != null && observer.canceled())
+				return start;
+
+			int length = (int)Math.min(step, size - start);
+			ByteBuffer window1, window2;
+			if (map)	{
+				window1 = channel1.map(FileChannel.MapMode.READ_ONLY, start, length);
+				window2 = channel2.map(FileChannel.MapMode.READ_ONLY, start, length);
+			}
+			else	{
+				window1 = read(channel1, buffer1, start, length);
+				window2 = read(channel2, buffer2, start, length);
+			}
+
+			int i = 0;
+			for (int longs = length - 7; i < longs; i += 8)	// getLong() has same byte order in both windows
+				if (window1.getLong(i) != window2.getLong(i))
+					break;
+
+			for (; i < length; i++)
+				if (window1.get(i) != window2.get(i))
+					return start + i;
+		}
+
+		return size1 == size2 ? -1L : size;
+	}
+
+	/** @return true if a file of passed size should be memory mapped, false if it should be read. */
+	static boolean isMappable(long size)	{
+		return OS.isWindows == false && size >= MAP_THRESHOLD;
+	}
+
+	private static ByteBuffer read(FileChannel channel, ByteBuffer buffer, long start, int length)
+		throws IOException
+	{
+		buffer.clear();
+		buffer.limit(length);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, start + buffer.position()) < 0)
+				throw new IOException("Unexpected end of file at "+(start + buffer.position()));
+		return buffer;
+	}
+
+}
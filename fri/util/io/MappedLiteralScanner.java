@@ -0,0 +1,311 @@
+package fri.util.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import fri.util.observer.CancelProgressObserver;
+
+/**
+	Find lines containing one of some literal byte patterns in a memory mapped file.
+	<UL>
+		<LI>Target: fast pre-filter for text searches, where only lines containing
+			a literal need to be decoded and matched by a regular expression.
+		<LI>Behaviour: maps the file window by window and scans its bytes with
+			Boyer-Moore-Horspool. Line numbers are counted only up to found lines.
+			Lines are terminated by "\n", "\r\n" or "\r", like BufferedReader.readLine() does.
+			Every line containing at least one pattern is decoded with the
+			given charset and passed to a LineVisitor, in file order, once.
+			Files that are not mapped by MappedFileComparison either (small files,
+			all files on WINDOWS) are read window by window into a buffer instead.
+		<LI>Errors: IOException when the file can not be read or mapped.
+	</UL>
+	Instances are immutable and can be used by several threads in parallel.
+	The charset must encode ASCII characters, "\r" and "\n" as single bytes
+	(see <i>isAsciiCompatible()</i>). Case-insensitive scanning folds ASCII letters only.
+
+	@author Fritz Ritzberger
+*/
+public class MappedLiteralScanner
+{
+	/** Receives lines containing a literal. */
+	public interface LineVisitor
+	{
+		/**
+			@param lineNr 1-based number of the line.
+			@param line the decoded line without newline.
+			@return false to stop scanning.
+		*/
+		public boolean visitLine(int lineNr, String line);
+	}
+
+	private static final int WINDOW = 64 * 1024 * 1024;	// bytes mapped at once
+	private static final int BUFFER = 64 * 1024;	// bytes read at once when not mapping
+
+	private final byte [][] patterns;
+	private final int [][] shifts;
+	private final int longest;
+	private final boolean ignoreCase;
+	private final Charset charset;
+
+
+	/**
+		@param literals the strings to find, at least one, none empty.
+		@param ignoreCase true for ASCII case-insensitive scanning.
+		@param charset the encoding of scanned files.
+	*/
+	public MappedLiteralScanner(String [] literals, boolean ignoreCase, Charset charset)	{
+		this.ignoreCase = ignoreCase;
+		this.charset = charset;
+		this.patterns = new byte[literals.length][];
+		this.shifts = new int[literals.length][];
+		int longest = 0;
+
+		for (int i = 0; i < literals.length; i++)	{
+			byte [] pattern = literals[i].getBytes(charset);
+			if (pattern.length <= 0)
+				throw new IllegalArgumentException("Empty literal can not be scanned");
+
+			if (ignoreCase)
+				for (int j = 0; j < pattern.length; j++)
+					pattern[j] = fold(pattern[j]);
+
+			int [] shift = new int[256];
+			for (int j = 0; j < shift.length; j++)
+				shift[j] = pattern.length;
+			for (int j = 0; j < pattern.length - 1; j++)
+				shift[pattern[j] & 0xFF] = pattern.length - 1 - j;
+
+			patterns[i] = pattern;
+			shifts[i] = shift;
+			longest = Math.max(longest, pattern.length);
+		}
+		this.longest = longest;
+	}
+
+
+	/** @return true if charset encodes ASCII, "\r" and "\n" as single bytes of same value. */
+	public static boolean isAsciiCompatible(Charset charset)	{
+		String ascii = "\r\n azAZ09";
+		try	{
+			byte [] bytes = ascii.getBytes(charset);
+			if (bytes.length != ascii.length())
+				return false;
+			for (int i = 0; i < bytes.length; i++)
+				if (bytes[i] != (byte)ascii.charAt(i))
+					return false;
+			return true;
+		}
+		catch (Exception e)	{	// UnsupportedOperationException
+			return false;
+		}
+	}
+
+
+	/**
+		Scan the passed file for lines containing one of the literals.
+		@param file the file to scan.
+		@param visitor receives every line containing a literal.
+		@param observer optional, is asked for cancel, can be null.
+	*/
+	public void scan(File file, LineVisitor visitor, CancelProgressObserver observer)
+		throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try	{
+			new Scan(raf.getChannel()).scan(visitor, observer);
+		}
+		finally	{
+			raf.close();
+		}
+	}
+
+
+	private static byte fold(byte b)	{
+		return (b >= 'A' && b <= 'Z') ? (byte)(b + ('a' - 'A')) : b;
+	}
+
+
+
+	// state of one scan of one file
+	private class Scan
+	{
+		private final FileChannel channel;
+		private final long size;
+		private final int windowSize;
+		private final ByteBuffer buffer;	// null when mapping
+		private ByteBuffer window;
+		private long windowStart, windowEnd;
+
+		Scan(FileChannel channel)
+			throws IOException
+		{
+			this.channel = channel;
+			this.size = channel.size();
+
+			if (MappedFileComparison.isMappable(size))	{
+				windowSize = WINDOW;
+				buffer = null;
+			}
+			else	{
+				windowSize = Math.max(BUFFER, 2 * longest);	// a window must hold a pattern
+				buffer = ByteBuffer.allocate((int)Math.min(windowSize, size));
+			}
+		}
+
+		void scan(LineVisitor visitor, CancelProgressObserver observer)
+			throws IOException
+		{
+			long [] next = new long[patterns.length];
+			for (int i = 0; i < next.length; i++)
+				next[i] = indexOf(i, 0L);
+
+			int lineNr = 1;
+			long counted = 0L;	// lines are counted up to here
+
+			while (observer == null || observer.canceled() == false)	{
+				long hit = -1L;	// the nearest hit of all patterns
+				for (int i = 0; i < next.length; i++)
+					if (next[i] >= 0L && (hit < 0L || next[i] < hit))
+						hit = next[i];
+
+				if (hit < 0L)
+					return;
+
+				long lineStart = lineStart(hit);
+				long lineEnd = lineEnd(hit);
+
+				lineNr += countLines(counted, lineStart);
+				counted = lineStart;
+
+				String line = new String(readBytes(lineStart, lineEnd), charset);
+				if (visitor.visitLine(lineNr, line) == false)
+					return;
+
+				for (int i = 0; i < next.length; i++)	// skip rest of visited line
+					if (next[i] >= 0L && next[i] < lineEnd)
+						next[i] = indexOf(i, lineEnd);
+			}
+		}
+
+		private void map(long start)
+			throws IOException
+		{
+			windowStart = Math.max(0L, start);
+			windowEnd = Math.min(size, windowStart + windowSize);
+
+			if (buffer == null)	{
+				window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+			}
+			else	{
+				buffer.clear();
+				buffer.limit((int)(windowEnd - windowStart));
+				while (buffer.hasRemaining())
+					if (channel.read(buffer, windowStart + buffer.position()) < 0)
+						throw new IOException("Unexpected end of file at "+(windowStart + buffer.position()));
+				window = buffer;
+			}
+		}
+
+		private byte byteAt(long pos)
+			throws IOException
+		{
+			if (window == null || pos < windowStart || pos >= windowEnd)
+				map(window != null && pos < windowStart ? pos - windowSize / 2 : pos);
+			return window.get((int)(pos - windowStart));
+		}
+
+		// Boyer-Moore-Horspool search of pattern at index p, from passed position on
+		private long indexOf(int p, long from)
+			throws IOException
+		{
+			byte [] pattern = patterns[p];
+			int [] shift = shifts[p];
+			int len = pattern.length;
+			long last = size - len;	// last possible start position
+
+			for (long pos = from; pos <= last; )	{
+				if (window == null || pos < windowStart || pos + len > windowEnd)
+					map(pos);
+
+				int k = (int)(pos - windowStart);
+				int limit = (int)(windowEnd - windowStart) - len;
+
+				while (k <= limit)	{
+					int m = len - 1;
+					while (m >= 0 && pattern[m] == (ignoreCase ? fold(window.get(k + m)) : window.get(k + m)))
+						m--;
+
+					if (m < 0)
+						return windowStart + k;
+
+					byte b = window.get(k + len - 1);
+					k += shift[(ignoreCase ? fold(b) : b) & 0xFF];
+				}
+				pos = windowStart + limit + 1;	// continue after this window, overlapping by pattern length
+			}
+			return -1L;
+		}
+
+		private long lineStart(long pos)
+			throws IOException
+		{
+			while (pos > 0L)	{
+				byte b = byteAt(pos - 1);
+				if (b == '\n' || b == '\r')
+					break;
+				pos--;
+			}
+			return pos;
+		}
+
+		private long lineEnd(long pos)
+			throws IOException
+		{
+			while (pos < size)	{
+				byte b = byteAt(pos);
+				if (b == '\n' || b == '\r')
+					break;
+				pos++;
+			}
+			return pos;
+		}
+
+		// count line terminators "\n", "\r\n" and "\r" in range
+		private int countLines(long from, long to)
+			throws IOException
+		{
+			int count = 0;
+			for (long pos = from; pos < to; pos++)	{
+				byte b = byteAt(pos);
+				if (b == '\n' || b == '\r' && (pos + 1 >= size || byteAt(pos + 1) != '\n'))
+					count++;
+			}
+			return count;
+		}
+
+		private byte [] readBytes(long start, long end)
+			throws IOException
+		{
+			byte [] bytes = new byte[(int)(end - start)];
+			if (start >= windowStart && end <= windowEnd)	{
+				ByteBuffer dup = window.duplicate();
+				dup.position((int)(start - windowStart));
+				dup.get(bytes);
+			}
+			else	{
+				ByteBuffer buf = ByteBuffer.wrap(bytes);
+				for (long pos = start; buf.hasRemaining(); )	{
+					int read = channel.read(buf, pos);
+					if (read < 0)
+						throw new IOException("Unexpected end of file at "+pos);
+					pos += read;
+				}
+			}
+			return bytes;
+		}
+	}
+
+}
@@ -9,7 +9,8 @@ import fri.util.file.ValidFilename;
 /**
 	TarArchive derivation.
 	Add capability to list entry structure (size, time, name)
-	and to extract specified entries.
+	and to extract specified entries. Listed entries know the offset
+	of their data within the uncompressed archive.
 */
 
 public class SelectiveTarArchive extends TarArchive
@@ -19,6 +20,7 @@ public class SelectiveTarArchive extends TarArchive
 	
 	public SelectiveTarArchive(InputStream in)	{
 		super(in);
+		this.tarIn = new PositionTarInputStream(in);	// nothing was read yet
 	}
 
 	public SelectiveTarArchive(OutputStream out)	{
@@ -45,7 +47,7 @@ public class SelectiveTarArchive extends TarArchive
 				break;
 			}
 			else	{
-				v.add(new SelectiveTarEntry(entry));
+				v.add(new SelectiveTarEntry(entry, ((PositionTarInputStream)this.tarIn).getDataOffset()));
 			}
 		}
 		return v.elements();
@@ -129,4 +131,20 @@ public class SelectiveTarArchive extends TarArchive
 	*/
 	protected void errorProgress(long size)	{
 	}
-}
\ No newline at end of file
+
+
+
+	/** Knows the position of the record that follows the last read header. */
+	private static class PositionTarInputStream extends TarInputStream
+	{
+		PositionTarInputStream(InputStream in)	{
+			super(in, TarBuffer.DEFAULT_BLKSIZE, TarBuffer.DEFAULT_RCDSIZE);
+		}
+
+		/** Returns the offset of the data of the entry returned by last getNextEntry(). */
+		long getDataOffset()	{
+			long recordsPerBlock = buffer.getBlockSize() / buffer.getRecordSize();
+			long headerRecord = buffer.getCurrentBlockNum() * recordsPerBlock + buffer.getCurrentRecordNum();
+			return (headerRecord + 1) * buffer.getRecordSize();
+		}
+	}}
\ No newline at end of file
@@ -16,6 +16,8 @@ public class SelectiveTarEntry
 	private String name;
 	private Date modified;
 	private String userName, groupName;
+	private long dataOffset = -1L;
+	private boolean link;
 	
 	protected SelectiveTarEntry()	{
 	}
@@ -27,6 +29,16 @@ public class SelectiveTarEntry
 		directory = entry.isDirectory();
 		userName = entry.getUserName();
 		groupName = entry.getGroupName();
+		link = entry.getHeader().linkName != null && entry.getHeader().linkName.length() > 0;
+	}
+	
+	/**
+		Wraps passed entry and stores the offset of its data.
+		@param dataOffset offset of the first data byte in the uncompressed archive.
+	*/
+	public SelectiveTarEntry(TarEntry entry, long dataOffset)	{
+		this(entry);
+		this.dataOffset = dataOffset;
 	}
 	
 	
@@ -57,6 +69,16 @@ public class SelectiveTarEntry
 		return size;
 	}
 
+	/** Returns the offset of the entry data within the uncompressed archive, -1 when unknown. */
+	public long getDataOffset()	{
+		return dataOffset;
+	}
+
+	/** Returns true when this entry is a link, links have no data. */
+	public boolean isLink()	{
+		return link;
+	}
+
 	public String getUserName()	{
 		return userName+"/"+groupName;
 	}
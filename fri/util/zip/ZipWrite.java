@@ -6,6 +6,7 @@ import java.io.*;
 import fri.util.file.Link;
 import fri.util.FileUtil;
 import fri.util.os.OS;
+import fri.util.io.BufferPool;
 
 /**
 	Write files to a zip archive.
@@ -246,9 +247,9 @@ public class ZipWrite
 		int bufsize)
 		throws IOException
 	{
+		byte [] blob = null;
 		try	{
 			long readBytes = 0;
-			byte [] blob = null;
 			long diff = fileSize;
 
 			while (diff > 0)	{
@@ -256,7 +257,7 @@ public class ZipWrite
 					bufsize = (int)diff;
 
 				if (blob == null)
-					blob = new byte[bufsize];
+					blob = BufferPool.get(bufsize);
 
 				if (in.read(blob, 0, bufsize) != bufsize)	{
 					in.close();
@@ -277,6 +278,9 @@ public class ZipWrite
 			try	{ in.close(); }	catch (Exception ex)	{}
 			throw e;
 		}
+		finally	{
+			BufferPool.release(blob);
+		}
 	}
 
 